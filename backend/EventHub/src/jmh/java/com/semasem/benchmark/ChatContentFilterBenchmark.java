@@ -0,0 +1,85 @@
+package com.semasem.benchmark;
+
+import com.semasem.service.moderation.ContentMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка сообщения набором правил: toLowerCase + contains по каждому шаблону против одного прохода
+ * автомата. Сообщение чистое, то есть проверяется целиком - худший случай для обоих.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatContentFilterBenchmark {
+
+    private static final String ALPHABET = "абвгдеёжзийклмнопрстуфхцчшщъыьэюяabcdefghijklmnopqrstuvwxyz";
+
+    @Param({"100", "10000"})
+    public int terms;
+
+    private List<String> patterns;
+    private ContentMatcher matcher;
+    private String message;
+    private UUID roomId;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(7);
+        patterns = new ArrayList<>(terms);
+        List<ContentMatcher.Rule> rules = new ArrayList<>(terms);
+        rules.add(new ContentMatcher.Rule(ContentMatcher.Kind.LINK, "http://", null));
+        rules.add(new ContentMatcher.Rule(ContentMatcher.Kind.LINK, "https://", null));
+        patterns.add("http://");
+        patterns.add("https://");
+        while (patterns.size() < terms) {
+            StringBuilder term = new StringBuilder();
+            int length = 6 + random.nextInt(6);
+            for (int i = 0; i < length; i++) {
+                term.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            patterns.add(term.toString());
+            rules.add(new ContentMatcher.Rule(ContentMatcher.Kind.TERM, term.toString(), null));
+        }
+        matcher = ContentMatcher.compile(rules);
+        roomId = UUID.randomUUID();
+        message = "Коллеги, напоминаю: Завтра В 9:00 общий созвон по релизу, повестка в трекере. "
+                + "Please review the Deployment checklist before the call and add your items to the doc. "
+                + "Если кто-то не успевает - напишите мне лично, перенесем ваш блок на конец встречи.";
+    }
+
+    @Benchmark
+    public boolean lowercaseContains() {
+        String lower = message.toLowerCase(Locale.ROOT);
+        for (String pattern : patterns) {
+            if (lower.contains(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean automaton() {
+        return matcher.findViolation(roomId, message) != null;
+    }
+}
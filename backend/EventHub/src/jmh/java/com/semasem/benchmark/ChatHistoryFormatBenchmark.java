@@ -0,0 +1,118 @@
+package com.semasem.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.semasem.dto.response.ChatMessageResponse;
+import com.semasem.dto.websocket.ChatEvent;
+import com.semasem.repository.entity.ChatMessageType;
+import com.semasem.service.websocket.ChatCodec;
+import com.semasem.service.websocket.ChatHistoryCompactor;
+import com.semasem.service.websocket.EncodedFrame;
+import com.semasem.service.websocket.WebSocketFrameEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * chat_history против chat_history_compact. Размеры кадров (как есть и после deflate без заголовка,
+ * как в permessage-deflate) печатаются при старте каждого набора параметров, время - в отчете JMH.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatHistoryFormatBenchmark {
+
+    @Param({"50"})
+    public int messages;
+
+    @Param({"3", "12"})
+    public int speakers;
+
+    private ChatCodec chatCodec;
+    private List<ChatMessageResponse> history;
+    private long seq;
+
+    @Setup
+    public void setup() throws Exception {
+        // Как в приложении: Instant пишется ISO-строкой
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        chatCodec = new ChatCodec(objectMapper, new WebSocketFrameEncoder(objectMapper, new SimpleMeterRegistry()));
+        history = generate(messages, speakers);
+        seq = messages;
+
+        byte[] legacy = encodeLegacy().message().asBytes();
+        byte[] compact = encodeCompact().message().asBytes();
+        System.out.printf("%n# chat_history: %d B (deflate %d B), chat_history_compact: %d B (deflate %d B)%n",
+                legacy.length, deflatedSize(legacy), compact.length, deflatedSize(compact));
+    }
+
+    @Benchmark
+    public EncodedFrame encodeLegacy() throws Exception {
+        return chatCodec.encode(new ChatEvent.History(history, "r1", seq, 0L));
+    }
+
+    @Benchmark
+    public EncodedFrame encodeCompact() throws Exception {
+        return chatCodec.encode(ChatHistoryCompactor.compact("r1", seq, history, 0L));
+    }
+
+    private static List<ChatMessageResponse> generate(int count, int speakers) {
+        Random random = new Random(42);
+        Instant start = Instant.parse("2026-10-17T10:00:00.123456Z");
+        List<ChatMessageResponse> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int speaker = random.nextInt(speakers);
+            ChatMessageResponse.ChatMessageResponseBuilder message = ChatMessageResponse.builder()
+                    .uuid(UUID.randomUUID())
+                    .content("Сообщение " + i + ": " + "обсуждаем слайд номер ".repeat(1 + random.nextInt(3)))
+                    .type(ChatMessageType.TEXT)
+                    .timestamp(start.plusSeconds(i * 7L))
+                    .senderName("Участник " + speaker)
+                    .senderEmail("user" + speaker + "@example.com")
+                    .senderAvatar("https://cdn.example.com/avatars/" + speaker + ".png");
+
+            // Каждое четвертое - ответ на одно из предыдущих
+            if (i > 0 && i % 4 == 0) {
+                ChatMessageResponse replied = result.get(random.nextInt(i));
+                message.replyTo(replied.getUuid())
+                        .repliedMessageContent(replied.getContent())
+                        .repliedMessageSender(replied.getSenderName());
+            }
+            result.add(message.build());
+        }
+        return result;
+    }
+
+    private static int deflatedSize(byte[] payload) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(payload);
+        deflater.finish();
+        byte[] buffer = new byte[payload.length + 64];
+        int size = 0;
+        while (!deflater.finished()) {
+            size += deflater.deflate(buffer);
+        }
+        deflater.end();
+        return size;
+    }
+}
@@ -0,0 +1,87 @@
+package com.semasem.benchmark;
+
+import com.semasem.service.security.JwtVerifier;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.SecretKey;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Токены в секунду на один запрос. legacy повторяет прежний JwtService: ключ и парсер на каждый вызов,
+ * подпись проверяется трижды (isTokenValid, extractEmail, extractUserId).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtVerificationBenchmark {
+
+    private static final String SECRET = "NeRealSecretKeyForFreaksAniMeTrackAPIAndAniMeTrackAPP";
+
+    private String token;
+    private JwtVerifier uncached;
+    private JwtVerifier cached;
+
+    @Setup
+    public void setup() {
+        SecretKey key = Keys.hmacShaKeyFor(SECRET.getBytes());
+        token = Jwts.builder()
+                .claims(Map.of("email", "ivan@example.com", "role", "ROLE_USER", "name", "Ivan",
+                        "userId", UUID.randomUUID().toString(), "type", "ACCESS_TOKEN", "ver", 0))
+                .subject("ivan@example.com")
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                .signWith(key)
+                .compact();
+        uncached = new JwtVerifier(key, 0, 0, new SimpleMeterRegistry());
+        cached = new JwtVerifier(key, 60_000, 10_000, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public Object legacy() {
+        Claims valid = parseLegacy(token);
+        String email = parseLegacy(token).getSubject();
+        String userId = parseLegacy(token).get("userId", String.class);
+        return valid.get("type", String.class).length() + email.length() + userId.length();
+    }
+
+    @Benchmark
+    public Object sharedParser() {
+        Claims claims = uncached.verify(token);
+        return claims.get("type", String.class).length() + claims.getSubject().length()
+                + claims.get("userId", String.class).length();
+    }
+
+    @Benchmark
+    public Object claimsCache() {
+        Claims claims = cached.verify(token);
+        return claims.get("type", String.class).length() + claims.getSubject().length()
+                + claims.get("userId", String.class).length();
+    }
+
+    private static Claims parseLegacy(String token) {
+        return Jwts.parser()
+                .verifyWith(Keys.hmacShaKeyFor(SECRET.getBytes()))
+                .build()
+                .parseSignedClaims(token)
+                .getPayload();
+    }
+}
@@ -0,0 +1,161 @@
+package com.semasem.benchmark;
+
+import com.semasem.dto.websocket.SignalingEvent;
+import com.semasem.service.MediaStateService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Хранилище медиасостояний: прежняя карта изменяемых объектов против упакованной таблицы.
+ * all* собирают ответ request_all_media_states, changesSince отдает дифф после одного изменения.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MediaStateStoreBenchmark {
+
+    private static final MediaStateService.MediaStateVisitor IGNORE = (user, audio, video, screen, lastUpdate) -> {
+    };
+
+    @Param({"8", "64"})
+    public int participants;
+
+    private final UUID roomId = UUID.randomUUID();
+    private UUID[] users;
+    private LegacyMediaStateStore legacy;
+    private MediaStateService packed;
+    private int cursor;
+    private boolean toggle;
+
+    @Setup
+    public void setup() {
+        legacy = new LegacyMediaStateStore();
+        packed = new MediaStateService();
+        users = new UUID[participants];
+        for (int i = 0; i < participants; i++) {
+            users[i] = UUID.randomUUID();
+            legacy.updateMediaState(roomId, users[i], true, true, false);
+            packed.updateMediaState(roomId, users[i], true, true, false);
+        }
+    }
+
+    @Benchmark
+    public Object updateLegacy() {
+        UUID user = nextUser();
+        legacy.updateMediaState(roomId, user, toggle, null, null);
+        return user;
+    }
+
+    @Benchmark
+    public Object updatePacked() {
+        UUID user = nextUser();
+        packed.updateMediaState(roomId, user, toggle, null, null);
+        return user;
+    }
+
+    @Benchmark
+    public Map<String, SignalingEvent.MediaStateView> allLegacy() {
+        Map<String, SignalingEvent.MediaStateView> views = new HashMap<>();
+        legacy.getAllMediaStates(roomId).forEach((user, state) -> views.put(user.toString(),
+                new SignalingEvent.MediaStateView(state.audioEnabled, state.videoEnabled,
+                        state.screenSharing, state.lastUpdate)));
+        return views;
+    }
+
+    @Benchmark
+    public Map<String, SignalingEvent.MediaStateView> allPacked() {
+        Map<String, SignalingEvent.MediaStateView> views = new HashMap<>();
+        packed.visitChangesSince(roomId, 0L, collectInto(views));
+        return views;
+    }
+
+    @Benchmark
+    public Map<String, SignalingEvent.MediaStateView> changesSincePacked() {
+        long since = packed.visitChangesSince(roomId, Long.MAX_VALUE, IGNORE).version();
+        packed.updateMediaState(roomId, nextUser(), toggle, null, null);
+
+        Map<String, SignalingEvent.MediaStateView> views = new HashMap<>();
+        packed.visitChangesSince(roomId, since, collectInto(views));
+        return views;
+    }
+
+    private UUID nextUser() {
+        if (++cursor == users.length) {
+            cursor = 0;
+            toggle = !toggle;
+        }
+        return users[cursor];
+    }
+
+    private static MediaStateService.MediaStateVisitor collectInto(Map<String, SignalingEvent.MediaStateView> views) {
+        return (user, audioEnabled, videoEnabled, screenSharing, lastUpdate) -> views.put(user.toString(),
+                new SignalingEvent.MediaStateView(audioEnabled, videoEnabled, screenSharing, lastUpdate));
+    }
+
+    /**
+     * Прежняя реализация MediaStateService для сравнения.
+     */
+    static final class LegacyMediaStateStore {
+
+        private final Map<UUID, Map<UUID, MediaState>> roomMediaStates = new ConcurrentHashMap<>();
+
+        static final class MediaState {
+            private boolean audioEnabled = true;
+            private boolean videoEnabled = true;
+            private boolean screenSharing;
+            private long lastUpdate = System.currentTimeMillis();
+
+            void setAudioEnabled(boolean audioEnabled) {
+                this.audioEnabled = audioEnabled;
+                this.lastUpdate = System.currentTimeMillis();
+            }
+
+            void setVideoEnabled(boolean videoEnabled) {
+                this.videoEnabled = videoEnabled;
+                this.lastUpdate = System.currentTimeMillis();
+            }
+
+            void setScreenSharing(boolean screenSharing) {
+                this.screenSharing = screenSharing;
+                this.lastUpdate = System.currentTimeMillis();
+            }
+        }
+
+        void updateMediaState(UUID roomId, UUID userId, Boolean audioEnabled, Boolean videoEnabled,
+                              Boolean screenSharing) {
+            roomMediaStates.computeIfAbsent(roomId, k -> new ConcurrentHashMap<>());
+            MediaState state = roomMediaStates.get(roomId).computeIfAbsent(userId, k -> new MediaState());
+            if (audioEnabled != null) {
+                state.setAudioEnabled(audioEnabled);
+            }
+            if (videoEnabled != null) {
+                state.setVideoEnabled(videoEnabled);
+            }
+            if (screenSharing != null) {
+                state.setScreenSharing(screenSharing);
+            }
+        }
+
+        Map<UUID, MediaState> getAllMediaStates(UUID roomId) {
+            return roomMediaStates.getOrDefault(roomId, new ConcurrentHashMap<>());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.semasem.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.semasem.dto.websocket.SignalingMessage;
+import com.semasem.service.websocket.EncodedFrame;
+import com.semasem.service.websocket.SignalingCodec;
+import com.semasem.service.websocket.WebSocketFrameEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный путь пересылки offer/ice_candidate: разбор входящего кадра и сборка исходящего.
+ * sdpKb задает размер SDP, типичные значения 5-15 KB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignalingRelayBenchmark {
+
+    private static final String SDP_LINE = "a=candidate:842163049 1 udp 1677729535 203.0.113.7 46154 typ srflx\\r\\n";
+
+    @Param({"offer", "ice_candidate"})
+    public String kind;
+
+    @Param({"1", "10"})
+    public int sdpKb;
+
+    private ObjectMapper objectMapper;
+    private WebSocketFrameEncoder frameEncoder;
+    private SignalingCodec signalingCodec;
+    private String payload;
+    private String field;
+
+    @Setup
+    public void setup() {
+        objectMapper = new ObjectMapper();
+        frameEncoder = new WebSocketFrameEncoder(objectMapper, new SimpleMeterRegistry());
+        signalingCodec = new SignalingCodec(objectMapper, frameEncoder, 1 << 20);
+
+        String target = UUID.randomUUID().toString();
+        if (kind.equals("offer")) {
+            StringBuilder sdp = new StringBuilder("v=0\\r\\n");
+            while (sdp.length() < sdpKb * 1024) {
+                sdp.append(SDP_LINE);
+            }
+            field = "sdp";
+            payload = "{\"type\":\"offer\",\"targetUserId\":\"" + target
+                    + "\",\"sdp\":{\"type\":\"offer\",\"sdp\":\"" + sdp + "\"}}";
+        } else {
+            field = "candidate";
+            payload = "{\"type\":\"ice_candidate\",\"targetUserId\":\"" + target
+                    + "\",\"candidate\":{\"candidate\":\"" + SDP_LINE + "\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}}";
+        }
+    }
+
+    @Benchmark
+    public EncodedFrame relayMap() throws Exception {
+        Map<?, ?> message = objectMapper.readValue(payload, Map.class);
+        Map<String, Object> forward = new HashMap<>();
+        forward.put("fromUserId", "u1");
+        forward.put(field, message.get(field));
+        forward.put("type", kind);
+        forward.put("timestamp", System.currentTimeMillis());
+        return frameEncoder.encode(forward);
+    }
+
+    @Benchmark
+    public EncodedFrame relayRaw() throws Exception {
+        SignalingMessage message = signalingCodec.decode(payload);
+        if (message instanceof SignalingMessage.Offer offer) {
+            return signalingCodec.encodeRelay("offer", "u1", "sdp", offer.sdp());
+        }
+        SignalingMessage.IceCandidate candidate = (SignalingMessage.IceCandidate) message;
+        return signalingCodec.encodeRelay("ice_candidate", "u1", "candidate", candidate.candidate());
+    }
+}
@@ -0,0 +1,139 @@
+package com.semasem.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.semasem.dto.websocket.ChatEvent;
+import com.semasem.dto.websocket.RawJson;
+import com.semasem.dto.websocket.SignalingEvent;
+import com.semasem.service.websocket.ChatCodec;
+import com.semasem.service.websocket.EncodedFrame;
+import com.semasem.service.websocket.SignalingCodec;
+import com.semasem.service.websocket.WebSocketFrameEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение старого пути (Map + readValue/writeValueAsString) с типизированными кодеками.
+ * Аллокации на сообщение смотреть в колонке gc.alloc.rate.norm (профайлер gc включен в задаче jmh).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebSocketCodecBenchmark {
+
+    private static final String SDP = "v=0\\r\\no=- 4611731400430051336 2 IN IP4 127.0.0.1\\r\\ns=-\\r\\nt=0 0\\r\\n"
+            + "a=group:BUNDLE 0 1\\r\\na=msid-semantic: WMS stream\\r\\n"
+            + "m=audio 9 UDP/TLS/RTP/SAVPF 111 103 104\\r\\nc=IN IP4 0.0.0.0\\r\\na=rtcp:9 IN IP4 0.0.0.0\\r\\n"
+            + "a=ice-ufrag:Fp3v\\r\\na=ice-pwd:6Gk1xTqQ+7dLhYbP3HjA9cZm\\r\\na=fingerprint:sha-256 "
+            + "3B:7A:91:0C:6E:25:D4:8F:11:A2:5C:90:EE:47:B1:3D:62:08:F9:C4:1E:7D:AA:53:90:2B:6F:C1:48:DE:77:05\\r\\n";
+
+    @Param({"offer", "ice_candidate", "media_state_update", "chat_message"})
+    public String kind;
+
+    private ObjectMapper objectMapper;
+    private WebSocketFrameEncoder frameEncoder;
+    private SignalingCodec signalingCodec;
+    private ChatCodec chatCodec;
+
+    private String payload;
+    private JsonNode sdp;
+    private JsonNode candidate;
+    private RawJson rawSdp;
+    private RawJson rawCandidate;
+
+    @Setup
+    public void setup() throws Exception {
+        objectMapper = new ObjectMapper();
+        frameEncoder = new WebSocketFrameEncoder(objectMapper, new SimpleMeterRegistry());
+        signalingCodec = new SignalingCodec(objectMapper, frameEncoder, 32768);
+        chatCodec = new ChatCodec(objectMapper, frameEncoder);
+
+        String target = UUID.randomUUID().toString();
+        String sdpJson = "{\"type\":\"offer\",\"sdp\":\"" + SDP + "\"}";
+        String candidateJson = "{\"candidate\":\"candidate:842163049 1 udp 1677729535 203.0.113.7 46154 typ srflx "
+                + "raddr 0.0.0.0 rport 0 generation 0 ufrag Fp3v network-cost 999\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}";
+        sdp = objectMapper.readTree(sdpJson);
+        candidate = objectMapper.readTree(candidateJson);
+        rawSdp = new RawJson(sdpJson, 0, sdpJson.length());
+        rawCandidate = new RawJson(candidateJson, 0, candidateJson.length());
+
+        payload = switch (kind) {
+            case "offer" -> "{\"type\":\"offer\",\"targetUserId\":\"" + target + "\",\"sdp\":" + sdpJson + "}";
+            case "ice_candidate" -> "{\"type\":\"ice_candidate\",\"targetUserId\":\"" + target
+                    + "\",\"candidate\":" + candidateJson + "}";
+            case "media_state_update" -> "{\"type\":\"media_state_update\",\"audioEnabled\":true,"
+                    + "\"videoEnabled\":false,\"screenSharing\":false}";
+            case "chat_message" -> "{\"type\":\"chat_message\",\"content\":\"Привет, всем слышно?\",\"replyTo\":\""
+                    + UUID.randomUUID() + "\"}";
+            default -> throw new IllegalArgumentException(kind);
+        };
+    }
+
+    @Benchmark
+    public Object decodeMap() throws Exception {
+        Map<?, ?> message = objectMapper.readValue(payload, Map.class);
+        String type = (String) message.get("type");
+        return switch (type) {
+            case "offer" -> message.get("sdp");
+            case "ice_candidate" -> message.get("candidate");
+            case "media_state_update" -> message.get("audioEnabled");
+            default -> message.get("replyTo") != null ? UUID.fromString((String) message.get("replyTo")) : null;
+        };
+    }
+
+    @Benchmark
+    public Object decodeTyped() throws Exception {
+        if (kind.equals("chat_message")) {
+            return chatCodec.decode(payload);
+        }
+        return signalingCodec.decode(payload);
+    }
+
+    @Benchmark
+    public EncodedFrame encodeMap() throws Exception {
+        Map<String, Object> data = switch (kind) {
+            case "offer" -> Map.of("fromUserId", "u1", "sdp", sdp);
+            case "ice_candidate" -> Map.of("fromUserId", "u1", "candidate", candidate);
+            case "media_state_update" -> Map.of("userId", "u1", "audioEnabled", true,
+                    "videoEnabled", false, "screenSharing", false);
+            default -> Map.of("roomId", "r1",
+                    "users", List.of(Map.of("id", "u1", "name", "Ivan", "email", "ivan@example.com")));
+        };
+        Map<String, Object> message = new HashMap<>(data);
+        message.put("type", kind);
+        message.put("timestamp", System.currentTimeMillis());
+        return frameEncoder.encode(message);
+    }
+
+    @Benchmark
+    public EncodedFrame encodeTyped() throws Exception {
+        long now = System.currentTimeMillis();
+        return switch (kind) {
+            case "offer" -> signalingCodec.encodeRelay("offer", "u1", "sdp", rawSdp);
+            case "ice_candidate" -> signalingCodec.encodeRelay("ice_candidate", "u1", "candidate", rawCandidate);
+            case "media_state_update" -> signalingCodec.encode(
+                    new SignalingEvent.MediaStateUpdate("u1", true, false, false, null, now));
+            default -> chatCodec.encode(new ChatEvent.Typing("r1",
+                    List.of(new ChatEvent.UserInfo("u1", "Ivan", "ivan@example.com", null)), now));
+        };
+    }
+}
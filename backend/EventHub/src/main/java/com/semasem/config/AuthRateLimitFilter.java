@@ -0,0 +1,60 @@
+package com.semasem.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.semasem.dto.exception.ErrorCode;
+import com.semasem.dto.response.ApiError;
+import com.semasem.service.security.AuthRateLimiter;
+import com.semasem.service.security.ClientIp;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Лимит по адресу клиента на входе, регистрации и гостевом входе: отказ отдается до разбора тела,
+ * BCrypt и обращений к БД. Отказы считает метрика auth.rate_limit.rejected, в лог - только debug:
+ * при переборе строка на каждый запрос атакующего сама стала бы нагрузкой.
+ */
+@Slf4j
+public class AuthRateLimitFilter extends OncePerRequestFilter {
+
+    private final AuthRateLimiter authRateLimiter;
+    private final ObjectMapper objectMapper;
+
+    public AuthRateLimitFilter(AuthRateLimiter authRateLimiter, ObjectMapper objectMapper) {
+        this.authRateLimiter = authRateLimiter;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        AuthRateLimiter.Route route = authRateLimiter.match(request);
+        if (route == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        String ip = ClientIp.resolve(request);
+        long retryAfterMillis = authRateLimiter.tryAcquireIp(route, ip);
+        if (retryAfterMillis > 0) {
+            log.debug("Rate limited {} from {}", route, ip);
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader("Retry-After", String.valueOf((retryAfterMillis + 999) / 1000));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding("UTF-8");
+            objectMapper.writeValue(response.getOutputStream(), ApiError.of(ErrorCode.RATE_LIMITED));
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+}
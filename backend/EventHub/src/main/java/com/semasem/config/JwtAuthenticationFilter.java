@@ -1,28 +1,33 @@
 package com.semasem.config;
 
-import com.semasem.dto.entity.TokenType;
+import com.semasem.service.security.JwtPrincipal;
 import com.semasem.service.security.JwtService;
+import com.semasem.service.security.TokenRevocations;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
 
+/**
+ * Аутентификация по access-токену без обращения к БД: email, роль и userId берутся из подписанных
+ * claims, отзыв проверяется по {@link TokenRevocations}.
+ */
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
-    private final UserDetailsService userDetailsService;
+    private final TokenRevocations tokenRevocations;
 
-    public JwtAuthenticationFilter(JwtService jwtService, UserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(JwtService jwtService, TokenRevocations tokenRevocations) {
         this.jwtService = jwtService;
-        this.userDetailsService = userDetailsService;
+        this.tokenRevocations = tokenRevocations;
     }
 
     @Override
@@ -31,32 +36,31 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                                     FilterChain filterChain) throws ServletException, IOException {
 
         final String authHeader = request.getHeader("Authorization");
-        logger.info("Authorization header: " + authHeader);
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            logger.info("No Bearer token found, skipping authentication");
+            logger.debug("No Bearer token found, skipping authentication");
             filterChain.doFilter(request, response);
             return;
         }
 
         try {
             final String jwt = authHeader.substring(7);
-            logger.info("JWT token: " + jwt);
-            if (!jwtService.isTokenValid(jwt, TokenType.ACCESS_TOKEN)) {
+            JwtPrincipal principal = jwtService.parseAccessToken(jwt);
+            if (principal == null) {
                 logger.warn("Invalid or expired JWT token");
                 filterChain.doFilter(request, response);
                 return;
             }
 
-            final String userEmail = jwtService.extractEmail(jwt);
-            logger.info("Extracted email: " + userEmail);
-
-            if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = userDetailsService.loadUserByUsername(userEmail);
-
+            if (tokenRevocations.isRevoked(principal)) {
+                logger.warn("Revoked JWT token of user " + principal.userId());
+                filterChain.doFilter(request, response);
+                return;
+            }
 
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(userDetails,
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
+                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(principal,
                         null,
-                        userDetails.getAuthorities());
+                        principal.role() != null ? List.of(new SimpleGrantedAuthority(principal.role())) : List.of());
                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authToken);
             }
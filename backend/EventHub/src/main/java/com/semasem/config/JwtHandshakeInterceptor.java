@@ -0,0 +1,105 @@
+package com.semasem.config;
+
+import com.semasem.repository.RoomRepository;
+import com.semasem.repository.entity.RoomStatus;
+import com.semasem.service.security.JwtPrincipal;
+import com.semasem.service.security.JwtService;
+import com.semasem.service.security.TokenRevocations;
+import com.semasem.service.websocket.WebSocketSessionContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class JwtHandshakeInterceptor implements HandshakeInterceptor {
+
+    private final JwtService jwtService;
+    private final TokenRevocations tokenRevocations;
+    private final RoomRepository roomRepository;
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams();
+        String token = decode(params.getFirst("token"));
+        String roomId = params.getFirst("roomId");
+        String userId = params.getFirst("userId");
+
+        if (token == null || roomId == null) {
+            log.warn("WebSocket handshake rejected: missing token or roomId ({})", request.getURI().getPath());
+            response.setStatusCode(HttpStatus.BAD_REQUEST);
+            return false;
+        }
+
+        JwtPrincipal principal = jwtService.parseAccessToken(token);
+        if (principal == null || tokenRevocations.isRevoked(principal)) {
+            log.warn("WebSocket handshake rejected: invalid or revoked token for room {}", roomId);
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        String tokenUserId = principal.userId().toString();
+        if (userId != null && !userId.equals(tokenUserId)) {
+            log.warn("WebSocket handshake rejected: userId {} does not match token", userId);
+            response.setStatusCode(HttpStatus.FORBIDDEN);
+            return false;
+        }
+
+        Optional<UUID> roomUuid = parseUuid(roomId);
+        if (roomUuid.isEmpty()) {
+            response.setStatusCode(HttpStatus.BAD_REQUEST);
+            return false;
+        }
+
+        if (!roomRepository.existsByUuidAndStatus(roomUuid.get(), RoomStatus.ACTIVE)) {
+            log.warn("WebSocket handshake rejected: room {} not found or not active", roomId);
+            response.setStatusCode(HttpStatus.NOT_FOUND);
+            return false;
+        }
+
+        // Пользователь берется из подписанных claims, как в JwtAuthenticationFilter - без чтения users
+        attributes.put(WebSocketSessionContext.ATTRIBUTE, new WebSocketSessionContext(
+                principal.userId(),
+                roomUuid.get(),
+                tokenUserId,
+                roomUuid.get().toString(),
+                principal.email(),
+                principal.name(),
+                principal.avatarLink(),
+                principal.isGuest()
+        ));
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    private String decode(String value) {
+        return value != null ? URLDecoder.decode(value, StandardCharsets.UTF_8) : null;
+    }
+
+    private Optional<UUID> parseUuid(String value) {
+        try {
+            return Optional.of(UUID.fromString(value));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+}
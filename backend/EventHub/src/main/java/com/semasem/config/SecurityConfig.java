@@ -1,14 +1,15 @@
 package com.semasem.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.semasem.service.security.AuthRateLimiter;
 import com.semasem.service.security.JwtService;
-import org.springframework.beans.factory.annotation.Qualifier;
+import com.semasem.service.security.TokenRevocations;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
@@ -23,12 +24,16 @@ import java.util.List;
 public class SecurityConfig {
 
     private final JwtService jwtService;
-    private final UserDetailsService userDetailsService;
+    private final TokenRevocations tokenRevocations;
+    private final AuthRateLimiter authRateLimiter;
+    private final ObjectMapper objectMapper;
 
-    public SecurityConfig(JwtService jwtService,
-                          @Qualifier("customUserDetailsService") UserDetailsService userDetailsService) {
+    public SecurityConfig(JwtService jwtService, TokenRevocations tokenRevocations,
+                          AuthRateLimiter authRateLimiter, ObjectMapper objectMapper) {
         this.jwtService = jwtService;
-        this.userDetailsService = userDetailsService;
+        this.tokenRevocations = tokenRevocations;
+        this.authRateLimiter = authRateLimiter;
+        this.objectMapper = objectMapper;
     }
 
     @Bean
@@ -40,7 +45,9 @@ public class SecurityConfig {
                         headers.frameOptions(frameOptions -> frameOptions.sameOrigin())
                 )
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
-                .addFilterBefore(new JwtAuthenticationFilter(jwtService, userDetailsService),
+                .addFilterBefore(new AuthRateLimitFilter(authRateLimiter, objectMapper),
+                        UsernamePasswordAuthenticationFilter.class)
+                .addFilterBefore(new JwtAuthenticationFilter(jwtService, tokenRevocations),
                         UsernamePasswordAuthenticationFilter.class)
                 .authorizeHttpRequests(auth -> auth
                                 .requestMatchers(
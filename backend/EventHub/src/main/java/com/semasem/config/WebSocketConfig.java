@@ -4,10 +4,13 @@ package com.semasem.config;
 import com.semasem.controller.WebRTCController;
 import com.semasem.controller.WebSocketChatController;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
 @Configuration
 @EnableWebSocket
@@ -16,13 +19,25 @@ public class WebSocketConfig implements WebSocketConfigurer {
 
     private final WebRTCController webRTCController;
     private final WebSocketChatController webSocketChatController;
+    private final JwtHandshakeInterceptor jwtHandshakeInterceptor;
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(webRTCController, "/api/ws/webrtc-plain")
+                .addInterceptors(jwtHandshakeInterceptor)
                 .setAllowedOriginPatterns("*");
 
         registry.addHandler(webSocketChatController, "/ws-chat")
+                .addInterceptors(jwtHandshakeInterceptor)
                 .setAllowedOriginPatterns("*");
     }
+
+    // Кадры больше лимита контейнер закрывает кодом 1009 еще до разбора
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer(
+            @Value("${websocket.inbound.max-text-message-bytes:65536}") int maxTextMessageBytes) {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(maxTextMessageBytes);
+        return container;
+    }
 }
\ No newline at end of file
@@ -2,9 +2,12 @@ package com.semasem.controller;
 
 import com.semasem.dto.request.CreateRoomRequest;
 import com.semasem.dto.response.APIResponse;
+import com.semasem.dto.response.ChatHistoryPageResponse;
+import com.semasem.dto.response.ChatUnreadResponse;
 import com.semasem.dto.response.ParticipantResponse;
 import com.semasem.dto.response.RoomJoinResponse;
 import com.semasem.dto.response.RoomResponse;
+import com.semasem.service.ChatService;
 import com.semasem.service.RoomService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirements;
@@ -33,6 +36,7 @@ import java.util.UUID;
 public class RoomController {
 
     private final RoomService roomService;
+    private final ChatService chatService;
 
     @Operation(summary = "Создание новой комнаты")
     @PostMapping
@@ -88,6 +92,25 @@ public class RoomController {
         return ResponseEntity.ok().body(APIResponse.success("", response));
     }
 
+    @Operation(summary = "История чата комнаты", description = "Страницы от новых к старым; nextCursor передается в before")
+    @GetMapping("/{roomID}/messages")
+    public ResponseEntity<APIResponse<ChatHistoryPageResponse>> getRoomMessages(
+            @PathVariable UUID roomID,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "50") int limit,
+            Principal principal) {
+
+        ChatHistoryPageResponse response = chatService.getRoomMessages(roomID, before, limit, principal);
+        return ResponseEntity.ok().body(APIResponse.success("", response));
+    }
+
+    @Operation(summary = "Непрочитанные события чата", description = "Разница между последним seq комнаты и прочитанным пользователем")
+    @GetMapping("/{roomID}/messages/unread")
+    public ResponseEntity<APIResponse<ChatUnreadResponse>> getUnreadCount(@PathVariable UUID roomID, Principal principal) {
+        ChatUnreadResponse response = chatService.getUnreadCount(roomID, principal);
+        return ResponseEntity.ok().body(APIResponse.success("", response));
+    }
+
     @Operation(summary = "Присоединение по invite ссылке")
     @SecurityRequirements
     @GetMapping("/join/{inviteCode}")
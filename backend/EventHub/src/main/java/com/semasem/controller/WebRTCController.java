@@ -1,12 +1,24 @@
 package com.semasem.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.semasem.repository.RoomParticipantRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.semasem.dto.websocket.RawJson;
+import com.semasem.dto.websocket.SignalingEvent;
+import com.semasem.dto.websocket.SignalingMessage;
 import com.semasem.repository.entity.ParticipantInfo;
-import com.semasem.repository.entity.RoomParticipant;
+import com.semasem.service.websocket.RoomJoinPipeline;
 import com.semasem.service.MediaStateService;
 import com.semasem.service.RoomSessionService;
-import com.semasem.service.WebRTCService;
+import com.semasem.service.websocket.EncodedFrame;
+import com.semasem.service.websocket.FramePriority;
+import com.semasem.service.websocket.IceCandidateBatcher;
+import com.semasem.service.websocket.OutboundQueueService;
+import com.semasem.service.websocket.OutboundWebSocketSession;
+import com.semasem.service.websocket.RoomSessionRegistry;
+import com.semasem.service.websocket.RosterDeltaPublisher;
+import com.semasem.service.websocket.SignalingCodec;
+import com.semasem.service.websocket.WebSocketFrameEncoder;
+import com.semasem.service.websocket.WebSocketSessionContext;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -15,179 +27,237 @@ import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class WebRTCController extends TextWebSocketHandler {
 
-    private final ObjectMapper objectMapper;
-    private final WebRTCService webRTCService;
     private final RoomSessionService roomSessionService;
     private final MediaStateService mediaStateService;
-    private final RoomParticipantRepository roomParticipantRepository;
+    private final WebSocketFrameEncoder frameEncoder;
+    private final SignalingCodec signalingCodec;
+    private final IceCandidateBatcher iceCandidateBatcher;
+    private final OutboundQueueService outboundQueueService;
+    private final RoomJoinPipeline roomJoinPipeline;
+    private final RosterDeltaPublisher rosterDeltaPublisher;
+
+    // Клиент считает себя подключенным с onopen: столько кадров до room_snapshot сохраняется и
+    // обрабатывается после входа, остальные отклоняются ошибкой
+    private static final int MAX_EARLY_FRAMES = 32;
+
+    private final RoomSessionRegistry sessionRegistry = new RoomSessionRegistry();
+    private final Map<String, PendingJoin> pendingJoins = new ConcurrentHashMap<>();
+
+    /**
+     * Кадры, пришедшие до завершения входа. done - вход завершен, новые кадры обрабатываются сразу.
+     */
+    private static final class PendingJoin {
+        private final List<TextMessage> frames = new ArrayList<>();
+        private boolean done;
+    }
 
-    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
-    private final Map<String, String> userRooms = new ConcurrentHashMap<>();
+    @PostConstruct
+    void subscribeToRosterDeltas() {
+        rosterDeltaPublisher.subscribe(this::broadcastRosterDelta);
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        Map<String, String> params = extractParameters(session);
-        String token = params.get("token");
-        String roomId = params.get("roomId");
-        String userId = params.get("userId");
-
-        log.info("WebSocket connection attempt - Token: {}, Room: {}, User: {}",
-                token != null ? "present" : "missing", roomId, userId);
-
-        if (token == null || roomId == null || userId == null) {
-            log.warn("Invalid connection parameters - token: {}, roomId: {}, userId: {}",
-                    token, roomId, userId);
+        WebSocketSessionContext context = WebSocketSessionContext.from(session);
+        if (context == null) {
+            log.warn("WebSocket session {} has no handshake context", session.getId());
             session.close(CloseStatus.BAD_DATA);
             return;
         }
 
-        try {
-            UUID roomUuid = UUID.fromString(roomId);
-            UUID userUuid = UUID.fromString(userId);
+        log.info("WebSocket connection attempt - Room: {}, User: {}", context.roomIdValue(), context.userIdValue());
+
+        long startedAt = System.nanoTime();
+        PendingJoin pending = new PendingJoin();
+        pendingJoins.put(session.getId(), pending);
+        roomJoinPipeline.join(context).whenComplete((result, error) -> {
+            // Ранние кадры обрабатываются под блокировкой: следующие за ними ждут и не обгоняют их
+            synchronized (pending) {
+                try {
+                    if (error != null) {
+                        failJoin(session, context, error instanceof CompletionException ? error.getCause() : error);
+                    } else {
+                        completeJoin(session, context, result, startedAt);
+                        if (sessionRegistry.isConnected(context.roomIdValue(), context.userIdValue())) {
+                            for (TextMessage frame : pending.frames) {
+                                dispatch(session, context, frame);
+                            }
+                        }
+                    }
+                } finally {
+                    pending.done = true;
+                    pending.frames.clear();
+                    pendingJoins.remove(session.getId(), pending);
+                }
+            }
+        });
+    }
 
-            webRTCService.validateRoomAccess(roomUuid, () -> userId);
+    private void completeJoin(WebSocketSession session, WebSocketSessionContext context,
+                              RoomJoinPipeline.JoinResult result, long startedAt) {
+        String roomId = context.roomIdValue();
+        String userId = context.userIdValue();
 
-            ParticipantInfo participantInfo = getParticipantInfo(roomUuid, userUuid);
-            if (participantInfo == null) {
-                log.warn("Participant not found in room: user {}, room {}", userId, roomId);
-                session.close(CloseStatus.NOT_ACCEPTABLE);
+        // Закрытие сессии и завершение подключения не должны перемежаться
+        synchronized (session) {
+            if (!session.isOpen()) {
+                log.debug("Session of user {} closed before join to room {} completed", userId, roomId);
                 return;
             }
 
-            sessions.put(userId, session);
-            userRooms.put(userId, roomId);
-
-            roomSessionService.addParticipant(
-                    roomUuid,
-                    userUuid,
-                    participantInfo.getName(),
-                    participantInfo.getEmail(),
-                    participantInfo.getRole(),
-                    participantInfo.isGuest(),
-                    participantInfo.getJoinedAt(),
-                    session.getId()
-            );
-
-            mediaStateService.updateMediaState(roomUuid, userUuid, true, true, false);
-
-            broadcastToRoomSafe(roomId, createMessage("new_peer", Map.of("userId", userId)));
+            try {
+                UUID roomUuid = context.roomId();
+                UUID userUuid = context.userId();
+                ParticipantInfo participantInfo = result.self();
+
+                OutboundWebSocketSession replaced = sessionRegistry.register(roomId, userId,
+                        outboundQueueService.wrap(session, "signaling"));
+                if (replaced != null && replaced.isOpen()) {
+                    log.info("Closing previous session of user {} replaced by a new connection", userId);
+                    replaced.close(CloseStatus.NORMAL);
+                }
 
-            sendCurrentMediaStates(roomUuid, userId);
+                roomSessionService.addParticipant(
+                        roomUuid,
+                        userUuid,
+                        participantInfo.getName(),
+                        participantInfo.getEmail(),
+                        participantInfo.getRole(),
+                        participantInfo.isGuest(),
+                        participantInfo.getJoinedAt(),
+                        session.getId()
+                );
 
-            sendParticipantsList(roomUuid, userId);
+                mediaStateService.updateMediaState(roomUuid, userUuid, true, true, false);
 
-            log.info("User {} successfully connected to room {}", userId, roomId);
+                // Остальные узнают о входе из ближайшей roster_delta
+                sendRoomSnapshot(roomUuid, userId, result.roster());
+                roomJoinPipeline.recordFirstFrame(startedAt);
 
-        } catch (Exception e) {
-            log.error("Failed to establish WebSocket connection for user {} to room {}",
-                    userId, roomId, e);
+                log.info("User {} successfully connected to room {}", userId, roomId);
 
-            sendErrorSafe(session, "Failed to join room: " + e.getMessage());
-            session.close(CloseStatus.NOT_ACCEPTABLE);
+            } catch (Exception e) {
+                OutboundWebSocketSession outbound = sessionRegistry.unregister(userId, session);
+                if (outbound != null) {
+                    outbound.discard();
+                }
+                failJoin(session, context, e);
+            }
         }
     }
 
-    private ParticipantInfo getParticipantInfo(UUID roomId, UUID userId) {
-        try {
-            Optional<RoomParticipant> roomParticipant = roomParticipantRepository
-                    .findByRoomAndUserWithDetails(roomId, userId);
-
-            return roomParticipant.map(rp -> new ParticipantInfo(
-                    rp.getUser().getUuid(),
-                    rp.getUser().getName(),
-                    rp.getUser().getEmail(),
-                    rp.getRole(),
-                    rp.getUser().isGuest(),
-                    rp.getJoinedAt(),
-                    rp.getLastActiveAt()
-            )).orElse(null);
+    private void failJoin(WebSocketSession session, WebSocketSessionContext context, Throwable error) {
+        log.error("Failed to establish WebSocket connection for user {} to room {}",
+                context.userIdValue(), context.roomIdValue(), error);
 
-        } catch (Exception e) {
-            log.error("Error getting participant info for user {} in room {}", userId, roomId, e);
-            return null;
+        try {
+            SignalingEvent errorMessage = new SignalingEvent.Error("Failed to join room: " + error.getMessage(),
+                    System.currentTimeMillis());
+            outboundQueueService.sendAndClose(session, "signaling", signalingCodec.encode(errorMessage),
+                    CloseStatus.NOT_ACCEPTABLE);
+        } catch (JsonProcessingException e) {
+            log.error("Error encoding join failure for user {}", context.userIdValue(), e);
+            try {
+                session.close(CloseStatus.NOT_ACCEPTABLE);
+            } catch (IOException closeError) {
+                log.debug("Error closing session of user {}", context.userIdValue(), closeError);
+            }
         }
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        String userId = getUserIdFromSession(session);
-        String roomId = userRooms.get(userId);
+        WebSocketSessionContext context = WebSocketSessionContext.from(session);
+        String userId = context != null ? context.userIdValue() : null;
+        String roomId = context != null ? context.roomIdValue() : null;
+
+        PendingJoin pending = context != null ? pendingJoins.get(session.getId()) : null;
+        if (pending != null) {
+            synchronized (pending) {
+                if (!pending.done) {
+                    if (pending.frames.size() < MAX_EARLY_FRAMES) {
+                        pending.frames.add(message);
+                    } else {
+                        log.warn("Rejecting message from user {}: join to room {} is still in progress", userId, roomId);
+                        sendErrorSafe(session, "Join in progress, retry");
+                    }
+                    return;
+                }
+            }
+        }
 
-        if (roomId == null) {
+        dispatch(session, context, message);
+    }
+
+    private void dispatch(WebSocketSession session, WebSocketSessionContext context, TextMessage message) {
+        String userId = context != null ? context.userIdValue() : null;
+        String roomId = context != null ? context.roomIdValue() : null;
+
+        if (context == null || !sessionRegistry.isConnected(roomId, userId)) {
             log.warn("User {} sent message without active room", userId);
             sendErrorSafe(session, "No active room");
             return;
         }
 
         try {
-            Map<String, Object> payload = objectMapper.readValue(message.getPayload(), Map.class);
-            String type = (String) payload.get("type");
-
-            if (type == null) {
-                log.warn("Message without type from user {}", userId);
-                return;
-            }
-
-            log.debug("Received message type: {} from user: {} in room: {}", type, userId, roomId);
-
-            switch (type) {
-                case "offer":
-                    handleOffer(roomId, userId, payload);
-                    break;
-                case "answer":
-                    handleAnswer(roomId, userId, payload);
-                    break;
-                case "ice_candidate":
-                    handleIceCandidate(roomId, userId, payload);
-                    break;
-                case "get_participants":
-                    handleGetParticipants(roomId, userId);
-                    break;
-                case "peer_left":
-                    handlePeerLeft(roomId, userId);
-                    break;
-                case "new_peer":
-                    log.debug("New peer message from {}", userId);
-                    break;
-                case "media_state_update":
-                    handleMediaStateUpdate(roomId, userId, payload);
-                    break;
-                case "request_media_state":
-                    handleRequestMediaState(roomId, userId);
-                    break;
-                case "request_all_media_states":
-                    handleRequestAllMediaStates(roomId, userId);
-                    break;
-                default:
-                    log.warn("Unknown message type: {} from user {}", type, userId);
-                    sendErrorSafe(session, "Unknown message type: " + type);
+            SignalingMessage signal = signalingCodec.decode(message.getPayload());
+
+            log.debug("Received {} from user: {} in room: {}", signal.getClass().getSimpleName(), userId, roomId);
+
+            if (signal instanceof SignalingMessage.Offer offer) {
+                handleOffer(userId, offer);
+            } else if (signal instanceof SignalingMessage.Answer answer) {
+                handleAnswer(userId, answer);
+            } else if (signal instanceof SignalingMessage.IceCandidate candidate) {
+                handleIceCandidate(userId, candidate);
+            } else if (signal instanceof SignalingMessage.GetParticipants) {
+                handleGetParticipants(context);
+            } else if (signal instanceof SignalingMessage.GetRoomSnapshot) {
+                sendRoomSnapshot(context.roomId(), userId, null);
+            } else if (signal instanceof SignalingMessage.PeerLeft) {
+                handlePeerLeft(context);
+            } else if (signal instanceof SignalingMessage.NewPeer) {
+                log.debug("New peer message from {}", userId);
+            } else if (signal instanceof SignalingMessage.MediaStateUpdate update) {
+                handleMediaStateUpdate(context, update);
+            } else if (signal instanceof SignalingMessage.RequestMediaState) {
+                handleRequestMediaState(context);
+            } else if (signal instanceof SignalingMessage.RequestAllMediaStates request) {
+                handleRequestAllMediaStates(context, request);
+            } else if (signal instanceof SignalingMessage.Oversized oversized) {
+                log.warn("Dropped {} from user {}: payload of {} bytes exceeds relay limit",
+                        oversized.type(), userId, oversized.bytes());
+                sendErrorToUser(userId, "Payload too large");
+            } else if (signal instanceof SignalingMessage.Unknown unknown) {
+                if (unknown.type() == null) {
+                    log.warn("Message without type from user {}", userId);
+                    return;
+                }
+                log.warn("Unknown message type: {} from user {}", unknown.type(), userId);
+                sendErrorToUser(userId, "Unknown message type: " + unknown.type());
             }
 
         } catch (Exception e) {
             log.error("Error handling WebSocket message from user {}", userId, e);
-            sendErrorSafe(session, "Error processing message");
+            sendErrorToUser(userId, "Error processing message");
         }
     }
 
-    private void handleOffer(String roomId, String fromUserId, Map<String, Object> payload) {
-        String targetUserId = (String) payload.get("targetUserId");
-        Object sdp = payload.get("sdp");
+    private void handleOffer(String fromUserId, SignalingMessage.Offer offer) {
+        String targetUserId = offer.targetUserId();
+        RawJson sdp = offer.sdp();
 
         if (targetUserId != null && sdp != null) {
-            Map<String, Object> message = createMessage("offer", Map.of(
-                    "fromUserId", fromUserId,
-                    "sdp", sdp
-            ));
-
-            sendToUserSafe(targetUserId, message);
+            iceCandidateBatcher.resetPair(fromUserId, targetUserId);
+            sendFrameSafe(targetUserId, signalingCodec.encodeRelay("offer", fromUserId, "sdp", sdp));
             log.debug("Offer sent from {} to {}", fromUserId, targetUserId);
         } else {
             log.warn("Invalid offer from {}: targetUserId={}, sdp={}",
@@ -195,190 +265,179 @@ public class WebRTCController extends TextWebSocketHandler {
         }
     }
 
-    private void handleAnswer(String roomId, String fromUserId, Map<String, Object> payload) {
-        String targetUserId = (String) payload.get("targetUserId");
-        Object sdp = payload.get("sdp");
+    private void handleAnswer(String fromUserId, SignalingMessage.Answer answer) {
+        String targetUserId = answer.targetUserId();
+        RawJson sdp = answer.sdp();
 
         if (targetUserId != null && sdp != null) {
-            Map<String, Object> message = createMessage("answer", Map.of(
-                    "fromUserId", fromUserId,
-                    "sdp", sdp
-            ));
-
-            sendToUserSafe(targetUserId, message);
+            iceCandidateBatcher.resetPair(fromUserId, targetUserId);
+            sendFrameSafe(targetUserId, signalingCodec.encodeRelay("answer", fromUserId, "sdp", sdp));
             log.debug("Answer sent from {} to {}", fromUserId, targetUserId);
         }
     }
 
-    private void handleIceCandidate(String roomId, String fromUserId, Map<String, Object> payload) {
-        String targetUserId = (String) payload.get("targetUserId");
-        Object candidate = payload.get("candidate");
+    private void handleIceCandidate(String fromUserId, SignalingMessage.IceCandidate iceCandidate) {
+        String targetUserId = iceCandidate.targetUserId();
+        RawJson candidate = iceCandidate.candidate();
 
         if (targetUserId != null && candidate != null) {
-            Map<String, Object> message = createMessage("ice_candidate", Map.of(
-                    "fromUserId", fromUserId,
-                    "candidate", candidate
-            ));
-
-            sendToUserSafe(targetUserId, message);
-            log.debug("ICE candidate sent from {} to {}", fromUserId, targetUserId);
+            iceCandidateBatcher.submit(fromUserId, targetUserId, candidate, this::sendFrameSafe);
+            log.debug("ICE candidate queued from {} to {}", fromUserId, targetUserId);
         }
     }
 
-    private void handleGetParticipants(String roomId, String userId) {
+    private void handleGetParticipants(WebSocketSessionContext context) {
         try {
-            UUID roomUuid = UUID.fromString(roomId);
-            sendParticipantsList(roomUuid, userId);
+            sendParticipantsList(context.roomId(), context.userIdValue());
         } catch (Exception e) {
-            log.error("Error getting participants for room {}", roomId, e);
+            log.error("Error getting participants for room {}", context.roomId(), e);
         }
     }
 
-    private void handlePeerLeft(String roomId, String userId) {
+    private void handlePeerLeft(WebSocketSessionContext context) {
+        String roomId = context.roomIdValue();
+        String userId = context.userIdValue();
         log.info("User {} explicitly left room {}", userId, roomId);
 
-        broadcastToRoomSafe(roomId, createMessage("peer_left", Map.of("userId", userId)));
-
         try {
-            UUID roomUuid = UUID.fromString(roomId);
-            UUID userUuid = UUID.fromString(userId);
+            roomSessionService.removeParticipant(context.roomId(), context.userId());
 
-            roomSessionService.removeParticipant(roomUuid, userUuid);
-
-            mediaStateService.removeMediaState(roomUuid, userUuid);
+            mediaStateService.removeMediaState(context.roomId(), context.userId());
 
         } catch (Exception e) {
             log.error("Error removing participant from room", e);
         }
 
+        iceCandidateBatcher.clearUser(userId);
         cleanupUserSession(userId);
     }
 
-    private void handleMediaStateUpdate(String roomId, String userId, Map<String, Object> payload) {
+    private void handleMediaStateUpdate(WebSocketSessionContext context, SignalingMessage.MediaStateUpdate update) {
+        String roomId = context.roomIdValue();
+        String userId = context.userIdValue();
         try {
-            UUID roomUuid = UUID.fromString(roomId);
-            UUID userUuid = UUID.fromString(userId);
-
-            Boolean audioEnabled = (Boolean) payload.get("audioEnabled");
-            Boolean videoEnabled = (Boolean) payload.get("videoEnabled");
-            Boolean screenSharing = (Boolean) payload.get("screenSharing");
-
-            mediaStateService.updateMediaState(roomUuid, userUuid,
-                    audioEnabled != null ? audioEnabled : false,
-                    videoEnabled != null ? videoEnabled : false,
-                    screenSharing != null ? screenSharing : false
-            );
-
-            roomSessionService.updateParticipantMediaStatus(userUuid,
-                    audioEnabled != null ? audioEnabled : false,
-                    videoEnabled != null ? videoEnabled : false
-            );
-
-            Map<String, Object> mediaUpdate = createMessage("media_state_update", Map.of(
-                    "userId", userId,
-                    "audioEnabled", audioEnabled != null ? audioEnabled : false,
-                    "videoEnabled", videoEnabled != null ? videoEnabled : false,
-                    "screenSharing", screenSharing != null ? screenSharing : false,
-                    "timestamp", System.currentTimeMillis()
-            ));
-
-            broadcastToRoomSafe(roomId, mediaUpdate);
+            UUID roomUuid = context.roomId();
+            UUID userUuid = context.userId();
+
+            boolean audioEnabled = Boolean.TRUE.equals(update.audioEnabled());
+            boolean videoEnabled = Boolean.TRUE.equals(update.videoEnabled());
+            boolean screenSharing = Boolean.TRUE.equals(update.screenSharing());
+
+            mediaStateService.updateMediaState(roomUuid, userUuid, audioEnabled, videoEnabled, screenSharing);
+
+            roomSessionService.updateParticipantMediaStatus(userUuid, audioEnabled, videoEnabled);
+
+            SignalingEvent mediaUpdate = new SignalingEvent.MediaStateUpdate(userId,
+                    audioEnabled, videoEnabled, screenSharing, null, System.currentTimeMillis());
+
+            broadcastToRoomSafe(roomId, mediaUpdate, FramePriority.DEFAULT, mediaStateKey(userId));
 
             log.debug("Media state broadcast for user {} in room {}: audio={}, video={}, screen={}",
                     userId, roomId, audioEnabled, videoEnabled, screenSharing);
 
         } catch (Exception e) {
             log.error("Error handling media state update from user {}: {}", userId, e.getMessage());
-            sendErrorSafe(sessions.get(userId), "Error updating media state");
+            sendErrorToUser(userId, "Error updating media state");
         }
     }
 
-    private void handleRequestMediaState(String roomId, String userId) {
+    private void handleRequestMediaState(WebSocketSessionContext context) {
+        String userId = context.userIdValue();
         try {
-            UUID roomUuid = UUID.fromString(roomId);
-            UUID userUuid = UUID.fromString(userId);
-
-            MediaStateService.MediaState state = mediaStateService.getMediaState(roomUuid, userUuid);
-
-            Map<String, Object> response = createMessage("media_state_response", Map.of(
-                    "userId", userId,
-                    "audioEnabled", state.isAudioEnabled(),
-                    "videoEnabled", state.isVideoEnabled(),
-                    "screenSharing", state.isScreenSharing(),
-                    "lastUpdate", state.getLastUpdate(),
-                    "timestamp", System.currentTimeMillis()
-            ));
+            MediaStateService.MediaState state = mediaStateService.getMediaState(context.roomId(), context.userId());
 
-            sendToUserSafe(userId, response);
+            sendToUserSafe(userId, new SignalingEvent.MediaStateResponse(userId,
+                    state.isAudioEnabled(), state.isVideoEnabled(), state.isScreenSharing(),
+                    state.getLastUpdate(), System.currentTimeMillis()));
 
         } catch (Exception e) {
             log.error("Error handling media state request from user {}: {}", userId, e.getMessage());
         }
     }
 
-    private void handleRequestAllMediaStates(String roomId, String userId) {
+    private void handleRequestAllMediaStates(WebSocketSessionContext context,
+                                             SignalingMessage.RequestAllMediaStates request) {
+        String userId = context.userIdValue();
         try {
-            UUID roomUuid = UUID.fromString(roomId);
-            sendCurrentMediaStates(roomUuid, userId);
+            long since = request.sinceVersion() != null ? request.sinceVersion() : 0L;
+            Map<String, SignalingEvent.MediaStateView> states = new HashMap<>();
+            MediaStateService.MediaStateCursor cursor = mediaStateService.visitChangesSince(
+                    context.roomId(), since, collectInto(states));
+
+            sendToUserSafe(userId, new SignalingEvent.AllMediaStates(
+                    context.roomIdValue(), cursor.version(), cursor.full(), states, System.currentTimeMillis()));
+            log.debug("Sent {} media states since {} to user {}", states.size(), since, userId);
         } catch (Exception e) {
             log.error("Error handling all media states request from user {}: {}", userId, e.getMessage());
         }
     }
 
-    private void sendCurrentMediaStates(UUID roomId, String targetUserId) {
-        try {
-            Map<UUID, MediaStateService.MediaState> allStates = mediaStateService.getAllMediaStates(roomId);
-
-            if (!allStates.isEmpty()) {
-                Map<String, Object> statesMap = new HashMap<>();
-                allStates.forEach((userUuid, state) -> {
-                    Map<String, Object> userState = Map.of(
-                            "audioEnabled", state.isAudioEnabled(),
-                            "videoEnabled", state.isVideoEnabled(),
-                            "screenSharing", state.isScreenSharing(),
-                            "lastUpdate", state.getLastUpdate()
-                    );
-                    statesMap.put(userUuid.toString(), userState);
-                });
-
-                Map<String, Object> response = createMessage("all_media_states", Map.of(
-                        "roomId", roomId.toString(),
-                        "states", statesMap,
-                        "timestamp", System.currentTimeMillis()
-                ));
-
-                sendToUserSafe(targetUserId, response);
-                log.debug("Sent all media states to user {} for room {}", targetUserId, roomId);
-            }
-        } catch (Exception e) {
-            log.error("Error sending current media states to user {}: {}", targetUserId, e.getMessage());
-        }
+    /**
+     * Версия читается до состава: дельты с fromVersion не новее нее клиент применит поверх снимка.
+     * Без roster снимок строится только из памяти, это путь восстановления после пропуска дельты.
+     */
+    private void sendRoomSnapshot(UUID roomId, String userId, List<ParticipantInfo> roster) {
+        long version = roomSessionService.getRosterVersion(roomId);
+        var participants = roster != null
+                ? roomSessionService.getActiveParticipantsWithDetails(roomId, roster)
+                : roomSessionService.getActiveParticipants(roomId);
+        Map<String, SignalingEvent.MediaStateView> mediaStates = new HashMap<>();
+        MediaStateService.MediaStateCursor media = mediaStateService.visitChangesSince(roomId, 0L,
+                collectInto(mediaStates));
+
+        sendToUserSafe(userId, new SignalingEvent.RoomSnapshot(
+                roomId.toString(),
+                version,
+                participants,
+                roomSessionService.getActiveParticipantsCount(roomId),
+                media.version(),
+                mediaStates,
+                System.currentTimeMillis()
+        ));
+        log.debug("Sent room snapshot to user {}: {} participants", userId, participants.size());
+    }
+
+    private MediaStateService.MediaStateVisitor collectInto(Map<String, SignalingEvent.MediaStateView> statesMap) {
+        return (userUuid, audioEnabled, videoEnabled, screenSharing, lastUpdate) -> statesMap.put(userUuid.toString(),
+                new SignalingEvent.MediaStateView(audioEnabled, videoEnabled, screenSharing, lastUpdate));
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        String userId = getUserIdFromSession(session);
-        String roomId = userRooms.get(userId);
+        pendingJoins.remove(session.getId());
+        synchronized (session) {
+            cleanupClosedSession(session, status);
+        }
+        outboundQueueService.release(session);
+    }
 
-        if (roomId != null && userId != null) {
+    private void cleanupClosedSession(WebSocketSession session, CloseStatus status) {
+        WebSocketSessionContext context = WebSocketSessionContext.from(session);
+        String userId = getUserId(session);
+        String roomId = sessionRegistry.getRoomId(userId);
+
+        // Сессия уже заменена новым подключением того же пользователя
+        OutboundWebSocketSession outbound = sessionRegistry.unregister(userId, session);
+        if (outbound == null) {
+            log.debug("Stale session of user {} closed, status: {}", userId, status);
+            return;
+        }
+        outbound.discard();
+        iceCandidateBatcher.clearUser(userId);
+
+        if (roomId != null) {
             log.info("User {} connection closed from room {}, status: {}",
                     userId, roomId, status);
 
             try {
-                UUID roomUuid = UUID.fromString(roomId);
-                UUID userUuid = UUID.fromString(userId);
+                UUID roomUuid = context.roomId();
+                UUID userUuid = context.userId();
 
                 // Уведомляем об отключении медиа
-                Map<String, Object> mediaOffline = createMessage("media_state_update", Map.of(
-                        "userId", userId,
-                        "audioEnabled", false,
-                        "videoEnabled", false,
-                        "screenSharing", false,
-                        "isOffline", true,
-                        "timestamp", System.currentTimeMillis()
-                ));
+                SignalingEvent mediaOffline = new SignalingEvent.MediaStateUpdate(userId,
+                        false, false, false, true, System.currentTimeMillis());
 
-                broadcastToRoomSafe(roomId, mediaOffline);
+                broadcastToRoomSafe(roomId, mediaOffline, FramePriority.DEFAULT, mediaStateKey(userId));
 
                 roomSessionService.removeParticipant(roomUuid, userUuid);
 
@@ -390,15 +449,15 @@ public class WebRTCController extends TextWebSocketHandler {
                 log.error("Error cleaning up user session", e);
             }
         }
-
-        cleanupUserSession(userId);
     }
 
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
-        String userId = getUserIdFromSession(session);
+        String userId = getUserId(session);
         log.error("Transport error for user {}", userId, exception);
-        cleanupUserSession(userId);
+        if (session.isOpen()) {
+            session.close(CloseStatus.SERVER_ERROR);
+        }
     }
 
     @Override
@@ -407,8 +466,7 @@ public class WebRTCController extends TextWebSocketHandler {
     }
 
     private void cleanupUserSession(String userId) {
-        WebSocketSession session = sessions.remove(userId);
-        userRooms.remove(userId);
+        OutboundWebSocketSession session = sessionRegistry.unregister(userId);
         if (session != null && session.isOpen()) {
             try {
                 session.close(CloseStatus.NORMAL);
@@ -420,31 +478,11 @@ public class WebRTCController extends TextWebSocketHandler {
 
     private void sendParticipantsList(UUID roomId, String userId) {
         try {
-            List<RoomParticipant> roomParticipants = roomParticipantRepository
-                    .findByRoomUuidWithDetails(roomId);
-
-            List<ParticipantInfo> dbParticipants = roomParticipants.stream()
-                    .map(rp -> new ParticipantInfo(
-                            rp.getUser().getUuid(),
-                            rp.getUser().getName(),
-                            rp.getUser().getEmail(),
-                            rp.getRole(),
-                            rp.getUser().isGuest(),
-                            rp.getJoinedAt(),
-                            rp.getLastActiveAt()
-                    ))
-                    .collect(Collectors.toList());
-
-            var participants = roomSessionService.getActiveParticipantsWithDetails(roomId, dbParticipants);
-            int count = roomSessionService.getActiveParticipantsCount(roomId);
-
-            Map<String, Object> message = createMessage("participants_list", Map.of(
-                    "participants", participants,
-                    "count", count,
-                    "roomId", roomId.toString()
-            ));
-
-            sendToUserSafe(userId, message);
+            var participants = roomSessionService.getActiveParticipants(roomId);
+            int count = participants.size();
+
+            sendToUserSafe(userId, new SignalingEvent.ParticipantsList(
+                    participants, count, roomId.toString(), System.currentTimeMillis()));
             log.debug("Sent participants list to user {}: {} participants", userId, count);
 
         } catch (Exception e) {
@@ -452,15 +490,41 @@ public class WebRTCController extends TextWebSocketHandler {
         }
     }
 
-    private void sendToUserSafe(String userId, Map<String, Object> message) {
-        WebSocketSession session = sessions.get(userId);
+    private void broadcastRosterDelta(RoomSessionService.RosterDelta delta) {
+        UUID roomId = delta.roomId();
+        List<String> left = delta.left().stream().map(UUID::toString).toList();
+
+        broadcastToRoomSafe(roomId.toString(), new SignalingEvent.RosterDelta(
+                roomId.toString(),
+                delta.fromVersion(),
+                delta.version(),
+                delta.joined(),
+                left,
+                roomSessionService.getActiveParticipantsCount(roomId),
+                System.currentTimeMillis()
+        ), FramePriority.SIGNALING, null);
+
+        log.debug("Roster delta {}..{} for room {}: +{} -{}", delta.fromVersion(), delta.version(),
+                roomId, delta.joined().size(), left.size());
+    }
+
+    private void sendToUserSafe(String userId, SignalingEvent message) {
+        sendToUserSafe(userId, message, FramePriority.DEFAULT);
+    }
+
+    private void sendToUserSafe(String userId, SignalingEvent message, FramePriority priority) {
+        try {
+            sendFrameSafe(userId, signalingCodec.encode(message, priority, null));
+        } catch (JsonProcessingException e) {
+            log.error("Error encoding message for user {}", userId, e);
+        }
+    }
+
+    private void sendFrameSafe(String userId, EncodedFrame frame) {
+        OutboundWebSocketSession session = sessionRegistry.getSession(userId);
         if (session != null && session.isOpen()) {
-            try {
-                String jsonMessage = objectMapper.writeValueAsString(message);
-                session.sendMessage(new TextMessage(jsonMessage));
-            } catch (IOException e) {
-                log.error("Error sending message to user {}", userId, e);
-                cleanupUserSession(userId);
+            if (!session.send(frame)) {
+                log.debug("Frame to user {} was not queued", userId);
             }
         } else {
             log.debug("User {} session not found or closed", userId);
@@ -468,53 +532,48 @@ public class WebRTCController extends TextWebSocketHandler {
         }
     }
 
-    private void broadcastToRoomSafe(String roomId, Map<String, Object> message) {
+    private void broadcastToRoomSafe(String roomId, SignalingEvent message,
+                                     FramePriority priority, String coalesceKey) {
+        EncodedFrame frame;
+        try {
+            frame = signalingCodec.encode(message, priority, coalesceKey);
+        } catch (JsonProcessingException e) {
+            log.error("Error encoding broadcast for room {}", roomId, e);
+            return;
+        }
+
+        Set<String> recipients = sessionRegistry.getRoomUserIds(roomId);
         int sentCount = 0;
-        for (Map.Entry<String, String> entry : userRooms.entrySet()) {
-            if (roomId.equals(entry.getValue())) {
-                String userId = entry.getKey();
-                sendToUserSafe(userId, message);
-                sentCount++;
-            }
+        for (String userId : recipients) {
+            sendFrameSafe(userId, frame);
+            sentCount++;
         }
+
+        frameEncoder.recordBroadcast(frame, sentCount);
         log.debug("Broadcast message to {} users in room {}", sentCount, roomId);
     }
 
+    private void sendErrorToUser(String userId, String error) {
+        sendToUserSafe(userId, new SignalingEvent.Error(error, System.currentTimeMillis()));
+    }
+
     private void sendErrorSafe(WebSocketSession session, String error) {
         if (session != null && session.isOpen()) {
             try {
-                Map<String, Object> errorMessage = createMessage("error", Map.of("message", error));
-                String jsonError = objectMapper.writeValueAsString(errorMessage);
-                session.sendMessage(new TextMessage(jsonError));
+                SignalingEvent errorMessage = new SignalingEvent.Error(error, System.currentTimeMillis());
+                outboundQueueService.send(session, "signaling", signalingCodec.encode(errorMessage));
             } catch (Exception e) {
                 log.debug("Could not send error message (session might be closed)", e);
             }
         }
     }
 
-    private Map<String, Object> createMessage(String type, Map<String, Object> data) {
-        Map<String, Object> message = new HashMap<>(data);
-        message.put("type", type);
-        message.put("timestamp", System.currentTimeMillis());
-        return message;
-    }
-
-    private Map<String, String> extractParameters(WebSocketSession session) {
-        Map<String, String> params = new HashMap<>();
-        if (session.getUri() != null && session.getUri().getQuery() != null) {
-            String query = session.getUri().getQuery();
-            for (String param : query.split("&")) {
-                String[] keyValue = param.split("=");
-                if (keyValue.length == 2) {
-                    params.put(keyValue[0], keyValue[1]);
-                }
-            }
-        }
-        return params;
+    private String mediaStateKey(String userId) {
+        return "media_state:" + userId;
     }
 
-    private String getUserIdFromSession(WebSocketSession session) {
-        Map<String, String> params = extractParameters(session);
-        return params.get("userId");
+    private String getUserId(WebSocketSession session) {
+        WebSocketSessionContext context = WebSocketSessionContext.from(session);
+        return context != null ? context.userIdValue() : null;
     }
 }
\ No newline at end of file
@@ -1,275 +1,291 @@
 package com.semasem.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.semasem.dto.exception.CustomException;
 import com.semasem.dto.exception.ErrorCode;
 import com.semasem.dto.request.ChatMessageRequest;
 import com.semasem.dto.request.EditMessageRequest;
 import com.semasem.dto.response.ChatMessageResponse;
+import com.semasem.dto.websocket.ChatCommand;
+import com.semasem.dto.websocket.ChatEvent;
 import com.semasem.repository.RoomParticipantRepository;
-import com.semasem.repository.RoomRepository;
-import com.semasem.repository.UserRepository;
 import com.semasem.repository.entity.ChatMessageType;
-import com.semasem.repository.entity.Room;
 import com.semasem.repository.entity.RoomParticipant;
-import com.semasem.repository.entity.User;
+import com.semasem.service.ChatEventLog;
+import com.semasem.service.ChatReadCursors;
 import com.semasem.service.ChatService;
+import com.semasem.service.ChatWriteBehindQueue;
+import com.semasem.service.websocket.ChatCodec;
+import com.semasem.service.websocket.ChatFloodControl;
+import com.semasem.service.websocket.ChatHistoryCompactor;
+import com.semasem.service.websocket.ChatTypingTracker;
+import com.semasem.service.websocket.EncodedFrame;
+import com.semasem.service.websocket.OutboundQueueService;
+import com.semasem.service.websocket.OutboundWebSocketSession;
+import com.semasem.service.websocket.RoomSessionRegistry;
+import com.semasem.service.websocket.WebSocketFrameEncoder;
+import com.semasem.service.websocket.WebSocketSessionContext;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-import java.io.IOException;
 import java.security.Principal;
-import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class WebSocketChatController extends TextWebSocketHandler {
 
-    private final ObjectMapper objectMapper;
     private final ChatService chatService;
-    private final UserRepository userRepository;
-    private final RoomRepository roomRepository;
     private final RoomParticipantRepository roomParticipantRepository;
-
-    private final Map<String, WebSocketSession> chatSessions = new ConcurrentHashMap<>();
-    private final Map<String, String> userChatRooms = new ConcurrentHashMap<>();
-    private final Map<String, Set<String>> roomChatSubscribers = new ConcurrentHashMap<>();
+    private final WebSocketFrameEncoder frameEncoder;
+    private final ChatCodec chatCodec;
+    private final OutboundQueueService outboundQueueService;
+    private final ChatWriteBehindQueue chatWriteBehindQueue;
+    private final ChatReadCursors chatReadCursors;
+    private final ChatTypingTracker chatTypingTracker;
+    private final ChatFloodControl chatFloodControl;
+
+    // Кадр chat_typing несет полное состояние комнаты, в очереди отправки нужен только последний
+    private static final String TYPING_KEY = "chat_typing";
+
+    private final RoomSessionRegistry chatSessionRegistry = new RoomSessionRegistry();
+
+    @PostConstruct
+    void subscribe() {
+        chatWriteBehindQueue.subscribe(this::sendAck);
+        chatReadCursors.subscribe(this::broadcastReadState);
+        chatTypingTracker.subscribe(this::broadcastTyping);
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        Map<String, String> params = extractParameters(session);
-        String token = params.get("token");
-        String roomId = params.get("roomId");
-        String userId = params.get("userId");
-
-        log.info("Chat WebSocket connection attempt - Room: {}, User: {}", roomId, userId);
-
-        if (token == null || roomId == null || userId == null) {
-            log.warn("Invalid chat connection parameters");
+        WebSocketSessionContext context = WebSocketSessionContext.from(session);
+        if (context == null) {
+            log.warn("Chat session {} has no handshake context", session.getId());
             session.close(CloseStatus.BAD_DATA);
             return;
         }
 
-        try {
-            UUID roomUuid = UUID.fromString(roomId);
-            UUID userUuid = UUID.fromString(userId);
+        String roomId = context.roomIdValue();
+        String userId = context.userIdValue();
+        log.info("Chat WebSocket connection attempt - Room: {}, User: {}", roomId, userId);
 
-            validateChatAccess(roomUuid, userUuid);
+        try {
+            validateChatAccess(context.roomId(), context.userId());
 
-            chatSessions.put(userId, session);
-            userChatRooms.put(userId, roomId);
-            roomChatSubscribers.computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet()).add(userId);
+            OutboundWebSocketSession replaced = chatSessionRegistry.register(roomId, userId,
+                    outboundQueueService.wrap(session, "chat"));
+            if (replaced != null && replaced.isOpen()) {
+                log.info("Closing previous chat session of user {} replaced by a new connection", userId);
+                replaced.close(CloseStatus.NORMAL);
+            }
 
-            sendChatHistory(roomUuid, userId);
+            // Историю или пропущенные события клиент запрашивает сам через chat_get_history
+            sendReadState(context);
 
-            notifyUserJoinedChat(roomId, userId);
+            notifyUserJoinedChat(context);
 
             log.info("User {} successfully connected to chat in room {}", userId, roomId);
 
         } catch (Exception e) {
             log.error("Failed to establish chat connection for user {} to room {}", userId, roomId, e);
-            sendChatError(session, "Failed to join chat: " + e.getMessage());
-            session.close(CloseStatus.NOT_ACCEPTABLE);
+            OutboundWebSocketSession outbound = chatSessionRegistry.unregister(userId, session);
+            if (outbound != null) {
+                outbound.discard();
+            }
+            ChatEvent errorMessage = new ChatEvent.Error("Failed to join chat: " + e.getMessage(),
+                    System.currentTimeMillis());
+            outboundQueueService.sendAndClose(session, "chat", chatCodec.encode(errorMessage),
+                    CloseStatus.NOT_ACCEPTABLE);
         }
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        String userId = getUserIdFromSession(session);
-        String roomId = userChatRooms.get(userId);
+        WebSocketSessionContext context = WebSocketSessionContext.from(session);
+        String userId = context != null ? context.userIdValue() : null;
+        String roomId = context != null ? context.roomIdValue() : null;
 
-        if (roomId == null) {
+        if (context == null || !chatSessionRegistry.isConnected(roomId, userId)) {
             log.warn("User {} sent chat message without active room", userId);
             sendChatError(session, "No active room");
             return;
         }
 
         try {
-            Map<String, Object> payload = objectMapper.readValue(message.getPayload(), Map.class);
-            String type = (String) payload.get("type");
-
-            if (type == null) {
-                log.warn("Chat message without type from user {}", userId);
-                return;
-            }
-
-            log.debug("Received chat message type: {} from user: {} in room: {}", type, userId, roomId);
-
-            switch (type) {
-                case "chat_message":
-                    handleChatMessage(roomId, userId, payload);
-                    break;
-                case "chat_typing_start":
-                    handleChatTypingStart(roomId, userId);
-                    break;
-                case "chat_typing_stop":
-                    handleChatTypingStop(roomId, userId);
-                    break;
-                case "chat_get_history":
-                    handleChatGetHistory(roomId, userId);
-                    break;
-                case "chat_edit_message":
-                    handleChatEditMessage(roomId, userId, payload);
-                    break;
-                case "chat_delete_message":
-                    handleChatDeleteMessage(roomId, userId, payload);
-                    break;
-                case "chat_mark_read":
-                    handleChatMarkRead(roomId, userId, payload);
-                    break;
-                default:
-                    log.warn("Unknown chat message type: {} from user {}", type, userId);
-                    sendChatError(session, "Unknown message type: " + type);
+            ChatCommand command = chatCodec.decode(message.getPayload());
+
+            log.debug("Received chat {} from user: {} in room: {}", command.getClass().getSimpleName(), userId, roomId);
+
+            if (command instanceof ChatCommand.Send send) {
+                handleChatMessage(context, send);
+            } else if (command instanceof ChatCommand.TypingStart) {
+                handleChatTypingStart(context);
+            } else if (command instanceof ChatCommand.TypingStop) {
+                handleChatTypingStop(context);
+            } else if (command instanceof ChatCommand.GetHistory getHistory) {
+                handleChatGetHistory(context, getHistory);
+            } else if (command instanceof ChatCommand.Edit edit) {
+                handleChatEditMessage(context, edit);
+            } else if (command instanceof ChatCommand.Delete delete) {
+                handleChatDeleteMessage(context, delete);
+            } else if (command instanceof ChatCommand.MarkRead markRead) {
+                handleChatMarkRead(context, markRead);
+            } else if (command instanceof ChatCommand.Unknown unknown) {
+                if (unknown.type() == null) {
+                    log.warn("Chat message without type from user {}", userId);
+                    return;
+                }
+                log.warn("Unknown chat message type: {} from user {}", unknown.type(), userId);
+                sendChatErrorToUser(userId, "Unknown message type: " + unknown.type());
             }
 
         } catch (Exception e) {
             log.error("Error handling chat message from user {}", userId, e);
-            sendChatError(session, "Error processing message");
+            sendChatErrorToUser(userId, "Error processing message");
         }
     }
 
-    private void handleChatMessage(String roomId, String userId, Map<String, Object> payload) {
+    private void handleChatMessage(WebSocketSessionContext context, ChatCommand.Send send) {
+        String roomId = context.roomIdValue();
+
+        ChatFloodControl.Rejection rejection = chatFloodControl.tryAcquire(context.roomId(), context.userId());
+        if (rejection != null) {
+            log.debug("Chat message from {} in room {} throttled by {} limit", context.email(), roomId,
+                    rejection.scope());
+            sendToChatUserSafe(context.userIdValue(), new ChatEvent.RateLimited(
+                    rejection.scope().name().toLowerCase(Locale.ROOT), rejection.retryAfterMillis(),
+                    System.currentTimeMillis()));
+            return;
+        }
+
         try {
-            UUID roomUuid = UUID.fromString(roomId);
-            User user = getUserById(userId);
 
             ChatMessageRequest request = ChatMessageRequest.builder()
-                    .content((String) payload.get("content"))
+                    .content(send.content())
                     .type(ChatMessageType.TEXT)
-                    .replyTo(payload.get("replyTo") != null ?
-                            UUID.fromString((String) payload.get("replyTo")) : null)
+                    .replyTo(send.replyTo())
                     .build();
 
-            Principal principal = user::getEmail;
-            ChatMessageResponse response = chatService.sendMessage(roomUuid, request, principal);
-
-            Map<String, Object> message = createChatMessage("chat_message", Map.of(
-                    "message", response,
-                    "roomId", roomId
-            ));
+            ChatMessageResponse response;
+            if (chatService.isWriteBehindEnabled()) {
+                ChatService.Author author = new ChatService.Author(context.userId(), context.name(),
+                        context.email(), context.avatarLink());
+                response = chatService.submitMessage(context.roomId(), author, request);
+            } else {
+                Principal principal = context::email;
+                response = chatService.sendMessage(context.roomId(), request, principal);
+            }
 
-            broadcastToChatRoom(roomId, message);
-            log.info("Chat message sent by {} in room {}", user.getEmail(), roomId);
+            broadcastToChatRoom(roomId, new ChatEvent.Message(response, roomId, System.currentTimeMillis()));
+            chatTypingTracker.stop(context.roomId(), context.userId());
+            log.info("Chat message sent by {} in room {}", context.email(), roomId);
 
+        } catch (CustomException e) {
+            log.warn("Chat message from {} rejected: {}", context.email(), e.getMessage());
+            sendChatErrorToUser(context.userIdValue(), e.getErrorCode() == ErrorCode.CHAT_BUSY
+                    ? "Chat is busy, try again later" : "Failed to send message");
         } catch (Exception e) {
             log.error("Error handling chat message", e);
-            sendChatErrorToUser(userId, "Failed to send message");
+            sendChatErrorToUser(context.userIdValue(), "Failed to send message");
         }
     }
 
-    private void handleChatTypingStart(String roomId, String userId) {
-        try {
-            User user = getUserById(userId);
-
-            Map<String, Object> message = createChatMessage("chat_typing", Map.of(
-                    "user", createUserInfo(user),
-                    "typing", true,
-                    "timestamp", Instant.now().toString()
-            ));
-
-            broadcastToChatRoomExceptUser(roomId, userId, message);
-
-        } catch (Exception e) {
-            log.error("Error handling typing start", e);
+    // Вызывается потоком записи в порядке номеров сообщений
+    private void sendAck(ChatWriteBehindQueue.Ack ack) {
+        String roomId = ack.roomId().toString();
+        long now = System.currentTimeMillis();
+        if (!ack.persisted()) {
+            broadcastToChatRoom(roomId, new ChatEvent.MessageDeleted(ack.messageId().toString(), roomId, null,
+                    ack.deletedSeq(), now));
         }
+        sendToChatUserSafe(ack.userId().toString(),
+                new ChatEvent.Ack(ack.messageId().toString(), roomId, ack.seq(), ack.persisted(), now));
     }
 
-    private void handleChatTypingStop(String roomId, String userId) {
-        try {
-            User user = getUserById(userId);
-
-            Map<String, Object> message = createChatMessage("chat_typing", Map.of(
-                    "user", createUserInfo(user),
-                    "typing", false,
-                    "timestamp", Instant.now().toString()
-            ));
+    // Рассылка - общим кадром раз в тик ChatTypingTracker
+    private void handleChatTypingStart(WebSocketSessionContext context) {
+        chatTypingTracker.start(context.roomId(), context.userId(), createUserInfo(context));
+    }
 
-            broadcastToChatRoomExceptUser(roomId, userId, message);
+    private void handleChatTypingStop(WebSocketSessionContext context) {
+        chatTypingTracker.stop(context.roomId(), context.userId());
+    }
 
-        } catch (Exception e) {
-            log.error("Error handling typing stop", e);
-        }
+    private void broadcastTyping(ChatTypingTracker.TypingState state) {
+        String roomId = state.roomId().toString();
+        broadcastToChatRoomExceptUser(roomId, null,
+                new ChatEvent.Typing(roomId, state.users(), System.currentTimeMillis()), TYPING_KEY);
     }
 
-    private void handleChatGetHistory(String roomId, String userId) {
+    private void handleChatGetHistory(WebSocketSessionContext context, ChatCommand.GetHistory getHistory) {
         try {
-            UUID roomUuid = UUID.fromString(roomId);
-            sendChatHistory(roomUuid, userId);
+            if (getHistory.sinceSeq() == null || !sendMissedEvents(context, getHistory.sinceSeq())) {
+                sendChatHistory(context, getHistory.compact());
+            }
         } catch (Exception e) {
             log.error("Error getting chat history", e);
-            sendChatErrorToUser(userId, "Failed to load chat history");
+            sendChatErrorToUser(context.userIdValue(), "Failed to load chat history");
         }
     }
 
-    private void handleChatEditMessage(String roomId, String userId, Map<String, Object> payload) {
+    private void handleChatEditMessage(WebSocketSessionContext context, ChatCommand.Edit edit) {
+        String roomId = context.roomIdValue();
         try {
-            UUID roomUuid = UUID.fromString(roomId);
-            User user = getUserById(userId);
 
             EditMessageRequest request = EditMessageRequest.builder()
-                    .content((String) payload.get("content"))
+                    .content(edit.content())
                     .build();
 
-            Principal principal = user::getEmail;
-            UUID messageId = UUID.fromString((String) payload.get("messageId"));
-
-            ChatMessageResponse response = chatService.editMessage(roomUuid, messageId, request, principal);
+            Principal principal = context::email;
+            UUID messageId = Objects.requireNonNull(edit.messageId(), "messageId");
 
-            Map<String, Object> message = createChatMessage("chat_message_edited", Map.of(
-                    "message", response,
-                    "roomId", roomId
-            ));
+            chatService.awaitPersisted(messageId);
+            ChatMessageResponse response = chatService.editMessage(context.roomId(), messageId, request, principal);
 
-            broadcastToChatRoom(roomId, message);
-            log.info("Message edited by {} in room {}", user.getEmail(), roomId);
+            broadcastToChatRoom(roomId, new ChatEvent.MessageEdited(response, roomId, System.currentTimeMillis()));
+            log.info("Message edited by {} in room {}", context.email(), roomId);
 
         } catch (Exception e) {
             log.error("Error editing message", e);
-            sendChatErrorToUser(userId, "Failed to edit message");
+            sendChatErrorToUser(context.userIdValue(), "Failed to edit message");
         }
     }
 
-    private void handleChatDeleteMessage(String roomId, String userId, Map<String, Object> payload) {
+    private void handleChatDeleteMessage(WebSocketSessionContext context, ChatCommand.Delete delete) {
+        String roomId = context.roomIdValue();
         try {
-            UUID roomUuid = UUID.fromString(roomId);
-            User user = getUserById(userId);
-
-            Principal principal = user::getEmail;
-            UUID messageId = UUID.fromString((String) payload.get("messageId"));
-
-            if (!hasDeletePermissions(roomUuid, user.getUuid(), messageId)) {
-                throw new CustomException(ErrorCode.ACCESS_DENIED, "No permission to delete this message");
-            }
-
-            chatService.deleteMessage(roomUuid, messageId, principal);
+            Principal principal = context::email;
+            UUID messageId = Objects.requireNonNull(delete.messageId(), "messageId");
 
-            Map<String, Object> message = createChatMessage("chat_message_deleted", Map.of(
-                    "messageId", messageId.toString(),
-                    "roomId", roomId,
-                    "deletedBy", createUserInfo(user),
-                    "timestamp", Instant.now().toString()
-            ));
+            chatService.awaitPersisted(messageId);
+            // Права автора/хоста проверяет ChatService.deleteMessage
+            long seq = chatService.deleteMessage(context.roomId(), messageId, principal);
 
-            broadcastToChatRoom(roomId, message);
-            log.info("Message deleted by {} in room {}", user.getEmail(), roomId);
+            broadcastToChatRoom(roomId, new ChatEvent.MessageDeleted(messageId.toString(), roomId,
+                    createUserInfo(context), seq, System.currentTimeMillis()));
+            log.info("Message deleted by {} in room {}", context.email(), roomId);
 
         } catch (Exception e) {
             log.error("Error deleting message", e);
-            sendChatErrorToUser(userId, "Failed to delete message");
+            sendChatErrorToUser(context.userIdValue(), "Failed to delete message");
         }
     }
 
-    private void handleChatMarkRead(String roomId, String userId, Map<String, Object> payload) {
+    private void handleChatMarkRead(WebSocketSessionContext context, ChatCommand.MarkRead markRead) {
         try {
-            UUID messageId = UUID.fromString((String) payload.get("messageId"));
+            long seq = markRead.seq() != null ? markRead.seq() : Long.MAX_VALUE;
 
-            log.debug("User {} marked message {} as read in room {}", userId, messageId, roomId);
+            // Рассылка - дельтой раз в тик ChatReadCursors
+            if (chatReadCursors.markRead(context.roomId(), context.userId(), seq)) {
+                log.debug("User {} read chat up to seq {} in room {}",
+                        context.userIdValue(), markRead.seq(), context.roomIdValue());
+            }
 
         } catch (Exception e) {
             log.error("Error marking message as read", e);
@@ -278,35 +294,34 @@ public class WebSocketChatController extends TextWebSocketHandler {
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        String userId = getUserIdFromSession(session);
-        String roomId = userChatRooms.get(userId);
-
-        if (roomId != null && userId != null) {
-            log.info("User {} chat connection closed from room {}, status: {}", userId, roomId, status);
-
-            notifyUserLeftChat(roomId, userId);
-
-            cleanupChatUserSession(userId);
+        WebSocketSessionContext context = WebSocketSessionContext.from(session);
+        String userId = context != null ? context.userIdValue() : null;
+        outboundQueueService.release(session);
+
+        // Сессия уже заменена новым подключением того же пользователя
+        OutboundWebSocketSession outbound = chatSessionRegistry.unregister(userId, session);
+        if (outbound == null) {
+            log.debug("Stale chat session of user {} closed, status: {}", userId, status);
+            return;
         }
+        outbound.discard();
 
-        cleanupChatUserSession(userId);
+        log.info("User {} chat connection closed from room {}, status: {}", userId, context.roomIdValue(), status);
+        chatTypingTracker.stop(context.roomId(), context.userId());
+        notifyUserLeftChat(context);
     }
 
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
-        String userId = getUserIdFromSession(session);
-        log.error("Chat transport error for user {}", userId, exception);
-        cleanupChatUserSession(userId);
+        WebSocketSessionContext context = WebSocketSessionContext.from(session);
+        log.error("Chat transport error for user {}", context != null ? context.userIdValue() : null, exception);
+        if (session.isOpen()) {
+            session.close(CloseStatus.SERVER_ERROR);
+        }
     }
 
 
     private void validateChatAccess(UUID roomId, UUID userId) {
-        User user = userRepository.findByUuid(userId)
-                .orElseThrow(() -> new CustomException(ErrorCode.USER_NOT_FOUND));
-
-        Room room = roomRepository.findByUuid(roomId)
-                .orElseThrow(() -> new CustomException(ErrorCode.ROOM_NOT_FOUND));
-
         RoomParticipant participant = roomParticipantRepository
                 .findByRoomUuidAndUserUuid(roomId, userId)
                 .orElseThrow(() -> new CustomException(ErrorCode.ACCESS_DENIED, "Not a room participant"));
@@ -316,178 +331,164 @@ public class WebSocketChatController extends TextWebSocketHandler {
         }
     }
 
-    private boolean hasDeletePermissions(UUID roomId, UUID userId, UUID messageId) {
-
-        if (roomParticipantRepository.isUserHostOfRoom(roomId, userId)) {
-            return true;
-        }
-
+    private void sendChatHistory(WebSocketSessionContext context, boolean compact) {
+        UUID roomId = context.roomId();
+        String userId = context.userIdValue();
         try {
-            User user = getUserById(userId.toString());
-            Principal principal = user::getEmail;
+            long seq = chatService.getCurrentSeq(roomId);
+            List<ChatMessageResponse> messages = chatService.getRecentMessages(roomId);
+            long now = System.currentTimeMillis();
+
+            sendToChatUserSafe(userId, compact
+                    ? ChatHistoryCompactor.compact(context.roomIdValue(), seq, messages, now)
+                    : new ChatEvent.History(messages, context.roomIdValue(), seq, now));
+            log.info("Sent chat history to user {} for room {}", userId, roomId);
 
-            return true;
         } catch (Exception e) {
-            return false;
+            log.error("Error sending chat history to user {}", userId, e);
         }
     }
 
-    private void sendChatHistory(UUID roomId, String userId) {
-        try {
-            User user = getUserById(userId);
-            Principal principal = user::getEmail;
-            List<ChatMessageResponse> messages = chatService.getRecentMessages(roomId, principal);
+    /**
+     * Догоняет клиента событиями после sinceSeq. false - нужна полная история.
+     */
+    private boolean sendMissedEvents(WebSocketSessionContext context, long sinceSeq) {
+        ChatEventLog.Replay replay = chatService.getEventsSince(context.roomId(), sinceSeq);
+        if (replay == null) {
+            return false;
+        }
 
-            Map<String, Object> message = createChatMessage("chat_history", Map.of(
-                    "messages", messages,
-                    "roomId", roomId.toString()
-            ));
+        String roomId = context.roomIdValue();
+        long now = System.currentTimeMillis();
+        List<ChatEvent> events = new ArrayList<>(replay.entries().size());
+        for (ChatEventLog.Entry entry : replay.entries()) {
+            switch (entry.type()) {
+                case MESSAGE -> events.add(new ChatEvent.Message(entry.message(), roomId, now));
+                case EDIT -> events.add(new ChatEvent.MessageEdited(entry.message(), roomId, now));
+                case DELETE -> events.add(new ChatEvent.MessageDeleted(entry.messageId().toString(), roomId, null,
+                        entry.seq(), now));
+            }
+        }
 
-            sendToChatUserSafe(userId, message);
-            log.info("Sent chat history to user {} for room {}", userId, roomId);
+        sendToChatUserSafe(context.userIdValue(), new ChatEvent.Sync(roomId, sinceSeq, replay.seq(), events, now));
+        log.info("Sent {} missed chat events after seq {} to user {}", events.size(), sinceSeq, context.userIdValue());
+        return true;
+    }
 
+    private void sendReadState(WebSocketSessionContext context) {
+        try {
+            UUID roomId = context.roomId();
+            long seq = chatService.getCurrentSeq(roomId);
+            sendToChatUserSafe(context.userIdValue(), new ChatEvent.ReadState(context.roomIdValue(), seq,
+                    toCursorMap(chatReadCursors.snapshot(roomId)), true, System.currentTimeMillis()));
         } catch (Exception e) {
-            log.error("Error sending chat history to user {}", userId, e);
+            log.error("Error sending read state to user {}", context.userIdValue(), e);
         }
     }
 
-    private void notifyUserJoinedChat(String roomId, String userId) {
-        try {
-            User user = getUserById(userId);
+    private void broadcastReadState(ChatReadCursors.ReadStateDelta delta) {
+        String roomId = delta.roomId().toString();
+        broadcastToChatRoom(roomId, new ChatEvent.ReadState(roomId, delta.seq(), toCursorMap(delta.cursors()), false,
+                System.currentTimeMillis()));
+    }
+
+    private Map<String, Long> toCursorMap(Map<UUID, Long> cursors) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        cursors.forEach((userId, seq) -> result.put(userId.toString(), seq));
+        return result;
+    }
 
-            Map<String, Object> message = createChatMessage("chat_user_joined", Map.of(
-                    "user", createUserInfo(user),
-                    "timestamp", Instant.now().toString()
-            ));
+    private void notifyUserJoinedChat(WebSocketSessionContext context) {
+        try {
+            ChatEvent message = new ChatEvent.UserJoined(createUserInfo(context), System.currentTimeMillis());
 
-            broadcastToChatRoomExceptUser(roomId, userId, message);
+            broadcastToChatRoomExceptUser(context.roomIdValue(), context.userIdValue(), message);
 
         } catch (Exception e) {
             log.error("Error notifying user joined chat", e);
         }
     }
 
-    private void notifyUserLeftChat(String roomId, String userId) {
+    private void notifyUserLeftChat(WebSocketSessionContext context) {
         try {
-            User user = getUserById(userId);
-
-            Map<String, Object> message = createChatMessage("chat_user_left", Map.of(
-                    "user", createUserInfo(user),
-                    "timestamp", Instant.now().toString()
-            ));
+            ChatEvent message = new ChatEvent.UserLeft(createUserInfo(context), System.currentTimeMillis());
 
-            broadcastToChatRoomExceptUser(roomId, userId, message);
+            broadcastToChatRoomExceptUser(context.roomIdValue(), context.userIdValue(), message);
 
         } catch (Exception e) {
             log.error("Error notifying user left chat", e);
         }
     }
 
-    private User getUserById(String userId) {
-        return userRepository.findByUuid(UUID.fromString(userId))
-                .orElseThrow(() -> new CustomException(ErrorCode.USER_NOT_FOUND));
+    private ChatEvent.UserInfo createUserInfo(WebSocketSessionContext context) {
+        return new ChatEvent.UserInfo(context.userIdValue(), context.name(), context.email(), context.avatarLink());
     }
 
-    private Map<String, Object> createUserInfo(User user) {
-        return Map.of(
-                "id", user.getUuid().toString(),
-                "name", user.getName(),
-                "email", user.getEmail(),
-                "avatar", user.getAvatarLink()
-        );
-    }
 
+    private void sendToChatUserSafe(String userId, ChatEvent message) {
+        try {
+            sendChatFrameSafe(userId, chatCodec.encode(message));
+        } catch (JsonProcessingException e) {
+            log.error("Error encoding chat message for user {}", userId, e);
+        }
+    }
 
-    private void sendToChatUserSafe(String userId, Map<String, Object> message) {
-        WebSocketSession session = chatSessions.get(userId);
+    private void sendChatFrameSafe(String userId, EncodedFrame frame) {
+        OutboundWebSocketSession session = chatSessionRegistry.getSession(userId);
         if (session != null && session.isOpen()) {
-            try {
-                String jsonMessage = objectMapper.writeValueAsString(message);
-                session.sendMessage(new TextMessage(jsonMessage));
-            } catch (IOException e) {
-                log.error("Error sending chat message to user {}", userId, e);
-                cleanupChatUserSession(userId);
+            if (!session.send(frame)) {
+                log.debug("Chat frame to user {} was not queued", userId);
             }
         }
     }
 
-    private void broadcastToChatRoom(String roomId, Map<String, Object> message) {
-        Set<String> subscribers = roomChatSubscribers.get(roomId);
-        if (subscribers != null) {
-            subscribers.forEach(userId -> sendToChatUserSafe(userId, message));
-        }
+    private void broadcastToChatRoom(String roomId, ChatEvent message) {
+        broadcastToChatRoomExceptUser(roomId, null, message, null);
     }
 
-    private void broadcastToChatRoomExceptUser(String roomId, String excludedUserId, Map<String, Object> message) {
-        Set<String> subscribers = roomChatSubscribers.get(roomId);
-        if (subscribers != null) {
-            subscribers.stream()
-                    .filter(userId -> !userId.equals(excludedUserId))
-                    .forEach(userId -> sendToChatUserSafe(userId, message));
-        }
+    private void broadcastToChatRoomExceptUser(String roomId, String excludedUserId, ChatEvent message) {
+        broadcastToChatRoomExceptUser(roomId, excludedUserId, message, null);
     }
 
-    private void sendChatError(WebSocketSession session, String error) {
-        if (session != null && session.isOpen()) {
-            try {
-                Map<String, Object> errorMessage = createChatMessage("error", Map.of("message", error));
-                String jsonError = objectMapper.writeValueAsString(errorMessage);
-                session.sendMessage(new TextMessage(jsonError));
-            } catch (Exception e) {
-                log.debug("Could not send chat error message", e);
-            }
+    private void broadcastToChatRoomExceptUser(String roomId, String excludedUserId,
+                                               ChatEvent message, String coalesceKey) {
+        Set<String> subscribers = chatSessionRegistry.getRoomUserIds(roomId);
+        if (subscribers.isEmpty()) {
+            return;
         }
-    }
 
-    private void sendChatErrorToUser(String userId, String error) {
-        Map<String, Object> errorMessage = createChatMessage("error", Map.of("message", error));
-        sendToChatUserSafe(userId, errorMessage);
-    }
+        EncodedFrame frame;
+        try {
+            frame = chatCodec.encode(message, coalesceKey);
+        } catch (JsonProcessingException e) {
+            log.error("Error encoding chat broadcast for room {}", roomId, e);
+            return;
+        }
 
-    private void cleanupChatUserSession(String userId) {
-        String roomId = userChatRooms.get(userId);
-        if (roomId != null) {
-            Set<String> subscribers = roomChatSubscribers.get(roomId);
-            if (subscribers != null) {
-                subscribers.remove(userId);
+        int sentCount = 0;
+        for (String userId : subscribers) {
+            if (!userId.equals(excludedUserId)) {
+                sendChatFrameSafe(userId, frame);
+                sentCount++;
             }
         }
 
-        WebSocketSession session = chatSessions.remove(userId);
-        userChatRooms.remove(userId);
+        frameEncoder.recordBroadcast(frame, sentCount);
+    }
 
+    private void sendChatError(WebSocketSession session, String error) {
         if (session != null && session.isOpen()) {
             try {
-                session.close(CloseStatus.NORMAL);
-            } catch (IOException e) {
-                log.debug("Error closing chat session for user {}", userId, e);
+                ChatEvent errorMessage = new ChatEvent.Error(error, System.currentTimeMillis());
+                outboundQueueService.send(session, "chat", chatCodec.encode(errorMessage));
+            } catch (Exception e) {
+                log.debug("Could not send chat error message", e);
             }
         }
     }
 
-    private Map<String, Object> createChatMessage(String type, Map<String, Object> data) {
-        Map<String, Object> message = new HashMap<>(data);
-        message.put("type", type);
-        message.put("timestamp", System.currentTimeMillis());
-        return message;
-    }
-
-    private Map<String, String> extractParameters(WebSocketSession session) {
-        Map<String, String> params = new HashMap<>();
-        if (session.getUri() != null && session.getUri().getQuery() != null) {
-            String query = session.getUri().getQuery();
-            for (String param : query.split("&")) {
-                String[] keyValue = param.split("=");
-                if (keyValue.length == 2) {
-                    params.put(keyValue[0], keyValue[1]);
-                }
-            }
-        }
-        return params;
+    private void sendChatErrorToUser(String userId, String error) {
+        sendToChatUserSafe(userId, new ChatEvent.Error(error, System.currentTimeMillis()));
     }
 
-    private String getUserIdFromSession(WebSocketSession session) {
-        Map<String, String> params = extractParameters(session);
-        return params.get("userId");
-    }
 }
\ No newline at end of file
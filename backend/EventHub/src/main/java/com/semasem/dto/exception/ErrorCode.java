@@ -14,6 +14,8 @@ public enum ErrorCode {
     INVALID_TOKEN("AUTH_007", "Невалидный access token"),
     TOKEN_COMPROMISED("AUTH_008", "Токен скомпрометирован"),
     UNAUTHORIZED("AUTH_009", "Пользователь не аутентифицирован"),
+    AUTH_BUSY("AUTH_010", "Слишком много запросов входа, повторите позже"),
+    RATE_LIMITED("AUTH_011", "Слишком много попыток, повторите позже"),
 
     ROOM_NOT_FOUND("ROOM_001", "Комната не найдена"),
     ACCESS_DENIED("ROOM_002", "Нет доступа к комнате"),
@@ -30,6 +32,7 @@ public enum ErrorCode {
     INVALID_INPUT("CHAT_001", "Неверные данные"),
     MESSAGE_NOT_FOUND("CHAT_002", "Сообщение не найдено"),
     MESSAGE_TOO_OLD("CHAT_003", "Сообщение устарело"),
+    CHAT_BUSY("CHAT_004", "Чат перегружен, повторите позже"),
 
     VALIDATION_ERROR("VALID_001", "Ошибка валидации"),
 
@@ -63,6 +63,7 @@ public class GlobalExceptionHandler {
             case INVALID_CREDENTIALS, INVALID_VERIFICATION_CODE -> HttpStatus.UNAUTHORIZED;
             case EMAIL_NOT_VERIFIED -> HttpStatus.FORBIDDEN;
             case VALIDATION_ERROR -> HttpStatus.BAD_REQUEST;
+            case AUTH_BUSY, RATE_LIMITED -> HttpStatus.TOO_MANY_REQUESTS;
             default -> HttpStatus.INTERNAL_SERVER_ERROR;
         };
     }
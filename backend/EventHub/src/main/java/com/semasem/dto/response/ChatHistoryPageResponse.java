@@ -0,0 +1,16 @@
+package com.semasem.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class ChatHistoryPageResponse {
+    // От новых к старым
+    List<ChatMessageResponse> messages;
+    // Передается в before для следующей (более старой) страницы, null на последней
+    String nextCursor;
+    boolean hasMore;
+}
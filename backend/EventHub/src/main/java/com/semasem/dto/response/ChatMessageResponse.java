@@ -11,7 +11,7 @@ import java.time.Instant;
 import java.util.UUID;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class ChatMessageResponse {
@@ -29,4 +29,7 @@ public class ChatMessageResponse {
 
     private String repliedMessageContent;
     private String repliedMessageSender;
+
+    // Номер события комнаты, которое привело сообщение к этому состоянию; null в страницах истории
+    private Long seq;
 }
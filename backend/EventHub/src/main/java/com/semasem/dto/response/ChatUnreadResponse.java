@@ -0,0 +1,17 @@
+package com.semasem.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class ChatUnreadResponse {
+    UUID roomId;
+    // Последний seq событий чата комнаты
+    long seq;
+    long lastReadSeq;
+    // События (сообщения, правки, удаления) после lastReadSeq
+    long unread;
+}
@@ -0,0 +1,40 @@
+package com.semasem.dto.websocket;
+
+import java.util.UUID;
+
+/**
+ * Входящие сообщения чата.
+ */
+public sealed interface ChatCommand {
+
+    record Send(String content, UUID replyTo) implements ChatCommand {
+    }
+
+    record TypingStart() implements ChatCommand {
+    }
+
+    record TypingStop() implements ChatCommand {
+    }
+
+    /**
+     * sinceSeq - последний известный клиенту seq; null - нужна полная история.
+     * compact - полная история приходит как chat_history_compact.
+     */
+    record GetHistory(Long sinceSeq, boolean compact) implements ChatCommand {
+    }
+
+    record Edit(UUID messageId, String content) implements ChatCommand {
+    }
+
+    record Delete(UUID messageId) implements ChatCommand {
+    }
+
+    /**
+     * seq - последний прочитанный seq событий комнаты; без него - прочитано все.
+     */
+    record MarkRead(UUID messageId, Long seq) implements ChatCommand {
+    }
+
+    record Unknown(String type) implements ChatCommand {
+    }
+}
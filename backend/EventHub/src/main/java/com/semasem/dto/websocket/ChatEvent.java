@@ -0,0 +1,117 @@
+package com.semasem.dto.websocket;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.semasem.dto.response.ChatMessageResponse;
+import com.semasem.repository.entity.ChatMessageType;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Исходящие сообщения чата. Поле type пишется из {@link JsonTypeName}.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY, property = "type")
+public sealed interface ChatEvent {
+
+    @JsonTypeName("chat_message")
+    record Message(ChatMessageResponse message, String roomId, long timestamp) implements ChatEvent {
+    }
+
+    @JsonTypeName("chat_message_edited")
+    record MessageEdited(ChatMessageResponse message, String roomId, long timestamp) implements ChatEvent {
+    }
+
+    @JsonTypeName("chat_message_deleted")
+    record MessageDeleted(String messageId, String roomId, UserInfo deletedBy, long seq, long timestamp)
+            implements ChatEvent {
+    }
+
+    /**
+     * Подтверждение записи сообщения отправителю в режиме отложенной записи.
+     * persisted = false: БД отклонила сообщение, остальным уже ушел chat_message_deleted.
+     */
+    @JsonTypeName("chat_ack")
+    record Ack(String messageId, String roomId, long sequence, boolean persisted, long timestamp)
+            implements ChatEvent {
+    }
+
+    /**
+     * Прочитанные seq пользователей комнаты: full - все известные (при подключении), иначе изменения за тик.
+     */
+    @JsonTypeName("chat_read_state")
+    record ReadState(String roomId, long seq, Map<String, Long> cursors, boolean full, long timestamp)
+            implements ChatEvent {
+    }
+
+    /**
+     * Все печатающие в комнате; пустой список - никто.
+     */
+    @JsonTypeName("chat_typing")
+    record Typing(String roomId, List<UserInfo> users, long timestamp) implements ChatEvent {
+    }
+
+    /**
+     * seq - номер последнего события комнаты на момент выборки истории. История полна до seq:
+     * пропущенные до него номера (откаченные транзакции) догонять не нужно.
+     */
+    @JsonTypeName("chat_history")
+    record History(List<ChatMessageResponse> messages, String roomId, long seq, long timestamp) implements ChatEvent {
+    }
+
+    /**
+     * История без повторов: отправитель хранится один раз в senders, сообщение ссылается на него индексом,
+     * ответ - только id. quotes - цитаты для ответов на сообщения, которых нет в messages.
+     */
+    @JsonTypeName("chat_history_compact")
+    record CompactHistory(String roomId, long seq, List<Sender> senders, List<CompactMessage> messages,
+                          Map<String, Quote> quotes, long timestamp) implements ChatEvent {
+    }
+
+    /**
+     * Пропущенные события после fromSeq по порядку: chat_message, chat_message_edited, chat_message_deleted.
+     * Ответ полон на интервале (fromSeq, seq]: номер без события - откаченная транзакция, а не потеря,
+     * повторно его запрашивать не нужно.
+     */
+    @JsonTypeName("chat_sync")
+    record Sync(String roomId, long fromSeq, long seq, List<ChatEvent> events, long timestamp) implements ChatEvent {
+    }
+
+    @JsonTypeName("chat_user_joined")
+    record UserJoined(UserInfo user, long timestamp) implements ChatEvent {
+    }
+
+    @JsonTypeName("chat_user_left")
+    record UserLeft(UserInfo user, long timestamp) implements ChatEvent {
+    }
+
+    /**
+     * chat_message отклонен ограничением частоты. scope - user или room, retryAfterMs - когда появится токен.
+     */
+    @JsonTypeName("chat_rate_limited")
+    record RateLimited(String scope, long retryAfterMs, long timestamp) implements ChatEvent {
+    }
+
+    @JsonTypeName("error")
+    record Error(String message, long timestamp) implements ChatEvent {
+    }
+
+    record UserInfo(String id, String name, String email, String avatar) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Sender(String name, String email, String avatar) {
+    }
+
+    /**
+     * sender - индекс в senders; timestamp и editedAt - epoch millis; type не пишется для TEXT.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record CompactMessage(String id, int sender, String content, ChatMessageType type, long timestamp,
+                          Long editedAt, String replyTo) {
+    }
+
+    record Quote(String content, String sender) {
+    }
+}
@@ -0,0 +1,41 @@
+package com.semasem.dto.websocket;
+
+/**
+ * Фрагмент исходного JSON без разбора: ссылка на входящую строку и границы значения.
+ */
+public record RawJson(String source, int start, int end) {
+
+    public int length() {
+        return end - start;
+    }
+
+    /**
+     * Размер фрагмента в UTF-8 - столько он займет в исходящем кадре. Считается без копирования.
+     */
+    public int utf8Length() {
+        int bytes = 0;
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(source.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    public void appendTo(StringBuilder target) {
+        target.append(source, start, end);
+    }
+
+    @Override
+    public String toString() {
+        return source.substring(start, end);
+    }
+}
@@ -0,0 +1,57 @@
+package com.semasem.dto.websocket;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.semasem.service.RoomSessionService;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Исходящие сообщения сигнального канала WebRTC. Поле type пишется из {@link JsonTypeName}.
+ * offer/answer/ice_candidate пересылаются без разбора, см. SignalingCodec#encodeRelay.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY, property = "type")
+public sealed interface SignalingEvent {
+
+    @JsonTypeName("media_state_update")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record MediaStateUpdate(String userId, boolean audioEnabled, boolean videoEnabled, boolean screenSharing,
+                            Boolean isOffline, long timestamp) implements SignalingEvent {
+    }
+
+    @JsonTypeName("media_state_response")
+    record MediaStateResponse(String userId, boolean audioEnabled, boolean videoEnabled, boolean screenSharing,
+                              long lastUpdate, long timestamp) implements SignalingEvent {
+    }
+
+    @JsonTypeName("all_media_states")
+    record AllMediaStates(String roomId, long version, boolean full, Map<String, MediaStateView> states,
+                          long timestamp) implements SignalingEvent {
+    }
+
+    @JsonTypeName("participants_list")
+    record ParticipantsList(List<RoomSessionService.ParticipantMediaInfo> participants, int count,
+                            String roomId, long timestamp) implements SignalingEvent {
+    }
+
+    @JsonTypeName("room_snapshot")
+    record RoomSnapshot(String roomId, long version, List<RoomSessionService.ParticipantMediaInfo> participants,
+                        int count, long mediaVersion, Map<String, MediaStateView> mediaStates, long timestamp)
+            implements SignalingEvent {
+    }
+
+    @JsonTypeName("roster_delta")
+    record RosterDelta(String roomId, long fromVersion, long version,
+                       List<RoomSessionService.ParticipantMediaInfo> joined, List<String> left,
+                       int count, long timestamp) implements SignalingEvent {
+    }
+
+    @JsonTypeName("error")
+    record Error(String message, long timestamp) implements SignalingEvent {
+    }
+
+    record MediaStateView(boolean audioEnabled, boolean videoEnabled, boolean screenSharing, long lastUpdate) {
+    }
+}
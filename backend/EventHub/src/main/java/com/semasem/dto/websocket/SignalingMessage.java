@@ -0,0 +1,44 @@
+package com.semasem.dto.websocket;
+
+/**
+ * Входящие сообщения сигнального канала WebRTC.
+ */
+public sealed interface SignalingMessage {
+
+    record Offer(String targetUserId, RawJson sdp) implements SignalingMessage {
+    }
+
+    record Answer(String targetUserId, RawJson sdp) implements SignalingMessage {
+    }
+
+    record IceCandidate(String targetUserId, RawJson candidate) implements SignalingMessage {
+    }
+
+    record GetParticipants() implements SignalingMessage {
+    }
+
+    record GetRoomSnapshot() implements SignalingMessage {
+    }
+
+    record PeerLeft() implements SignalingMessage {
+    }
+
+    record NewPeer() implements SignalingMessage {
+    }
+
+    record MediaStateUpdate(Boolean audioEnabled, Boolean videoEnabled, Boolean screenSharing)
+            implements SignalingMessage {
+    }
+
+    record RequestMediaState() implements SignalingMessage {
+    }
+
+    record RequestAllMediaStates(Long sinceVersion) implements SignalingMessage {
+    }
+
+    record Oversized(String type, int bytes) implements SignalingMessage {
+    }
+
+    record Unknown(String type) implements SignalingMessage {
+    }
+}
@@ -1,29 +1,47 @@
 package com.semasem.repository;
 
 import com.semasem.repository.entity.ChatMessage;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import com.semasem.repository.entity.ChatMessageView;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, UUID> {
-    Page<ChatMessage> findByRoomUuidOrderByTimestampDesc(UUID roomUuid, Pageable pageable);
 
-    List<ChatMessage> findTop50ByRoomUuidOrderByTimestampAsc(UUID roomUuid);
+    String SELECT_VIEW = "SELECT new com.semasem.repository.entity.ChatMessageView(" +
+            "m.uuid, m.content, m.type, m.timestamp, m.edited, m.editedAt, " +
+            "u.name, u.email, u.avatarLink, r.uuid, r.content, ru.name) " +
+            "FROM ChatMessage m JOIN m.user u LEFT JOIN m.replyTo r LEFT JOIN r.user ru ";
+
+    @Query(SELECT_VIEW + "WHERE m.room.uuid = :roomUuid ORDER BY m.timestamp DESC, m.uuid DESC")
+    List<ChatMessageView> findLatestViewsByRoomUuid(@Param("roomUuid") UUID roomUuid, Limit limit);
+
+    @Query(SELECT_VIEW + "WHERE m.room.uuid = :roomUuid " +
+            "AND (m.timestamp < :timestamp OR (m.timestamp = :timestamp AND m.uuid < :messageId)) " +
+            "ORDER BY m.timestamp DESC, m.uuid DESC")
+    List<ChatMessageView> findViewsByRoomUuidBefore(@Param("roomUuid") UUID roomUuid,
+                                                    @Param("timestamp") Instant timestamp,
+                                                    @Param("messageId") UUID messageId,
+                                                    Limit limit);
+
+    @Query(SELECT_VIEW + "WHERE m.uuid IN :uuids")
+    List<ChatMessageView> findViewsByUuidIn(@Param("uuids") Collection<UUID> uuids);
+
+    @Query(SELECT_VIEW + "WHERE m.uuid = :messageUuid AND m.room.uuid = :roomUuid")
+    Optional<ChatMessageView> findViewByUuidAndRoomUuid(@Param("messageUuid") UUID messageUuid,
+                                                        @Param("roomUuid") UUID roomUuid);
 
     Optional<ChatMessage> findByUuidAndRoomUuid(UUID messageUuid, UUID roomUuid);
 
     @Query("SELECT COUNT(cm) FROM ChatMessage cm WHERE cm.room.uuid = :roomUuid")
     long countByRoomUuid(@Param("roomUuid") UUID roomUuid);
-
-    List<ChatMessage> findByRoomUuidAndTimestampAfterOrderByTimestampAsc(
-            UUID roomUuid, Instant afterTimestamp);
 }
@@ -0,0 +1,19 @@
+package com.semasem.repository;
+
+import com.semasem.repository.entity.ChatReadCursor;
+import com.semasem.repository.entity.ChatReadCursorView;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface ChatReadCursorRepository extends JpaRepository<ChatReadCursor, UUID> {
+
+    @Query("SELECT new com.semasem.repository.entity.ChatReadCursorView(c.user.uuid, c.lastReadSeq) " +
+            "FROM ChatReadCursor c WHERE c.room.uuid = :roomUuid")
+    List<ChatReadCursorView> findViewsByRoomUuid(@Param("roomUuid") UUID roomUuid);
+}
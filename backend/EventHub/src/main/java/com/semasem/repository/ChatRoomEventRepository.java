@@ -0,0 +1,25 @@
+package com.semasem.repository;
+
+import com.semasem.repository.entity.ChatRoomEvent;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface ChatRoomEventRepository extends JpaRepository<ChatRoomEvent, UUID> {
+
+    @Query("SELECT MAX(e.seq) FROM ChatRoomEvent e WHERE e.room.uuid = :roomUuid")
+    Long findMaxSeqByRoomUuid(@Param("roomUuid") UUID roomUuid);
+
+    @Query("SELECT e FROM ChatRoomEvent e WHERE e.room.uuid = :roomUuid AND e.seq > :after AND e.seq < :before " +
+            "ORDER BY e.seq ASC")
+    List<ChatRoomEvent> findByRoomUuidBetween(@Param("roomUuid") UUID roomUuid,
+                                              @Param("after") long after,
+                                              @Param("before") long before,
+                                              Limit limit);
+}
@@ -6,7 +6,9 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -34,6 +36,12 @@ public interface RoomParticipantRepository extends JpaRepository<RoomParticipant
                            @Param("audioEnabled") boolean audioEnabled,
                            @Param("videoEnabled") boolean videoEnabled);
 
+    @Transactional
+    @Modifying
+    @Query("UPDATE RoomParticipant rp SET rp.lastActiveAt = :lastActiveAt WHERE rp.id = :participantId")
+    void updateLastActiveAt(@Param("participantId") Long participantId,
+                            @Param("lastActiveAt") Instant lastActiveAt);
+
 
     boolean existsByRoomUuidAndUserUuidAndStatus(UUID roomUuid, UUID userUuid, ParticipantStatus status);
 
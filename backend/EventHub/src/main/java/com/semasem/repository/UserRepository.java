@@ -1,5 +1,6 @@
 package com.semasem.repository;
 
+import com.semasem.repository.entity.TokenRevocationView;
 import com.semasem.repository.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
@@ -8,6 +9,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -29,4 +31,8 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findGuestByEmail(@Param("email") String email);
 
     Optional<User> findByUuid(UUID uuid);
+
+    @Query("SELECT new com.semasem.repository.entity.TokenRevocationView(u.uuid, u.tokenVersion, u.tokensRevokedAt) " +
+            "FROM User u WHERE u.tokensRevokedAt > :since")
+    List<TokenRevocationView> findTokenRevocationsSince(@Param("since") Instant since);
 }
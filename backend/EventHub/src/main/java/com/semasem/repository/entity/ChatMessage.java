@@ -5,7 +5,11 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
 
 import java.time.Instant;
 import java.util.UUID;
@@ -13,7 +17,10 @@ import java.util.UUID;
 @Data
 @Entity
 @Builder
-@Table(name = "chat_messages")
+@Table(name = "chat_messages", indexes = {
+        // Keyset-пагинация истории: WHERE room_id = ? AND (timestamp, uuid) < (?, ?) ORDER BY timestamp DESC, uuid DESC
+        @Index(name = "idx_chat_messages_room_timestamp_uuid", columnList = "room_id, timestamp, uuid")
+})
 @NoArgsConstructor
 @AllArgsConstructor
 @SuppressWarnings("unused")
@@ -41,8 +48,12 @@ public class ChatMessage {
     @Column(nullable = false)
     private Instant timestamp;
 
-    @Column
-    private String replyTo;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "reply_to_id")
+    @OnDelete(action = OnDeleteAction.SET_NULL)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private ChatMessage replyTo;
 
     @Column
     @Builder.Default
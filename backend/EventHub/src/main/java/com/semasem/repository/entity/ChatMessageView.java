@@ -0,0 +1,23 @@
+package com.semasem.repository.entity;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Сообщение чата вместе с автором и цитатой ответа, выбирается одним запросом.
+ */
+public record ChatMessageView(
+        UUID uuid,
+        String content,
+        ChatMessageType type,
+        Instant timestamp,
+        boolean edited,
+        Instant editedAt,
+        String senderName,
+        String senderEmail,
+        String senderAvatar,
+        UUID replyTo,
+        String repliedMessageContent,
+        String repliedMessageSender
+) {
+}
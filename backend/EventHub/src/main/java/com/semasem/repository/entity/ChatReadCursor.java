@@ -0,0 +1,52 @@
+package com.semasem.repository.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Последний прочитанный пользователем seq событий чата комнаты.
+ */
+@Data
+@Entity
+@Builder
+@Table(name = "chat_read_cursors", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_chat_read_cursors_room_user", columnNames = {"room_id", "user_id"})
+})
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatReadCursor {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID uuid;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "room_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Room room;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private User user;
+
+    @Column(name = "last_read_seq", nullable = false)
+    private long lastReadSeq;
+
+    @Column(nullable = false)
+    private Instant updatedAt;
+}
@@ -0,0 +1,6 @@
+package com.semasem.repository.entity;
+
+import java.util.UUID;
+
+public record ChatReadCursorView(UUID userId, long lastReadSeq) {
+}
@@ -0,0 +1,53 @@
+package com.semasem.repository.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Событие чата комнаты с плотным номером: по журналу переподключившийся клиент получает
+ * ровно пропущенные события. message_id без внешнего ключа - сообщение могло быть удалено.
+ */
+@Data
+@Entity
+@Builder
+@Table(name = "chat_room_events", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_chat_room_events_room_seq", columnNames = {"room_id", "seq"})
+})
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatRoomEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID uuid;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "room_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Room room;
+
+    @Column(nullable = false)
+    private long seq;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ChatRoomEventType type;
+
+    @Column(name = "message_id", nullable = false)
+    private UUID messageId;
+
+    @Column(nullable = false)
+    private Instant timestamp;
+}
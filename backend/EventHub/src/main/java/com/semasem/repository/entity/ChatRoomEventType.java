@@ -0,0 +1,7 @@
+package com.semasem.repository.entity;
+
+public enum ChatRoomEventType {
+    MESSAGE,
+    EDIT,
+    DELETE
+}
@@ -0,0 +1,7 @@
+package com.semasem.repository.entity;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public record TokenRevocationView(UUID userId, int tokenVersion, Instant revokedAt) {
+}
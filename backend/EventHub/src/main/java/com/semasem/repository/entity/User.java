@@ -12,7 +12,7 @@ import java.util.UUID;
 
 @Data
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = @Index(name = "idx_users_tokens_revoked_at", columnList = "tokens_revoked_at"))
 @NoArgsConstructor
 @SuppressWarnings("unused")
 public class User {
@@ -44,8 +44,12 @@ public class User {
     @Column(nullable = false, length = 20)
     private UserRole role = UserRole.ROLE_USER;
 
-    @Column(columnDefinition = "TEXT")
-    private String refreshToken;
+    // Растет при отзыве токенов; access-токены с меньшим ver отклоняются без обращения к БД
+    @Column(name = "token_version", nullable = false, columnDefinition = "integer default 0")
+    private int tokenVersion;
+
+    @Column(name = "tokens_revoked_at")
+    private Instant tokensRevokedAt;
 
     @Column
     private String avatarLink;
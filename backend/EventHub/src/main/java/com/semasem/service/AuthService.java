@@ -9,7 +9,12 @@ import com.semasem.dto.response.*;
 import com.semasem.repository.UserRepository;
 import com.semasem.repository.entity.User;
 import com.semasem.service.security.JwtService;
+import com.semasem.service.security.AuthRateLimiter;
+import com.semasem.service.security.ClientIp;
+import com.semasem.service.security.JwtPrincipal;
 import com.semasem.service.security.PasswordEncoder;
+import com.semasem.service.security.RefreshTokenStore;
+import com.semasem.service.security.TokenRevocations;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -32,8 +37,12 @@ public class AuthService {
     private final UserMapper userMapper;
     private final JwtService jwtService;
     private final PasswordEncoder passwordEncoder;
+    private final TokenRevocations tokenRevocations;
+    private final RefreshTokenStore refreshTokenStore;
+    private final AuthRateLimiter authRateLimiter;
 
     public RegisterResponse registerUser(RegisterRequest request) {
+        authRateLimiter.checkAccount(AuthRateLimiter.Route.REGISTER, request.getEmail());
         if (userRepository.existsByEmail(request.getEmail())) {
             throw new CustomException(ErrorCode.USER_ALREADY_EXISTS);
         }
@@ -48,18 +57,24 @@ public class AuthService {
 
     @Transactional
     public LoginResponse loginUser(LoginRequest request, HttpServletResponse response) {
-        User user = userRepository.findByEmail(request.getEmail())
-                .orElseThrow(() -> new CustomException(ErrorCode.INVALID_CREDENTIALS, "Неверный email или пароль"));
+        // До поиска пользователя и BCrypt: перебор паролей одного аккаунта с разных адресов.
+        // Считаются только неудачи - иначе чужие запросы с верным паролем или без блокировали бы владельца
+        authRateLimiter.checkFailures(AuthRateLimiter.Route.LOGIN, request.getEmail());
+        User user = userRepository.findByEmail(request.getEmail()).orElse(null);
 
-        if (!passwordEncoder.checkPassword(request.getPassword(), user.getPassword())) {
+        if (user == null || !passwordEncoder.checkPassword(request.getPassword(), user.getPassword())) {
+            authRateLimiter.recordFailure(AuthRateLimiter.Route.LOGIN, request.getEmail());
             throw new CustomException(ErrorCode.INVALID_CREDENTIALS, "Неверный email или пароль");
         }
 
-        String accessToken = jwtService.generateToken(user, TokenType.ACCESS_TOKEN);
-        String refreshToken = jwtService.generateToken(user, TokenType.REFRESH_TOKEN);
+        // Хэш со старой стоимостью заменяется, пока пароль известен
+        if (passwordEncoder.needsRehash(user.getPassword())) {
+            user.setPassword(passwordEncoder.encryptPassword(request.getPassword()));
+            log.info("Password hash upgraded for user: {}", user.getEmail());
+        }
 
-        user.setRefreshToken(refreshToken);
-        userRepository.save(user);
+        String accessToken = jwtService.generateToken(user, TokenType.ACCESS_TOKEN);
+        String refreshToken = refreshTokenStore.issue(user);
 
         Cookie refreshTokenCookie = new Cookie("refreshToken", refreshToken);
         refreshTokenCookie.setHttpOnly(true);
@@ -89,11 +104,11 @@ public class AuthService {
         if (cookies != null) {
             for (Cookie cookie : cookies) {
                 if ("refreshToken".equals(cookie.getName())) {
-                    String refreshToken = cookie.getValue();
-                    String email = jwtService.extractEmail(refreshToken);
-                    User user = userRepository.findByEmail(email).orElse(null);
+                    JwtPrincipal subject = refreshTokenStore.revokeFamily(cookie.getValue());
+                    User user = subject != null ? userRepository.findByUuid(subject.userId()).orElse(null) : null;
                     if (user != null) {
-                        user.setRefreshToken(null);
+                        // Выданные access-токены перестают приниматься сразу, а не по истечении
+                        tokenRevocations.revoke(user);
                         userRepository.save(user);
                     }
                     break;
@@ -104,7 +119,6 @@ public class AuthService {
         log.info("User logged out successfully");
     }
 
-    @Transactional
     public RefreshTokenResponse refreshTokenForUser(HttpServletRequest request, HttpServletResponse response) {
         Cookie[] cookies = request.getCookies();
         String refreshToken = null;
@@ -122,25 +136,9 @@ public class AuthService {
             throw new CustomException(ErrorCode.TOKEN_NOT_FOUND, "Refresh token not found");
         }
 
-        if (!jwtService.isTokenValid(refreshToken, TokenType.REFRESH_TOKEN)) {
-            throw new CustomException(ErrorCode.INVALID_TOKEN, "Invalid refresh token");
-        }
-
-        String email = jwtService.extractEmail(refreshToken);
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new CustomException(ErrorCode.USER_NOT_FOUND));
-
-        if (!refreshToken.equals(user.getRefreshToken())) {
-            user.setRefreshToken(null);
-            userRepository.save(user);
-            throw new CustomException(ErrorCode.TOKEN_COMPROMISED, "Token compromised");
-        }
-
-        String newAccessToken = jwtService.generateToken(user, TokenType.ACCESS_TOKEN);
-        String newRefreshToken = jwtService.generateToken(user, TokenType.REFRESH_TOKEN);
-
-        user.setRefreshToken(newRefreshToken);
-        userRepository.save(user);
+        RefreshTokenStore.Rotation rotation = refreshTokenStore.rotate(refreshToken);
+        String newAccessToken = jwtService.generateToken(rotation.subject(), TokenType.ACCESS_TOKEN, null);
+        String newRefreshToken = rotation.refreshToken();
 
         Cookie refreshTokenCookie = new Cookie("refreshToken", newRefreshToken);
         refreshTokenCookie.setHttpOnly(true);
@@ -149,12 +147,13 @@ public class AuthService {
         refreshTokenCookie.setMaxAge(7 * 24 * 60 * 60);
         response.addCookie(refreshTokenCookie);
 
-        log.info("Tokens refreshed for user: {}", email);
+        log.info("Tokens refreshed for user: {}", rotation.subject().email());
         return new RefreshTokenResponse(newAccessToken);
     }
 
     public RecoveryPasswordResponse recoveryPassword(RecoveryPasswordRequest request, HttpServletRequest servletRequest) {
-        String ipAddress = getClientIp(servletRequest);
+        authRateLimiter.checkAccount(AuthRateLimiter.Route.RECOVERY_PASSWORD, request.getEmail());
+        String ipAddress = ClientIp.resolve(servletRequest);
         String email = request.getEmail();
 
         if (!userRepository.existsByEmail(email)) {
@@ -224,30 +223,4 @@ public class AuthService {
         log.info("Password changed successfully for user: {}", email);
         return new NewPasswordResponse();
     }
-
-    private String getClientIp(HttpServletRequest request) {
-        String ipAddress = request.getHeader("X-Forwarded-For");
-
-        if (ipAddress == null || ipAddress.isEmpty() || "unknown".equalsIgnoreCase(ipAddress)) {
-            ipAddress = request.getHeader("Proxy-Client-IP");
-        }
-        if (ipAddress == null || ipAddress.isEmpty() || "unknown".equalsIgnoreCase(ipAddress)) {
-            ipAddress = request.getHeader("WL-Proxy-Client-IP");
-        }
-        if (ipAddress == null || ipAddress.isEmpty() || "unknown".equalsIgnoreCase(ipAddress)) {
-            ipAddress = request.getHeader("HTTP_CLIENT_IP");
-        }
-        if (ipAddress == null || ipAddress.isEmpty() || "unknown".equalsIgnoreCase(ipAddress)) {
-            ipAddress = request.getHeader("HTTP_X_FORWARDED_FOR");
-        }
-        if (ipAddress == null || ipAddress.isEmpty() || "unknown".equalsIgnoreCase(ipAddress)) {
-            ipAddress = request.getRemoteAddr();
-        }
-
-        if (ipAddress != null && ipAddress.contains(",")) {
-            ipAddress = ipAddress.split(",")[0].trim();
-        }
-
-        return ipAddress != null ? ipAddress : "unknown";
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,42 @@
+package com.semasem.service;
+
+import com.semasem.dto.exception.CustomException;
+import com.semasem.dto.exception.ErrorCode;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Позиция в истории чата для keyset-пагинации: (timestamp, uuid) последнего отданного сообщения.
+ * Клиенту передается непрозрачной base64url-строкой.
+ */
+record ChatCursor(Instant timestamp, UUID messageId) {
+
+    private static final int LENGTH = Long.BYTES + Integer.BYTES + 2 * Long.BYTES;
+
+    String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH)
+                .putLong(timestamp.getEpochSecond())
+                .putInt(timestamp.getNano())
+                .putLong(messageId.getMostSignificantBits())
+                .putLong(messageId.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    static ChatCursor decode(String value) {
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(value);
+            if (bytes.length != LENGTH) {
+                throw new IllegalArgumentException("Unexpected cursor length");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            Instant timestamp = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+            return new ChatCursor(timestamp, new UUID(buffer.getLong(), buffer.getLong()));
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new CustomException(ErrorCode.INVALID_INPUT, "Invalid cursor");
+        }
+    }
+}
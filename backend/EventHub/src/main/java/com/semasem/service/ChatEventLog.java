@@ -0,0 +1,188 @@
+package com.semasem.service;
+
+import com.semasem.dto.response.ChatMessageResponse;
+import com.semasem.repository.ChatRoomEventRepository;
+import com.semasem.repository.entity.ChatRoomEventType;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Номера событий чата по комнатам и последние события в памяти. Счетчик комнаты продолжает
+ * максимальный seq из chat_room_events, события добавляются после фиксации (или при постановке
+ * в очередь отложенной записи) и хранятся по возрастанию seq.
+ * Номера выдаются в памяти узла: комнату должен обслуживать один экземпляр приложения, иначе
+ * узлы выдадут одинаковые seq и запись упрется в uk_chat_room_events_room_seq.
+ */
+@Slf4j
+@Component
+public class ChatEventLog {
+
+    private final ChatRoomEventRepository chatRoomEventRepository;
+    private final int capacity;
+    private final int maxResync;
+    private final long idleTtlMillis;
+    private final ScheduledExecutorService sweeper;
+
+    private final Map<UUID, RoomLog> rooms = new ConcurrentHashMap<>();
+
+    /**
+     * message - состояние сообщения после события, null для DELETE.
+     */
+    public record Entry(long seq, ChatRoomEventType type, UUID messageId, ChatMessageResponse message) {
+    }
+
+    /**
+     * entries - события из памяти после sinceSeq. События с seq меньше coveredFrom в памяти уже нет.
+     */
+    public record Replay(long seq, long coveredFrom, List<Entry> entries) {
+    }
+
+    private static final class RoomLog {
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        private long seq;
+        private long coveredFrom;
+        private boolean evicted;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private RoomLog(long seq) {
+            this.seq = seq;
+            this.coveredFrom = seq + 1;
+        }
+    }
+
+    public ChatEventLog(ChatRoomEventRepository chatRoomEventRepository,
+                        @Value("${chat.events.buffer-size:512}") int capacity,
+                        @Value("${chat.events.max-resync:500}") int maxResync,
+                        @Value("${chat.events.idle-ttl-ms:600000}") long idleTtlMillis) {
+        this.chatRoomEventRepository = chatRoomEventRepository;
+        this.capacity = capacity;
+        this.maxResync = maxResync;
+        this.idleTtlMillis = idleTtlMillis;
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-events-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000L, idleTtlMillis / 4);
+        sweeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Сколько событий отдается догоняющему клиенту, дальше - полная история.
+     */
+    public int maxResync() {
+        return maxResync;
+    }
+
+    public long next(UUID roomId) {
+        return withRoom(roomId, room -> ++room.seq);
+    }
+
+    public long current(UUID roomId) {
+        return withRoom(roomId, room -> room.seq);
+    }
+
+    public void append(UUID roomId, Entry entry) {
+        withRoom(roomId, room -> {
+            if (entry.seq() < room.coveredFrom) {
+                return null;
+            }
+            // Транзакции фиксируются не строго в порядке номеров: вставка с конца
+            if (room.entries.isEmpty() || room.entries.peekLast().seq() < entry.seq()) {
+                room.entries.addLast(entry);
+            } else {
+                List<Entry> tail = new ArrayList<>();
+                while (!room.entries.isEmpty() && room.entries.peekLast().seq() > entry.seq()) {
+                    tail.add(room.entries.removeLast());
+                }
+                room.entries.addLast(entry);
+                for (int i = tail.size() - 1; i >= 0; i--) {
+                    room.entries.addLast(tail.get(i));
+                }
+            }
+            while (room.entries.size() > capacity) {
+                room.coveredFrom = room.entries.removeFirst().seq() + 1;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * События после sinceSeq или null, если sinceSeq из будущего (счетчик начат заново) и клиенту
+     * нужна полная история.
+     */
+    public Replay since(UUID roomId, long sinceSeq) {
+        return withRoom(roomId, room -> {
+            if (sinceSeq > room.seq) {
+                return null;
+            }
+            List<Entry> entries = new ArrayList<>();
+            Iterator<Entry> iterator = room.entries.descendingIterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.seq() <= sinceSeq) {
+                    break;
+                }
+                entries.add(entry);
+            }
+            Collections.reverse(entries);
+            return new Replay(room.seq, room.coveredFrom, entries);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    private <T> T withRoom(UUID roomId, Function<RoomLog, T> action) {
+        while (true) {
+            RoomLog room = rooms.computeIfAbsent(roomId, this::load);
+            synchronized (room) {
+                if (!room.evicted) {
+                    room.lastAccess = System.currentTimeMillis();
+                    return action.apply(room);
+                }
+            }
+        }
+    }
+
+    private RoomLog load(UUID roomId) {
+        Long seq = chatRoomEventRepository.findMaxSeqByRoomUuid(roomId);
+        return new RoomLog(seq != null ? seq : 0L);
+    }
+
+    private void evictIdle() {
+        long threshold = System.currentTimeMillis() - idleTtlMillis;
+        int evicted = 0;
+        for (Map.Entry<UUID, RoomLog> entry : rooms.entrySet()) {
+            RoomLog room = entry.getValue();
+            synchronized (room) {
+                if (room.lastAccess < threshold) {
+                    room.evicted = true;
+                    rooms.remove(entry.getKey(), room);
+                    evicted++;
+                }
+            }
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} idle chat event logs", evicted);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.semasem.service;
+
+import com.semasem.repository.ChatReadCursorRepository;
+import com.semasem.repository.entity.ChatReadCursorView;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Прочитанные seq пользователей по комнатам. mark_read только двигает значение в памяти;
+ * раз в broadcast-ms изменения комнаты уходят одной дельтой chat_read_state, раз в flush-interval-ms
+ * пишутся пакетом upsert. Непрочитанные - разница между seq комнаты и прочитанным, без COUNT.
+ */
+@Slf4j
+@Component
+public class ChatReadCursors {
+
+    // GREATEST: строка не откатывается назад, если запись с другого узла или повтор после сбоя пришли позже
+    private static final String UPSERT_SQL = "INSERT INTO chat_read_cursors " +
+            "(uuid, room_id, user_id, last_read_seq, updated_at) VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT (room_id, user_id) DO UPDATE SET " +
+            "last_read_seq = GREATEST(chat_read_cursors.last_read_seq, EXCLUDED.last_read_seq), " +
+            "updated_at = EXCLUDED.updated_at";
+
+    private final ChatReadCursorRepository chatReadCursorRepository;
+    private final ChatEventLog chatEventLog;
+    private final JdbcTemplate jdbcTemplate;
+    private final long idleTtlMillis;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<UUID, RoomCursors> rooms = new ConcurrentHashMap<>();
+    private volatile Consumer<ReadStateDelta> listener;
+
+    private final Counter marks;
+    private final Counter dropped;
+    private final DistributionSummary flushRows;
+    private final Timer flushLatency;
+
+    /**
+     * cursors - пользователи, чей прочитанный seq изменился за тик; seq - последний seq комнаты.
+     */
+    public record ReadStateDelta(UUID roomId, long seq, Map<UUID, Long> cursors) {
+    }
+
+    private record CursorRow(UUID roomId, UUID userId, long seq) {
+    }
+
+    /**
+     * Параллельные массивы пользователей и seq: слот пользователя не меняется, пока комната в памяти.
+     */
+    private static final class RoomCursors {
+        private final Map<UUID, Integer> slots = new HashMap<>();
+        private UUID[] users = new UUID[8];
+        private long[] seqs = new long[8];
+        private final BitSet changed = new BitSet();
+        private final BitSet unsaved = new BitSet();
+        private boolean evicted;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private int slot(UUID userId) {
+            Integer slot = slots.get(userId);
+            if (slot != null) {
+                return slot;
+            }
+            int index = slots.size();
+            if (index == users.length) {
+                users = Arrays.copyOf(users, index * 2);
+                seqs = Arrays.copyOf(seqs, index * 2);
+            }
+            users[index] = userId;
+            slots.put(userId, index);
+            return index;
+        }
+    }
+
+    public ChatReadCursors(ChatReadCursorRepository chatReadCursorRepository,
+                           ChatEventLog chatEventLog,
+                           JdbcTemplate jdbcTemplate,
+                           MeterRegistry meterRegistry,
+                           @Value("${chat.read.broadcast-ms:250}") long broadcastMillis,
+                           @Value("${chat.read.flush-interval-ms:5000}") long flushIntervalMillis,
+                           @Value("${chat.read.idle-ttl-ms:600000}") long idleTtlMillis) {
+        this.chatReadCursorRepository = chatReadCursorRepository;
+        this.chatEventLog = chatEventLog;
+        this.jdbcTemplate = jdbcTemplate;
+        this.idleTtlMillis = idleTtlMillis;
+
+        this.marks = Counter.builder("chat.read.marks")
+                .description("chat_mark_read commands that moved a read cursor")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("chat.read.flush.dropped")
+                .description("Read cursors dropped because the database rejected them")
+                .register(meterRegistry);
+        this.flushRows = DistributionSummary.builder("chat.read.flush.rows")
+                .description("Read cursors upserted per flush")
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder("chat.read.flush")
+                .description("Time to upsert one batch of read cursors")
+                .register(meterRegistry);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-read-cursors");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::publish, broadcastMillis, broadcastMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        long sweepPeriod = Math.max(1000L, idleTtlMillis / 4);
+        scheduler.scheduleWithFixedDelay(this::evictIdle, sweepPeriod, sweepPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    public void subscribe(Consumer<ReadStateDelta> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Двигает прочитанный seq вперед (не дальше последнего события комнаты). false - не изменился.
+     */
+    public boolean markRead(UUID roomId, UUID userId, long seq) {
+        long target = Math.min(seq, chatEventLog.current(roomId));
+        if (target <= 0) {
+            return false;
+        }
+        boolean advanced = withRoom(roomId, room -> {
+            int slot = room.slot(userId);
+            if (room.seqs[slot] >= target) {
+                return false;
+            }
+            room.seqs[slot] = target;
+            room.changed.set(slot);
+            room.unsaved.set(slot);
+            return true;
+        });
+        if (advanced) {
+            marks.increment();
+        }
+        return advanced;
+    }
+
+    public long getReadSeq(UUID roomId, UUID userId) {
+        return withRoom(roomId, room -> {
+            Integer slot = room.slots.get(userId);
+            return slot != null ? room.seqs[slot] : 0L;
+        });
+    }
+
+    public long getUnreadCount(UUID roomId, UUID userId) {
+        return Math.max(0L, chatEventLog.current(roomId) - getReadSeq(roomId, userId));
+    }
+
+    public Map<UUID, Long> snapshot(UUID roomId) {
+        return withRoom(roomId, room -> {
+            Map<UUID, Long> cursors = new LinkedHashMap<>();
+            for (int i = 0; i < room.slots.size(); i++) {
+                if (room.seqs[i] > 0) {
+                    cursors.put(room.users[i], room.seqs[i]);
+                }
+            }
+            return cursors;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void publish() {
+        Consumer<ReadStateDelta> target = listener;
+        if (target == null) {
+            return;
+        }
+        for (Map.Entry<UUID, RoomCursors> entry : rooms.entrySet()) {
+            Map<UUID, Long> cursors = null;
+            RoomCursors room = entry.getValue();
+            synchronized (room) {
+                if (!room.changed.isEmpty()) {
+                    cursors = new LinkedHashMap<>();
+                    for (int i = room.changed.nextSetBit(0); i >= 0; i = room.changed.nextSetBit(i + 1)) {
+                        cursors.put(room.users[i], room.seqs[i]);
+                    }
+                    room.changed.clear();
+                }
+            }
+            if (cursors == null) {
+                continue;
+            }
+            try {
+                target.accept(new ReadStateDelta(entry.getKey(), chatEventLog.current(entry.getKey()), cursors));
+            } catch (RuntimeException e) {
+                log.error("Error publishing read state for room {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    private void flush() {
+        List<CursorRow> rows = new ArrayList<>();
+        for (Map.Entry<UUID, RoomCursors> entry : rooms.entrySet()) {
+            RoomCursors room = entry.getValue();
+            synchronized (room) {
+                for (int i = room.unsaved.nextSetBit(0); i >= 0; i = room.unsaved.nextSetBit(i + 1)) {
+                    rows.add(new CursorRow(entry.getKey(), room.users[i], room.seqs[i]));
+                }
+                room.unsaved.clear();
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, rows, rows.size(), this::bind);
+            flushLatency.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            flushRows.record(rows.size());
+        } catch (DataAccessException e) {
+            log.warn("Read cursors batch failed, retrying {} rows one by one: {}", rows.size(), e.getMessage());
+            writeRowByRow(rows);
+        }
+    }
+
+    /**
+     * Одна строка с нарушением ограничения (гость или комната уже удалены) не должна срывать
+     * все следующие записи: такие строки отбрасываются, остальные при временной ошибке ждут следующей записи.
+     */
+    private void writeRowByRow(List<CursorRow> rows) {
+        for (int i = 0; i < rows.size(); i++) {
+            CursorRow row = rows.get(i);
+            try {
+                jdbcTemplate.update(UPSERT_SQL, statement -> bind(statement, row));
+                flushRows.record(1);
+            } catch (DataIntegrityViolationException e) {
+                dropped.increment();
+                log.warn("Read cursor of user {} in room {} dropped: {}", row.userId(), row.roomId(), e.getMessage());
+            } catch (DataAccessException e) {
+                // БД недоступна - остальные строки не пробуются до следующего тика
+                log.warn("Read cursors not persisted, will retry {} rows: {}", rows.size() - i, e.getMessage());
+                markUnsaved(rows.subList(i, rows.size()));
+                return;
+            }
+        }
+    }
+
+    private void markUnsaved(List<CursorRow> rows) {
+        for (CursorRow row : rows) {
+            RoomCursors room = rooms.get(row.roomId());
+            if (room != null) {
+                synchronized (room) {
+                    room.unsaved.set(room.slot(row.userId()));
+                }
+            }
+        }
+    }
+
+    private void bind(PreparedStatement statement, CursorRow row) throws SQLException {
+        statement.setObject(1, UUID.randomUUID());
+        statement.setObject(2, row.roomId());
+        statement.setObject(3, row.userId());
+        statement.setLong(4, row.seq());
+        statement.setObject(5, OffsetDateTime.now(ZoneOffset.UTC));
+    }
+
+    private <T> T withRoom(UUID roomId, Function<RoomCursors, T> action) {
+        while (true) {
+            RoomCursors room = rooms.computeIfAbsent(roomId, this::load);
+            synchronized (room) {
+                if (!room.evicted) {
+                    room.lastAccess = System.currentTimeMillis();
+                    return action.apply(room);
+                }
+            }
+        }
+    }
+
+    private RoomCursors load(UUID roomId) {
+        RoomCursors room = new RoomCursors();
+        for (ChatReadCursorView cursor : chatReadCursorRepository.findViewsByRoomUuid(roomId)) {
+            room.seqs[room.slot(cursor.userId())] = cursor.lastReadSeq();
+        }
+        return room;
+    }
+
+    private void evictIdle() {
+        long threshold = System.currentTimeMillis() - idleTtlMillis;
+        for (Map.Entry<UUID, RoomCursors> entry : rooms.entrySet()) {
+            RoomCursors room = entry.getValue();
+            synchronized (room) {
+                // Несохраненные значения держат комнату в памяти до следующей записи
+                if (room.lastAccess < threshold && room.unsaved.isEmpty()) {
+                    room.evicted = true;
+                    rooms.remove(entry.getKey(), room);
+                }
+            }
+        }
+    }
+}
@@ -4,25 +4,37 @@ import com.semasem.dto.exception.CustomException;
 import com.semasem.dto.exception.ErrorCode;
 import com.semasem.dto.request.ChatMessageRequest;
 import com.semasem.dto.request.EditMessageRequest;
+import com.semasem.dto.response.ChatHistoryPageResponse;
 import com.semasem.dto.response.ChatMessageResponse;
+import com.semasem.dto.response.ChatUnreadResponse;
 import com.semasem.repository.ChatMessageRepository;
+import com.semasem.repository.ChatRoomEventRepository;
 import com.semasem.repository.RoomParticipantRepository;
 import com.semasem.repository.RoomRepository;
 import com.semasem.repository.UserRepository;
 import com.semasem.repository.entity.ChatMessage;
+import com.semasem.repository.entity.ChatMessageView;
+import com.semasem.repository.entity.ChatRoomEvent;
+import com.semasem.repository.entity.ChatRoomEventType;
 import com.semasem.repository.entity.Room;
 import com.semasem.repository.entity.RoomParticipant;
 import com.semasem.repository.entity.User;
+import com.semasem.service.moderation.ChatContentFilter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.security.Principal;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -31,10 +43,24 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ChatService {
 
+    private static final int MAX_HISTORY_PAGE = 100;
+
     private final ChatMessageRepository chatMessageRepository;
     private final RoomRepository roomRepository;
     private final UserRepository userRepository;
     private final RoomParticipantRepository roomParticipantRepository;
+    private final ChatTailCache chatTailCache;
+    private final ChatWriteBehindQueue chatWriteBehindQueue;
+    private final ChatEventLog chatEventLog;
+    private final ChatRoomEventRepository chatRoomEventRepository;
+    private final ChatReadCursors chatReadCursors;
+    private final ChatContentFilter chatContentFilter;
+
+    /**
+     * Автор сообщения из контекста подключения к чату.
+     */
+    public record Author(UUID userId, String name, String email, String avatar) {
+    }
 
     @Transactional
     public ChatMessageResponse sendMessage(UUID roomId, ChatMessageRequest request, Principal principal) {
@@ -55,7 +81,7 @@ public class ChatService {
         }
 
         // Валидация контента
-        validateMessageContent(request.getContent());
+        validateMessageContent(roomId, request.getContent());
 
         // Проверяем сообщение, на которое отвечаем (если есть)
         ChatMessage repliedMessage = null;
@@ -71,46 +97,137 @@ public class ChatService {
                 .content(request.getContent())
                 .type(request.getType())
                 .timestamp(Instant.now())
-                .replyTo(request.getReplyTo() != null ? request.getReplyTo().toString() : null)
+                .replyTo(repliedMessage)
                 .edited(false)
                 .build();
 
-        ChatMessage savedMessage = chatMessageRepository.save(message);
+        ChatMessage savedMessage = chatMessageRepository.saveAndFlush(message);
+        long seq = recordEvent(room, ChatRoomEventType.MESSAGE, savedMessage.getUuid());
         log.info("Message sent by {} in room {}", userEmail, roomId);
 
-        return convertToResponse(savedMessage, repliedMessage);
+        ChatMessageResponse response = convertToResponse(savedMessage).toBuilder().seq(seq).build();
+        afterCommit(() -> {
+            chatEventLog.append(roomId, new ChatEventLog.Entry(seq, ChatRoomEventType.MESSAGE, response.getUuid(), response));
+            chatTailCache.append(roomId, response);
+        });
+        return response;
     }
 
-    @Transactional(readOnly = true)
-    public Page<ChatMessageResponse> getRoomMessages(UUID roomId, Pageable pageable, Principal principal) {
-        validateRoomAccess(roomId, principal);
+    public boolean isWriteBehindEnabled() {
+        return chatWriteBehindQueue.isEnabled();
+    }
 
-        Page<ChatMessage> messages = chatMessageRepository.findByRoomUuidOrderByTimestampDesc(roomId, pageable);
+    /**
+     * Отправка с отложенной записью: участие в комнате проверено при подключении к чату,
+     * автор берется из контекста подключения, в БД идет только чтение цитируемого сообщения.
+     * Сообщение попадает в хвост сразу, в chat_messages - со следующим пакетом ChatWriteBehindQueue.
+     */
+    public ChatMessageResponse submitMessage(UUID roomId, Author author, ChatMessageRequest request) {
+        validateMessageContent(roomId, request.getContent());
 
-        return messages.map(message -> {
-            ChatMessage repliedMessage = null;
-            if (message.getReplyTo() != null) {
-                repliedMessage = chatMessageRepository.findById(UUID.fromString(message.getReplyTo())).orElse(null);
-            }
-            return convertToResponse(message, repliedMessage);
-        });
+        ChatMessageResponse.ChatMessageResponseBuilder draft = ChatMessageResponse.builder()
+                .content(request.getContent())
+                .type(request.getType())
+                .edited(false)
+                .senderName(author.name())
+                .senderEmail(author.email())
+                .senderAvatar(author.avatar());
+
+        if (request.getReplyTo() != null) {
+            ChatMessageResponse replied = findRepliedMessage(roomId, request.getReplyTo());
+            draft.replyTo(replied.getUuid())
+                    .repliedMessageContent(replied.getContent())
+                    .repliedMessageSender(replied.getSenderName());
+        }
+
+        ChatMessageResponse response = chatWriteBehindQueue.enqueue(roomId, author.userId(), draft.build()).message();
+        log.info("Message queued by {} in room {}", author.email(), roomId);
+        return response;
+    }
+
+    private ChatMessageResponse findRepliedMessage(UUID roomId, UUID messageId) {
+        ChatMessageResponse pending = chatWriteBehindQueue.findPending(roomId, messageId);
+        if (pending != null) {
+            return pending;
+        }
+        return chatMessageRepository.findViewByUuidAndRoomUuid(messageId, roomId)
+                .map(this::convertToResponse)
+                .orElseThrow(() -> new CustomException(ErrorCode.MESSAGE_NOT_FOUND, "Replied message not found"));
     }
 
+    /**
+     * Страница истории от новых к старым. before - курсор из предыдущей страницы, null для самой новой.
+     * Стоимость страницы не зависит от глубины: поиск по индексу (room_id, timestamp, uuid), без COUNT.
+     */
     @Transactional(readOnly = true)
-    public List<ChatMessageResponse> getRecentMessages(UUID roomId, Principal principal) {
+    public ChatHistoryPageResponse getRoomMessages(UUID roomId, String before, int limit, Principal principal) {
         validateRoomAccess(roomId, principal);
 
-        List<ChatMessage> messages = chatMessageRepository.findTop50ByRoomUuidOrderByTimestampAsc(roomId);
+        int pageSize = Math.min(Math.max(limit, 1), MAX_HISTORY_PAGE);
+        // Лишняя строка показывает, есть ли страница дальше
+        Limit fetch = Limit.of(pageSize + 1);
+        List<ChatMessageView> rows;
+        if (before == null || before.isBlank()) {
+            rows = chatMessageRepository.findLatestViewsByRoomUuid(roomId, fetch);
+        } else {
+            ChatCursor cursor = ChatCursor.decode(before);
+            rows = chatMessageRepository.findViewsByRoomUuidBefore(roomId, cursor.timestamp(), cursor.messageId(), fetch);
+        }
+
+        boolean hasMore = rows.size() > pageSize;
+        List<ChatMessageView> page = hasMore ? rows.subList(0, pageSize) : rows;
+
+        String nextCursor = null;
+        if (hasMore) {
+            ChatMessageView last = page.get(page.size() - 1);
+            nextCursor = new ChatCursor(last.timestamp(), last.uuid()).encode();
+        }
 
-        return messages.stream()
-                .map(message -> {
-                    ChatMessage repliedMessage = null;
-                    if (message.getReplyTo() != null) {
-                        repliedMessage = chatMessageRepository.findById(UUID.fromString(message.getReplyTo())).orElse(null);
-                    }
-                    return convertToResponse(message, repliedMessage);
-                })
+        List<ChatMessageResponse> messages = page.stream()
+                .map(this::convertToResponse)
                 .collect(Collectors.toList());
+        return new ChatHistoryPageResponse(messages, nextCursor, hasMore);
+    }
+
+    /**
+     * Последние сообщения комнаты от старых к новым. Доступ проверяется при подключении к чату,
+     * при попадании в кэш запросов к БД нет.
+     */
+    public List<ChatMessageResponse> getRecentMessages(UUID roomId) {
+        return chatTailCache.getOrLoad(roomId, () -> loadRecentMessages(roomId));
+    }
+
+    private List<ChatMessageResponse> loadRecentMessages(UUID roomId) {
+        // Очередь читается до БД: сообщение, записанное между чтениями, попадет в оба списка, а не ни в один
+        List<ChatMessageResponse> pending = chatWriteBehindQueue.pendingMessages(roomId);
+
+        List<ChatMessageView> messages = new ArrayList<>(chatMessageRepository
+                .findLatestViewsByRoomUuid(roomId, Limit.of(chatTailCache.capacity())));
+        Collections.reverse(messages);
+
+        List<ChatMessageResponse> recent = messages.stream()
+                .map(this::convertToResponse)
+                .collect(Collectors.toList());
+        if (pending.isEmpty()) {
+            return recent;
+        }
+
+        Set<UUID> persisted = recent.stream().map(ChatMessageResponse::getUuid).collect(Collectors.toSet());
+        for (ChatMessageResponse message : pending) {
+            if (!persisted.contains(message.getUuid())) {
+                recent.add(message);
+            }
+        }
+        int skip = Math.max(0, recent.size() - chatTailCache.capacity());
+        return new ArrayList<>(recent.subList(skip, recent.size()));
+    }
+
+    /**
+     * Дожидается записи сообщения из очереди отложенной записи. Вызывается до editMessage/deleteMessage,
+     * вне транзакции: иначе ожидающий держит соединение пула, которое нужно самому сбросу очереди.
+     */
+    public void awaitPersisted(UUID messageId) {
+        chatWriteBehindQueue.awaitPersisted(messageId);
     }
 
     @Transactional
@@ -133,25 +250,29 @@ public class ChatService {
         }
 
         // Валидация контента
-        validateMessageContent(request.getContent());
+        validateMessageContent(roomId, request.getContent());
 
         message.setContent(request.getContent());
         message.setEdited(true);
         message.setEditedAt(Instant.now());
 
-        ChatMessage updatedMessage = chatMessageRepository.save(message);
+        ChatMessage updatedMessage = chatMessageRepository.saveAndFlush(message);
+        long seq = recordEvent(message.getRoom(), ChatRoomEventType.EDIT, messageId);
         log.info("Message edited by {} in room {}", userEmail, roomId);
 
-        ChatMessage repliedMessage = null;
-        if (updatedMessage.getReplyTo() != null) {
-            repliedMessage = chatMessageRepository.findById(UUID.fromString(updatedMessage.getReplyTo())).orElse(null);
-        }
-
-        return convertToResponse(updatedMessage, repliedMessage);
+        ChatMessageResponse response = convertToResponse(updatedMessage).toBuilder().seq(seq).build();
+        afterCommit(() -> {
+            chatEventLog.append(roomId, new ChatEventLog.Entry(seq, ChatRoomEventType.EDIT, messageId, response));
+            chatTailCache.replace(roomId, response);
+        });
+        return response;
     }
 
+    /**
+     * Возвращает seq события удаления.
+     */
     @Transactional
-    public void deleteMessage(UUID roomId, UUID messageId, Principal principal) {
+    public long deleteMessage(UUID roomId, UUID messageId, Principal principal) {
         String userEmail = principal.getName();
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new CustomException(ErrorCode.USER_NOT_FOUND));
@@ -166,28 +287,80 @@ public class ChatService {
         }
 
         chatMessageRepository.delete(message);
+        chatMessageRepository.flush();
+        long seq = recordEvent(message.getRoom(), ChatRoomEventType.DELETE, messageId);
         log.info("Message deleted by {} in room {}", userEmail, roomId);
+
+        afterCommit(() -> {
+            chatEventLog.append(roomId, new ChatEventLog.Entry(seq, ChatRoomEventType.DELETE, messageId, null));
+            chatTailCache.remove(roomId, messageId);
+        });
+        return seq;
+    }
+
+    /**
+     * Номер последнего события комнаты. Читается до истории: события между чтениями клиент
+     * получит еще раз и применит повторно без изменений.
+     */
+    public long getCurrentSeq(UUID roomId) {
+        return chatEventLog.current(roomId);
     }
 
+    /**
+     * События комнаты после sinceSeq по возрастанию seq: из памяти, а то, что из нее уже вытеснено, -
+     * из chat_room_events. null, если клиенту нужна полная история (отстал больше чем на max-resync
+     * или знает seq, которого нет).
+     */
     @Transactional(readOnly = true)
-    public List<ChatMessageResponse> getMessagesAfter(UUID roomId, Instant afterTimestamp, Principal principal) {
-        validateRoomAccess(roomId, principal);
+    public ChatEventLog.Replay getEventsSince(UUID roomId, long sinceSeq) {
+        ChatEventLog.Replay replay = chatEventLog.since(roomId, sinceSeq);
+        if (replay == null || replay.coveredFrom() <= sinceSeq + 1) {
+            return replay;
+        }
 
-        List<ChatMessage> messages = chatMessageRepository
-                .findByRoomUuidAndTimestampAfterOrderByTimestampAsc(roomId, afterTimestamp);
-
-        return messages.stream()
-                .map(message -> {
-                    ChatMessage repliedMessage = null;
-                    if (message.getReplyTo() != null) {
-                        repliedMessage = chatMessageRepository.findById(UUID.fromString(message.getReplyTo())).orElse(null);
-                    }
-                    return convertToResponse(message, repliedMessage);
-                })
-                .collect(Collectors.toList());
+        int maxResync = chatEventLog.maxResync();
+        if (replay.coveredFrom() - sinceSeq - 1 > maxResync) {
+            return null;
+        }
+        List<ChatRoomEvent> events = chatRoomEventRepository
+                .findByRoomUuidBetween(roomId, sinceSeq, replay.coveredFrom(), Limit.of(maxResync));
+
+        // Состояние сообщений текущее: правки после события придут своими событиями
+        Set<UUID> messageIds = events.stream()
+                .filter(event -> event.getType() != ChatRoomEventType.DELETE)
+                .map(ChatRoomEvent::getMessageId)
+                .collect(Collectors.toSet());
+        Map<UUID, ChatMessageView> views = messageIds.isEmpty() ? Map.of()
+                : chatMessageRepository.findViewsByUuidIn(messageIds).stream()
+                .collect(Collectors.toMap(ChatMessageView::uuid, view -> view));
+
+        List<ChatEventLog.Entry> entries = new ArrayList<>(events.size() + replay.entries().size());
+        for (ChatRoomEvent event : events) {
+            if (event.getType() == ChatRoomEventType.DELETE) {
+                entries.add(new ChatEventLog.Entry(event.getSeq(), event.getType(), event.getMessageId(), null));
+                continue;
+            }
+            ChatMessageView view = views.get(event.getMessageId());
+            // Удаленное позже сообщение: дальше в журнале есть его DELETE
+            if (view != null) {
+                ChatMessageResponse message = convertToResponse(view).toBuilder().seq(event.getSeq()).build();
+                entries.add(new ChatEventLog.Entry(event.getSeq(), event.getType(), event.getMessageId(), message));
+            }
+        }
+        entries.addAll(replay.entries());
+        return new ChatEventLog.Replay(replay.seq(), sinceSeq + 1, entries);
+    }
+
+    @Transactional(readOnly = true)
+    public ChatUnreadResponse getUnreadCount(UUID roomId, Principal principal) {
+        User user = validateRoomAccess(roomId, principal);
+
+        long seq = chatEventLog.current(roomId);
+        long lastReadSeq = chatReadCursors.getReadSeq(roomId, user.getUuid());
+        return new ChatUnreadResponse(roomId, seq, lastReadSeq, Math.max(0L, seq - lastReadSeq));
     }
 
-    private void validateRoomAccess(UUID roomId, Principal principal) {
+    private User validateRoomAccess(UUID roomId, Principal principal) {
         String userEmail = principal.getName();
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new CustomException(ErrorCode.USER_NOT_FOUND));
@@ -205,9 +378,40 @@ public class ChatService {
                 throw new CustomException(ErrorCode.ACCESS_DENIED, "Participant is not active in this room");
             }
         }
+        return user;
     }
 
-    private void validateMessageContent(String content) {
+    /**
+     * Номер выдается последним шагом транзакции: изменение сообщения уже записано (flush), и отказ
+     * ограничений не оставит пропуска в seq. Пропуск остается только при сбое самой фиксации.
+     */
+    private long recordEvent(Room room, ChatRoomEventType type, UUID messageId) {
+        long seq = chatEventLog.next(room.getUuid());
+        chatRoomEventRepository.saveAndFlush(ChatRoomEvent.builder()
+                .room(room)
+                .seq(seq)
+                .type(type)
+                .messageId(messageId)
+                .timestamp(Instant.now())
+                .build());
+        return seq;
+    }
+
+    // Кэш видит только зафиксированные изменения
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void validateMessageContent(UUID roomId, String content) {
         if (content == null || content.trim().isEmpty()) {
             throw new CustomException(ErrorCode.INVALID_INPUT, "Message content cannot be empty");
         }
@@ -216,14 +420,28 @@ public class ChatService {
             throw new CustomException(ErrorCode.INVALID_INPUT, "Message too long (max 2000 characters)");
         }
 
-        // Базовая проверка на запрещенный контент
-        String lowerContent = content.toLowerCase();
-        if (lowerContent.contains("http://") || lowerContent.contains("https://")) {
-            throw new CustomException(ErrorCode.INVALID_INPUT, "Links are not allowed in messages");
-        }
+        chatContentFilter.check(roomId, content);
+    }
+
+    private ChatMessageResponse convertToResponse(ChatMessageView view) {
+        return ChatMessageResponse.builder()
+                .uuid(view.uuid())
+                .content(view.content())
+                .type(view.type())
+                .timestamp(view.timestamp())
+                .edited(view.edited())
+                .editedAt(view.editedAt())
+                .replyTo(view.replyTo())
+                .senderName(view.senderName())
+                .senderEmail(view.senderEmail())
+                .senderAvatar(view.senderAvatar())
+                .repliedMessageContent(view.repliedMessageContent())
+                .repliedMessageSender(view.repliedMessageSender())
+                .build();
     }
 
-    private ChatMessageResponse convertToResponse(ChatMessage message, ChatMessage repliedMessage) {
+    private ChatMessageResponse convertToResponse(ChatMessage message) {
+        ChatMessage repliedMessage = message.getReplyTo();
         return ChatMessageResponse.builder()
                 .uuid(message.getUuid())
                 .content(message.getContent())
@@ -231,7 +449,7 @@ public class ChatService {
                 .timestamp(message.getTimestamp())
                 .edited(message.isEdited())
                 .editedAt(message.getEditedAt())
-                .replyTo(message.getReplyTo() != null ? UUID.fromString(message.getReplyTo()) : null)
+                .replyTo(repliedMessage != null ? repliedMessage.getUuid() : null)
                 .senderName(message.getUser().getName())
                 .senderEmail(message.getUser().getEmail())
                 .senderAvatar(message.getUser().getAvatarLink())
@@ -0,0 +1,193 @@
+package com.semasem.service;
+
+import com.semasem.dto.response.ChatMessageResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Последние N сообщений комнаты в готовом для отправки виде. Хвост загружается из БД
+ * при первом запросе истории и дальше поддерживается записями ChatService.
+ */
+@Slf4j
+@Component
+public class ChatTailCache {
+
+    private final int capacity;
+    private final long idleTtlMillis;
+    private final ScheduledExecutorService sweeper;
+
+    private final Map<UUID, RoomTail> rooms = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    private static final class RoomTail {
+        private final ArrayDeque<ChatMessageResponse> messages = new ArrayDeque<>();
+        private boolean loaded;
+        // Изменения во время загрузки из БД делают загруженный хвост устаревшим
+        private long modCount;
+        private volatile long lastAccess = System.currentTimeMillis();
+    }
+
+    public ChatTailCache(MeterRegistry meterRegistry,
+                         @Value("${chat.tail.size:50}") int capacity,
+                         @Value("${chat.tail.idle-ttl-ms:600000}") long idleTtlMillis) {
+        this.capacity = capacity;
+        this.idleTtlMillis = idleTtlMillis;
+
+        this.hits = Counter.builder("chat.tail.requests")
+                .description("Chat history requests served from the room tail cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("chat.tail.requests")
+                .description("Chat history requests served from the room tail cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("chat.tail.rooms", rooms, Map::size)
+                .description("Rooms with a cached chat tail")
+                .register(meterRegistry);
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-tail-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000L, idleTtlMillis / 4);
+        sweeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Хвост комнаты от старых к новым. При промахе вызывает loader, который должен вернуть
+     * не больше capacity() последних сообщений в том же порядке.
+     */
+    public List<ChatMessageResponse> getOrLoad(UUID roomId, Supplier<List<ChatMessageResponse>> loader) {
+        RoomTail tail = rooms.computeIfAbsent(roomId, id -> new RoomTail());
+        tail.lastAccess = System.currentTimeMillis();
+
+        long modCount;
+        synchronized (tail) {
+            if (tail.loaded) {
+                hits.increment();
+                return List.copyOf(tail.messages);
+            }
+            modCount = tail.modCount;
+        }
+
+        misses.increment();
+        List<ChatMessageResponse> loaded = loader.get();
+
+        synchronized (tail) {
+            if (!tail.loaded && tail.modCount == modCount && rooms.get(roomId) == tail) {
+                tail.messages.clear();
+                int skip = Math.max(0, loaded.size() - capacity);
+                for (int i = skip; i < loaded.size(); i++) {
+                    tail.messages.addLast(loaded.get(i));
+                }
+                tail.loaded = true;
+            }
+        }
+        return loaded;
+    }
+
+    public void append(UUID roomId, ChatMessageResponse message) {
+        RoomTail tail = rooms.get(roomId);
+        if (tail == null) {
+            return;
+        }
+        tail.lastAccess = System.currentTimeMillis();
+        synchronized (tail) {
+            tail.modCount++;
+            if (tail.loaded) {
+                tail.messages.addLast(message);
+                while (tail.messages.size() > capacity) {
+                    tail.messages.removeFirst();
+                }
+            }
+        }
+    }
+
+    public void replace(UUID roomId, ChatMessageResponse message) {
+        RoomTail tail = rooms.get(roomId);
+        if (tail == null) {
+            return;
+        }
+        synchronized (tail) {
+            tail.modCount++;
+            if (tail.loaded) {
+                rewrite(tail, message.getUuid(), message, message.getContent());
+            }
+        }
+    }
+
+    public void remove(UUID roomId, UUID messageId) {
+        RoomTail tail = rooms.get(roomId);
+        if (tail == null) {
+            return;
+        }
+        synchronized (tail) {
+            tail.modCount++;
+            if (tail.loaded) {
+                rewrite(tail, messageId, null, null);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Заменяет (или удаляет при replacement == null) сообщение и обновляет цитаты в ответах на него.
+     * Элементы хвоста не изменяются на месте: их могут в этот момент сериализовать другие потоки.
+     */
+    private void rewrite(RoomTail tail, UUID messageId, ChatMessageResponse replacement, String quotedContent) {
+        List<ChatMessageResponse> updated = new ArrayList<>(tail.messages.size());
+        for (ChatMessageResponse message : tail.messages) {
+            if (messageId.equals(message.getUuid())) {
+                if (replacement != null) {
+                    updated.add(replacement);
+                }
+            } else if (messageId.equals(message.getReplyTo())) {
+                updated.add(message.toBuilder()
+                        .repliedMessageContent(quotedContent)
+                        .repliedMessageSender(replacement != null ? message.getRepliedMessageSender() : null)
+                        .build());
+            } else {
+                updated.add(message);
+            }
+        }
+        tail.messages.clear();
+        tail.messages.addAll(updated);
+    }
+
+    private void evictIdle() {
+        long threshold = System.currentTimeMillis() - idleTtlMillis;
+        int before = rooms.size();
+        rooms.values().removeIf(tail -> tail.lastAccess < threshold);
+        int evicted = before - rooms.size();
+        if (evicted > 0) {
+            log.debug("Evicted {} idle chat tails", evicted);
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.semasem.service;
+
+import com.semasem.dto.exception.CustomException;
+import com.semasem.dto.exception.ErrorCode;
+import com.semasem.dto.response.ChatMessageResponse;
+import com.semasem.repository.entity.ChatRoomEventType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Отложенная запись сообщений чата. Сообщение получает id, seq комнаты и время при постановке
+ * в очередь и сразу рассылается; один поток пишет очередь пакетами в порядке постановки.
+ * Временный сбой БД оставляет пакет в голове очереди до следующей попытки, нарушение ограничений
+ * (удаленная комната, цитата удаленного сообщения) отбрасывает только свою строку.
+ * Подтверждения отправляются подписчикам в том же порядке.
+ */
+@Slf4j
+@Component
+public class ChatWriteBehindQueue {
+
+    private static final String INSERT_SQL = "INSERT INTO chat_messages " +
+            "(uuid, room_id, user_id, content, type, timestamp, reply_to_id, edited) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, false)";
+    private static final String INSERT_EVENT_SQL = "INSERT INTO chat_room_events " +
+            "(uuid, room_id, seq, type, message_id, timestamp) VALUES (?, ?, ?, 'MESSAGE', ?, ?)";
+    private static final String INSERT_DELETE_EVENT_SQL = "INSERT INTO chat_room_events " +
+            "(uuid, room_id, seq, type, message_id, timestamp) VALUES (?, ?, ?, 'DELETE', ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ChatTailCache chatTailCache;
+    private final ChatEventLog chatEventLog;
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final long enqueueTimeoutMillis;
+    private final long flushWaitMillis;
+    private final BlockingQueue<PendingMessage> queue = new LinkedBlockingQueue<>();
+    // Места в очереди освобождаются после записи, а не после выборки в пакет
+    private final Semaphore slots;
+    private final ScheduledExecutorService flusher;
+
+    private final Map<UUID, PendingMessage> pending = new ConcurrentHashMap<>();
+    private final List<Consumer<Ack>> listeners = new CopyOnWriteArrayList<>();
+
+    // Номер и время выдаются под этой блокировкой вместе с постановкой в очередь
+    private final ReentrantLock enqueueLock = new ReentrantLock();
+    private Instant lastTimestamp = Instant.EPOCH;
+
+    // Пакет, который пишется сейчас; только поток записи
+    private final List<PendingMessage> inFlight = new ArrayList<>();
+
+    private final Timer flushLatency;
+    private final DistributionSummary batchSizes;
+    private final Counter rejected;
+    private final Counter flushFailures;
+    private final Counter dropped;
+
+    public record PendingMessage(long seq, UUID roomId, UUID userId, ChatMessageResponse message,
+                                 CompletableFuture<Boolean> persisted) {
+    }
+
+    /**
+     * deletedSeq - номер события удаления для сообщения, которое БД отклонила, иначе 0.
+     */
+    public record Ack(UUID roomId, UUID userId, UUID messageId, long seq, boolean persisted, long deletedSeq) {
+    }
+
+    public ChatWriteBehindQueue(JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                ChatTailCache chatTailCache,
+                                ChatEventLog chatEventLog,
+                                MeterRegistry meterRegistry,
+                                @Value("${chat.write-behind.enabled:false}") boolean enabled,
+                                @Value("${chat.write-behind.flush-interval-ms:50}") long flushIntervalMillis,
+                                @Value("${chat.write-behind.batch-size:200}") int batchSize,
+                                @Value("${chat.write-behind.queue-capacity:10000}") int queueCapacity,
+                                @Value("${chat.write-behind.enqueue-timeout-ms:500}") long enqueueTimeoutMillis,
+                                @Value("${chat.write-behind.flush-wait-ms:2000}") long flushWaitMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chatTailCache = chatTailCache;
+        this.chatEventLog = chatEventLog;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+        this.flushWaitMillis = flushWaitMillis;
+        this.slots = new Semaphore(queueCapacity);
+
+        this.flushLatency = Timer.builder("chat.write_behind.flush")
+                .description("Time to insert one batch of chat messages")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("chat.write_behind.batch.size")
+                .description("Chat messages inserted per batch")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("chat.write_behind.rejected")
+                .description("Chat messages rejected because the write-behind queue was full")
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("chat.write_behind.flush.failures")
+                .description("Batch flushes that failed and were kept for retry")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("chat.write_behind.dropped")
+                .description("Chat messages dropped because the database rejected the row")
+                .register(meterRegistry);
+        Gauge.builder("chat.write_behind.pending", pending, Map::size)
+                .description("Chat messages broadcast but not yet persisted")
+                .register(meterRegistry);
+
+        if (enabled) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "chat-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void subscribe(Consumer<Ack> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Ставит сообщение в очередь записи и в хвост комнаты. draft заполнен всем, кроме uuid и timestamp.
+     * Если очередь не освобождается за enqueue-timeout-ms, сообщение отклоняется.
+     */
+    public PendingMessage enqueue(UUID roomId, UUID userId, ChatMessageResponse draft) {
+        boolean reserved = false;
+        boolean locked = false;
+        try {
+            // Место резервируется до выдачи номера, чтобы отказ не оставлял пропусков в seq
+            reserved = slots.tryAcquire(enqueueTimeoutMillis, TimeUnit.MILLISECONDS);
+            locked = reserved && enqueueLock.tryLock(enqueueTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (!locked) {
+                throw busy();
+            }
+
+            Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+            // Порядок в истории задается временем, поэтому оно строго растет вместе с номером
+            Instant timestamp = now.isAfter(lastTimestamp) ? now : lastTimestamp.plus(1, ChronoUnit.MICROS);
+            ChatMessageResponse message = draft.toBuilder()
+                    .uuid(UUID.randomUUID())
+                    .timestamp(timestamp)
+                    .seq(chatEventLog.next(roomId))
+                    .build();
+            PendingMessage entry = new PendingMessage(message.getSeq(), roomId, userId, message,
+                    new CompletableFuture<>());
+
+            pending.put(message.getUuid(), entry);
+            queue.add(entry);
+            reserved = false;
+            lastTimestamp = timestamp;
+            chatEventLog.append(roomId, new ChatEventLog.Entry(entry.seq(), ChatRoomEventType.MESSAGE,
+                    message.getUuid(), message));
+            chatTailCache.append(roomId, message);
+            return entry;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw busy();
+        } finally {
+            if (locked) {
+                enqueueLock.unlock();
+            }
+            if (reserved) {
+                slots.release();
+            }
+        }
+    }
+
+    /**
+     * Еще не записанное сообщение комнаты или null.
+     */
+    public ChatMessageResponse findPending(UUID roomId, UUID messageId) {
+        PendingMessage entry = pending.get(messageId);
+        return entry != null && entry.roomId().equals(roomId) ? entry.message() : null;
+    }
+
+    /**
+     * Незаписанные сообщения комнаты в порядке отправки.
+     */
+    public List<ChatMessageResponse> pendingMessages(UUID roomId) {
+        if (pending.isEmpty()) {
+            return List.of();
+        }
+        return pending.values().stream()
+                .filter(entry -> entry.roomId().equals(roomId))
+                .sorted((a, b) -> Long.compare(a.seq(), b.seq()))
+                .map(PendingMessage::message)
+                .toList();
+    }
+
+    /**
+     * Ждет записи сообщения, если оно еще в очереди: правка и удаление работают только с БД.
+     */
+    public void awaitPersisted(UUID messageId) {
+        PendingMessage entry = pending.get(messageId);
+        if (entry == null) {
+            return;
+        }
+        try {
+            flusher.execute(this::flush);
+            entry.persisted().get(flushWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException | ExecutionException | TimeoutException e) {
+            throw new CustomException(ErrorCode.CHAT_BUSY);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomException(ErrorCode.CHAT_BUSY);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(flushWaitMillis, TimeUnit.MILLISECONDS)) {
+                flusher.shutdownNow();
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // Последняя запись того, что осталось в очереди
+        flush();
+        if (!pending.isEmpty()) {
+            log.error("{} chat messages were not persisted before shutdown", pending.size());
+        }
+    }
+
+    private void flush() {
+        try {
+            while (true) {
+                if (inFlight.isEmpty()) {
+                    queue.drainTo(inFlight, batchSize);
+                    if (inFlight.isEmpty()) {
+                        return;
+                    }
+                }
+                if (!write()) {
+                    return;
+                }
+            }
+        } catch (Throwable t) {
+            log.error("Chat write-behind flush failed", t);
+        }
+    }
+
+    /**
+     * Пишет inFlight. false - временный сбой, неподтвержденный остаток пакета остается в inFlight.
+     */
+    private boolean write() {
+        long started = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(inFlight));
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Chat batch of {} messages violates constraints, inserting row by row", inFlight.size());
+            return writeRowByRow();
+        } catch (DataAccessException | TransactionException e) {
+            flushFailures.increment();
+            log.warn("Chat batch of {} messages not persisted, will retry: {}", inFlight.size(), e.getMessage());
+            return false;
+        }
+        flushLatency.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        batchSizes.record(inFlight.size());
+
+        for (PendingMessage entry : inFlight) {
+            complete(entry, true, 0L);
+        }
+        inFlight.clear();
+        return true;
+    }
+
+    private boolean writeRowByRow() {
+        Iterator<PendingMessage> iterator = inFlight.iterator();
+        while (iterator.hasNext()) {
+            PendingMessage entry = iterator.next();
+            try {
+                transactionTemplate.executeWithoutResult(status -> insert(List.of(entry)));
+                complete(entry, true, 0L);
+            } catch (DataIntegrityViolationException e) {
+                dropped.increment();
+                log.error("Chat message {} in room {} rejected by the database: {}",
+                        entry.message().getUuid(), entry.roomId(), e.getMessage());
+                // Остальные уже получили сообщение: его удаление - следующее событие комнаты
+                UUID messageId = entry.message().getUuid();
+                long deletedSeq = chatEventLog.next(entry.roomId());
+                recordDelete(entry.roomId(), messageId, deletedSeq);
+                chatEventLog.append(entry.roomId(),
+                        new ChatEventLog.Entry(deletedSeq, ChatRoomEventType.DELETE, messageId, null));
+                chatTailCache.remove(entry.roomId(), messageId);
+                complete(entry, false, deletedSeq);
+            } catch (DataAccessException | TransactionException e) {
+                flushFailures.increment();
+                log.warn("Chat message {} not persisted, will retry: {}", entry.message().getUuid(), e.getMessage());
+                return false;
+            }
+            iterator.remove();
+        }
+        return true;
+    }
+
+    /**
+     * Событие удаления отклоненного сообщения пишется в журнал, чтобы его получил и клиент,
+     * догоняющий по БД. Не записалось (комната уже удалена) - остается только в памяти.
+     */
+    private void recordDelete(UUID roomId, UUID messageId, long seq) {
+        try {
+            jdbcTemplate.update(INSERT_DELETE_EVENT_SQL, UUID.randomUUID(), roomId, seq, messageId,
+                    OffsetDateTime.now(ZoneOffset.UTC));
+        } catch (DataAccessException e) {
+            log.warn("Delete event {} for rejected chat message {} not persisted: {}", seq, messageId, e.getMessage());
+        }
+    }
+
+    private void insert(List<PendingMessage> batch) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), this::bind);
+        jdbcTemplate.batchUpdate(INSERT_EVENT_SQL, batch, batch.size(), this::bindEvent);
+    }
+
+    private void bind(PreparedStatement statement, PendingMessage entry) throws SQLException {
+        ChatMessageResponse message = entry.message();
+        statement.setObject(1, message.getUuid());
+        statement.setObject(2, entry.roomId());
+        statement.setObject(3, entry.userId());
+        statement.setString(4, message.getContent());
+        statement.setString(5, message.getType().name());
+        statement.setObject(6, OffsetDateTime.ofInstant(message.getTimestamp(), ZoneOffset.UTC));
+        statement.setObject(7, message.getReplyTo());
+    }
+
+    private void bindEvent(PreparedStatement statement, PendingMessage entry) throws SQLException {
+        statement.setObject(1, UUID.randomUUID());
+        statement.setObject(2, entry.roomId());
+        statement.setLong(3, entry.seq());
+        statement.setObject(4, entry.message().getUuid());
+        statement.setObject(5, OffsetDateTime.ofInstant(entry.message().getTimestamp(), ZoneOffset.UTC));
+    }
+
+    private void complete(PendingMessage entry, boolean persisted, long deletedSeq) {
+        pending.remove(entry.message().getUuid());
+        slots.release();
+
+        Ack ack = new Ack(entry.roomId(), entry.userId(), entry.message().getUuid(), entry.seq(), persisted,
+                deletedSeq);
+        for (Consumer<Ack> listener : listeners) {
+            try {
+                listener.accept(ack);
+            } catch (Exception e) {
+                log.warn("Chat ack listener failed", e);
+            }
+        }
+        entry.persisted().complete(persisted);
+    }
+
+    private CustomException busy() {
+        rejected.increment();
+        return new CustomException(ErrorCode.CHAT_BUSY);
+    }
+}
@@ -11,6 +11,7 @@ import com.semasem.repository.entity.Room;
 import com.semasem.repository.entity.User;
 import com.semasem.repository.entity.UserRole;
 import com.semasem.service.security.JwtService;
+import com.semasem.service.security.RefreshTokenStore;
 import com.semasem.dto.entity.TokenType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -28,6 +29,7 @@ public class GuestService {
     private final RoomRepository roomRepository;
     private final RoomService roomService;
     private final JwtService jwtService;
+    private final RefreshTokenStore refreshTokenStore;
 
     @Transactional
     public GuestJoinResponse joinAsGuest(GuestJoinRequest request) {
@@ -43,10 +45,7 @@ public class GuestService {
 
         // Генерируем токены
         String accessToken = jwtService.generateToken(savedGuest, TokenType.ACCESS_TOKEN);
-        String refreshToken = jwtService.generateToken(savedGuest, TokenType.REFRESH_TOKEN);
-
-        savedGuest.setRefreshToken(refreshToken);
-        userRepository.save(savedGuest);
+        String refreshToken = refreshTokenStore.issue(savedGuest);
 
         Principal guestPrincipal = savedGuest::getEmail;
         roomService.joinRoom(room.getUuid(), guestPrincipal);
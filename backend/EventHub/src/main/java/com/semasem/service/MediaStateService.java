@@ -1,9 +1,11 @@
 package com.semasem.service;
 
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -13,90 +15,121 @@ import java.util.concurrent.ConcurrentHashMap;
 @RequiredArgsConstructor
 public class MediaStateService {
 
-    private final Map<UUID, Map<UUID, MediaState>> roomMediaStates = new ConcurrentHashMap<>();
+    private final Map<UUID, RoomMediaStateTable> roomMediaStates = new ConcurrentHashMap<>();
 
+    @Value
     public static class MediaState {
-        private boolean audioEnabled;
-        private boolean videoEnabled;
-        private boolean screenSharing;
-        private long lastUpdate;
-
-        public MediaState() {
-            this.audioEnabled = true; // по умолчанию включено
-            this.videoEnabled = true;
-            this.screenSharing = false;
-            this.lastUpdate = System.currentTimeMillis();
+        boolean audioEnabled;
+        boolean videoEnabled;
+        boolean screenSharing;
+        long version;
+        long lastUpdate;
+
+        public static MediaState defaults() {
+            // по умолчанию включено
+            return new MediaState(true, true, false, 0L, System.currentTimeMillis());
         }
 
-        public MediaState(boolean audioEnabled, boolean videoEnabled, boolean screenSharing) {
-            this.audioEnabled = audioEnabled;
-            this.videoEnabled = videoEnabled;
-            this.screenSharing = screenSharing;
-            this.lastUpdate = System.currentTimeMillis();
-        }
-
-        public boolean isAudioEnabled() { return audioEnabled; }
-        public void setAudioEnabled(boolean audioEnabled) {
-            this.audioEnabled = audioEnabled;
-            this.lastUpdate = System.currentTimeMillis();
+        static MediaState unpack(long state, long lastUpdate) {
+            return new MediaState(
+                    RoomMediaStateTable.isSet(state, RoomMediaStateTable.AUDIO),
+                    RoomMediaStateTable.isSet(state, RoomMediaStateTable.VIDEO),
+                    RoomMediaStateTable.isSet(state, RoomMediaStateTable.SCREEN),
+                    RoomMediaStateTable.versionOf(state),
+                    lastUpdate
+            );
         }
+    }
 
-        public boolean isVideoEnabled() { return videoEnabled; }
-        public void setVideoEnabled(boolean videoEnabled) {
-            this.videoEnabled = videoEnabled;
-            this.lastUpdate = System.currentTimeMillis();
-        }
+    /**
+     * Состояния, изменившиеся после запрошенной версии, и версия для следующего запроса.
+     * full означает, что вместо диффа отдано полное состояние (например, таблица комнаты пересоздана).
+     */
+    public record MediaStateChanges(long version, boolean full, Map<UUID, MediaState> states) {
+    }
 
-        public boolean isScreenSharing() { return screenSharing; }
-        public void setScreenSharing(boolean screenSharing) {
-            this.screenSharing = screenSharing;
-            this.lastUpdate = System.currentTimeMillis();
-        }
+    public record MediaStateCursor(long version, boolean full) {
+    }
 
-        public long getLastUpdate() { return lastUpdate; }
+    @FunctionalInterface
+    public interface MediaStateVisitor {
+        void visit(UUID userId, boolean audioEnabled, boolean videoEnabled, boolean screenSharing, long lastUpdate);
     }
 
     public void updateMediaState(UUID roomId, UUID userId, Boolean audioEnabled, Boolean videoEnabled, Boolean screenSharing) {
-        roomMediaStates.computeIfAbsent(roomId, k -> new ConcurrentHashMap<>());
-
-        MediaState currentState = roomMediaStates.get(roomId).computeIfAbsent(userId, k -> new MediaState());
-
-        if (audioEnabled != null) {
-            currentState.setAudioEnabled(audioEnabled);
-        }
-        if (videoEnabled != null) {
-            currentState.setVideoEnabled(videoEnabled);
-        }
-        if (screenSharing != null) {
-            currentState.setScreenSharing(screenSharing);
-        }
+        RoomMediaStateTable table;
+        long state;
+        do {
+            table = roomMediaStates.computeIfAbsent(roomId, k -> new RoomMediaStateTable());
+            state = table.update(userId, audioEnabled, videoEnabled, screenSharing);
+            // Таблицу могли убрать вместе с последним участником до нашей записи
+        } while (roomMediaStates.get(roomId) != table);
 
         log.debug("Media state updated for user {} in room {}: audio={}, video={}, screen={}",
-                userId, roomId, currentState.isAudioEnabled(), currentState.isVideoEnabled(), currentState.isScreenSharing());
+                userId, roomId,
+                RoomMediaStateTable.isSet(state, RoomMediaStateTable.AUDIO),
+                RoomMediaStateTable.isSet(state, RoomMediaStateTable.VIDEO),
+                RoomMediaStateTable.isSet(state, RoomMediaStateTable.SCREEN));
     }
 
     public MediaState getMediaState(UUID roomId, UUID userId) {
-        Map<UUID, MediaState> roomStates = roomMediaStates.get(roomId);
-        if (roomStates != null) {
-            return roomStates.get(userId);
+        RoomMediaStateTable table = roomMediaStates.get(roomId);
+        if (table != null) {
+            long state = table.get(userId);
+            if (RoomMediaStateTable.isSet(state, RoomMediaStateTable.PRESENT)) {
+                return MediaState.unpack(state, table.updatedAt(userId));
+            }
         }
-        return new MediaState();
+        return MediaState.defaults();
     }
 
     public Map<UUID, MediaState> getAllMediaStates(UUID roomId) {
-        return roomMediaStates.getOrDefault(roomId, new ConcurrentHashMap<>());
+        return getChangesSince(roomId, 0L).states();
     }
 
-    public void removeMediaState(UUID roomId, UUID userId) {
-        Map<UUID, MediaState> roomStates = roomMediaStates.get(roomId);
-        if (roomStates != null) {
-            roomStates.remove(userId);
-            log.debug("Media state removed for user {} in room {}", userId, roomId);
+    public MediaStateChanges getChangesSince(UUID roomId, long sinceVersion) {
+        Map<UUID, MediaState> states = new HashMap<>();
+        RoomMediaStateTable table = roomMediaStates.get(roomId);
+        if (table == null) {
+            return new MediaStateChanges(0L, true, states);
+        }
 
-            if (roomStates.isEmpty()) {
-                roomMediaStates.remove(roomId);
-            }
+        boolean full = isFullResync(table, sinceVersion);
+        long version = table.forEachChangedSince(full ? 0L : sinceVersion,
+                (userId, state, updatedAt) -> states.put(userId, MediaState.unpack(state, updatedAt)));
+        return new MediaStateChanges(version, full, states);
+    }
+
+    /**
+     * То же, что getChangesSince, но без промежуточных объектов: состояния передаются посетителю.
+     */
+    public MediaStateCursor visitChangesSince(UUID roomId, long sinceVersion, MediaStateVisitor visitor) {
+        RoomMediaStateTable table = roomMediaStates.get(roomId);
+        if (table == null) {
+            return new MediaStateCursor(0L, true);
         }
+
+        boolean full = isFullResync(table, sinceVersion);
+        long version = table.forEachChangedSince(full ? 0L : sinceVersion, (userId, state, updatedAt) ->
+                visitor.visit(userId,
+                        RoomMediaStateTable.isSet(state, RoomMediaStateTable.AUDIO),
+                        RoomMediaStateTable.isSet(state, RoomMediaStateTable.VIDEO),
+                        RoomMediaStateTable.isSet(state, RoomMediaStateTable.SCREEN),
+                        updatedAt));
+        return new MediaStateCursor(version, full);
+    }
+
+    // Версия клиента из прошлой жизни таблицы комнаты: отдаем все целиком
+    private boolean isFullResync(RoomMediaStateTable table, long sinceVersion) {
+        return sinceVersion <= 0L || sinceVersion > table.version();
+    }
+
+    public void removeMediaState(UUID roomId, UUID userId) {
+        roomMediaStates.computeIfPresent(roomId, (id, table) -> {
+            table.remove(userId);
+            return table.isEmpty() ? null : table;
+        });
+        log.debug("Media state removed for user {} in room {}", userId, roomId);
     }
 
     public void cleanupRoom(UUID roomId) {
@@ -105,11 +138,7 @@ public class MediaStateService {
     }
 
     public boolean hasActiveMediaParticipants(UUID roomId) {
-        Map<UUID, MediaState> roomStates = roomMediaStates.get(roomId);
-        if (roomStates != null) {
-            return roomStates.values().stream()
-                    .anyMatch(state -> state.isAudioEnabled() || state.isVideoEnabled() || state.isScreenSharing());
-        }
-        return false;
+        RoomMediaStateTable table = roomMediaStates.get(roomId);
+        return table != null && table.hasActiveMedia();
     }
-}
\ No newline at end of file
+}
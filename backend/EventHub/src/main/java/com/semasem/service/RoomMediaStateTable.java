@@ -0,0 +1,154 @@
+package com.semasem.service;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Медиасостояния участников одной комнаты. Флаги и версия изменения упакованы в один long
+ * на слот и меняются через CAS. Слоты выделяются сегментами, не перемещаются и не переиспользуются:
+ * таблица живет, пока в комнате есть участники.
+ */
+final class RoomMediaStateTable {
+
+    static final long AUDIO = 1L;
+    static final long VIDEO = 1L << 1;
+    static final long SCREEN = 1L << 2;
+    static final long PRESENT = 1L << 3;
+    static final long FLAGS = AUDIO | VIDEO | SCREEN | PRESENT;
+    static final long DEFAULT_FLAGS = AUDIO | VIDEO | PRESENT;
+
+    private static final int VERSION_SHIFT = 4;
+    private static final int SEGMENT_SHIFT = 6;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final AtomicLong version = new AtomicLong();
+    // Максимальная версия, отданная читателям: запись со штампом не новее нее перештамповывается
+    private final AtomicLong servedVersion = new AtomicLong();
+    private final Map<UUID, Integer> slots = new ConcurrentHashMap<>();
+
+    private volatile Segment[] segments = new Segment[0];
+    private int nextSlot;
+
+    private static final class Segment {
+        private final AtomicLongArray states = new AtomicLongArray(SEGMENT_SIZE);
+        private final AtomicLongArray updatedAt = new AtomicLongArray(SEGMENT_SIZE);
+    }
+
+    static boolean isSet(long state, long flag) {
+        return (state & flag) != 0;
+    }
+
+    static long versionOf(long state) {
+        return state >>> VERSION_SHIFT;
+    }
+
+    /**
+     * Применяет ненулевые флаги к текущему состоянию участника и возвращает новое упакованное значение.
+     */
+    long update(UUID userId, Boolean audioEnabled, Boolean videoEnabled, Boolean screenSharing) {
+        int slot = slots.computeIfAbsent(userId, id -> allocate());
+        Segment segment = segments[slot >>> SEGMENT_SHIFT];
+        int index = slot & SEGMENT_MASK;
+        long now = System.currentTimeMillis();
+
+        while (true) {
+            long current = segment.states.get(index);
+            long flags = isSet(current, PRESENT) ? current & FLAGS : DEFAULT_FLAGS;
+            flags = apply(flags, AUDIO, audioEnabled);
+            flags = apply(flags, VIDEO, videoEnabled);
+            flags = apply(flags, SCREEN, screenSharing);
+
+            long next = (version.incrementAndGet() << VERSION_SHIFT) | flags;
+            if (!segment.states.compareAndSet(index, current, next)) {
+                continue;
+            }
+            segment.updatedAt.set(index, now);
+
+            // Читатель мог отдать версию новее штампа до того, как запись стала видна
+            if (versionOf(next) <= servedVersion.get()) {
+                continue;
+            }
+            return next;
+        }
+    }
+
+    long get(UUID userId) {
+        Integer slot = slots.get(userId);
+        return slot != null ? segments[slot >>> SEGMENT_SHIFT].states.get(slot & SEGMENT_MASK) : 0L;
+    }
+
+    long updatedAt(UUID userId) {
+        Integer slot = slots.get(userId);
+        return slot != null ? segments[slot >>> SEGMENT_SHIFT].updatedAt.get(slot & SEGMENT_MASK) : 0L;
+    }
+
+    void remove(UUID userId) {
+        slots.remove(userId);
+    }
+
+    boolean isEmpty() {
+        return slots.isEmpty();
+    }
+
+    long version() {
+        return version.get();
+    }
+
+    /**
+     * Передает участников, изменившихся после since, и возвращает версию, с которой клиенту
+     * запрашивать следующий дифф.
+     */
+    long forEachChangedSince(long since, StateVisitor visitor) {
+        long served = version.get();
+        servedVersion.accumulateAndGet(served, Math::max);
+
+        slots.forEach((userId, slot) -> {
+            Segment segment = segments[slot >>> SEGMENT_SHIFT];
+            int index = slot & SEGMENT_MASK;
+            long state = segment.states.get(index);
+            if (isSet(state, PRESENT) && versionOf(state) > since) {
+                visitor.visit(userId, state, segment.updatedAt.get(index));
+            }
+        });
+        return served;
+    }
+
+    boolean hasActiveMedia() {
+        for (int slot : slots.values()) {
+            long state = segments[slot >>> SEGMENT_SHIFT].states.get(slot & SEGMENT_MASK);
+            if (isSet(state, PRESENT) && (state & (AUDIO | VIDEO | SCREEN)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    interface StateVisitor {
+        void visit(UUID userId, long state, long updatedAt);
+    }
+
+    private synchronized int allocate() {
+        int slot = nextSlot++;
+        int segmentIndex = slot >>> SEGMENT_SHIFT;
+        Segment[] current = segments;
+        if (segmentIndex >= current.length) {
+            Segment[] grown = new Segment[current.length + 1];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            grown[current.length] = new Segment();
+            segments = grown;
+        }
+        return slot;
+    }
+
+    private static long apply(long flags, long flag, Boolean enabled) {
+        if (enabled == null) {
+            return flags;
+        }
+        return enabled ? flags | flag : flags & ~flag;
+    }
+}
@@ -18,6 +18,26 @@ public class RoomSessionService {
 
     private final Map<UUID, Set<UUID>> activeRoomParticipants = new ConcurrentHashMap<>();
     private final Map<UUID, ParticipantMediaInfo> participantMediaInfo = new ConcurrentHashMap<>();
+    private final Map<UUID, RosterState> rosterStates = new ConcurrentHashMap<>();
+
+    /**
+     * Изменения состава комнаты с последней публикации. Повторные входы и выходы
+     * одного пользователя сворачиваются в итоговое состояние.
+     */
+    private static final class RosterState {
+        private volatile long version;
+        private long publishedVersion;
+        private final Map<UUID, ParticipantMediaInfo> joined = new LinkedHashMap<>();
+        private final Set<UUID> left = new LinkedHashSet<>();
+
+        private boolean hasPending() {
+            return version > publishedVersion;
+        }
+    }
+
+    public record RosterDelta(UUID roomId, long fromVersion, long version,
+                              List<ParticipantMediaInfo> joined, List<UUID> left) {
+    }
 
     public record ParticipantMediaInfo(
             UUID userId,
@@ -52,10 +72,19 @@ public class RoomSessionService {
                 .computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet())
                 .add(userId);
 
-        participantMediaInfo.put(userId, new ParticipantMediaInfo(
+        ParticipantMediaInfo info = new ParticipantMediaInfo(
                 userId, name, email, role, isGuest, joinedAt, Instant.now(),
                 true, true, sessionId
-        ));
+        );
+        participantMediaInfo.put(userId, info);
+
+        rosterStates.compute(roomId, (id, state) -> {
+            RosterState roster = state != null ? state : new RosterState();
+            roster.version++;
+            roster.left.remove(userId);
+            roster.joined.put(userId, info);
+            return roster;
+        });
 
         log.info("User {} joined room {}. Active participants: {}",
                 userId, roomId, getActiveParticipantsCount(roomId));
@@ -71,6 +100,14 @@ public class RoomSessionService {
     }
 
     public void removeParticipant(UUID roomId, UUID userId) {
+        // Сначала фиксируем выход: иначе опустевшую комнату могут убрать до публикации дельты
+        rosterStates.computeIfPresent(roomId, (id, roster) -> {
+            roster.version++;
+            roster.joined.remove(userId);
+            roster.left.add(userId);
+            return roster;
+        });
+
         Optional.ofNullable(activeRoomParticipants.get(roomId))
                 .ifPresent(participants -> {
                     participants.remove(userId);
@@ -101,6 +138,32 @@ public class RoomSessionService {
                 .collect(Collectors.toList());
     }
 
+    public long getRosterVersion(UUID roomId) {
+        RosterState roster = rosterStates.get(roomId);
+        return roster != null ? roster.version : 0L;
+    }
+
+    /**
+     * Забирает накопленные изменения состава по всем комнатам. Состояние опустевшей
+     * комнаты удаляется после публикации последней дельты.
+     */
+    public List<RosterDelta> drainRosterDeltas() {
+        List<RosterDelta> deltas = new ArrayList<>();
+        for (UUID roomId : rosterStates.keySet()) {
+            rosterStates.computeIfPresent(roomId, (id, roster) -> {
+                if (roster.hasPending()) {
+                    deltas.add(new RosterDelta(id, roster.publishedVersion, roster.version,
+                            List.copyOf(roster.joined.values()), List.copyOf(roster.left)));
+                    roster.publishedVersion = roster.version;
+                    roster.joined.clear();
+                    roster.left.clear();
+                }
+                return activeRoomParticipants.containsKey(id) ? roster : null;
+            });
+        }
+        return deltas;
+    }
+
     public int getActiveParticipantsCount(UUID roomId) {
         return getActiveParticipantIds(roomId).size();
     }
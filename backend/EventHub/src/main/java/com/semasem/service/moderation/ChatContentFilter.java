@@ -0,0 +1,160 @@
+package com.semasem.service.moderation;
+
+import com.semasem.dto.exception.CustomException;
+import com.semasem.dto.exception.ErrorCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Правила модерации чата. Без файла правил запрещены только ссылки http:// и https://.
+ * Файл перечитывается при изменении, новый автомат подменяет старый целиком; при ошибке разбора
+ * остаются прежние правила.
+ * <pre>
+ * # комментарий
+ * term запрещенное слово
+ * link www.
+ * allow 6f1c...-room-uuid https://docs.example.com
+ * </pre>
+ */
+@Slf4j
+@Component
+public class ChatContentFilter {
+
+    private static final List<ContentMatcher.Rule> DEFAULT_RULES = List.of(
+            new ContentMatcher.Rule(ContentMatcher.Kind.LINK, "http://", null),
+            new ContentMatcher.Rule(ContentMatcher.Kind.LINK, "https://", null));
+
+    private final Path rulesFile;
+    private final ScheduledExecutorService reloader;
+
+    private volatile ContentMatcher matcher;
+    // Число правил для метрики
+    private final AtomicInteger ruleCount = new AtomicInteger();
+    private FileTime loadedVersion;
+
+    private final Counter rejectedLinks;
+    private final Counter rejectedTerms;
+
+    public ChatContentFilter(MeterRegistry meterRegistry,
+                             @Value("${chat.filter.rules-file:}") String rulesFile,
+                             @Value("${chat.filter.reload-interval-ms:10000}") long reloadIntervalMillis) {
+        this.rulesFile = rulesFile.isBlank() ? null : Path.of(rulesFile);
+        this.matcher = ContentMatcher.compile(DEFAULT_RULES);
+        ruleCount.set(matcher.size());
+
+        this.rejectedLinks = Counter.builder("chat.filter.rejected")
+                .tag("rule", "link")
+                .description("Chat messages rejected by moderation rules")
+                .register(meterRegistry);
+        this.rejectedTerms = Counter.builder("chat.filter.rejected")
+                .tag("rule", "term")
+                .description("Chat messages rejected by moderation rules")
+                .register(meterRegistry);
+        Gauge.builder("chat.filter.rules", ruleCount, AtomicInteger::get)
+                .description("Moderation rules currently loaded")
+                .register(meterRegistry);
+
+        if (this.rulesFile == null) {
+            this.reloader = null;
+            return;
+        }
+        reload();
+        this.reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-filter-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloader.scheduleWithFixedDelay(this::reload, reloadIntervalMillis, reloadIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public void check(UUID roomId, String content) {
+        ContentMatcher.Violation violation = matcher.findViolation(roomId, content);
+        if (violation == null) {
+            return;
+        }
+        if (violation.kind() == ContentMatcher.Kind.LINK) {
+            rejectedLinks.increment();
+            throw new CustomException(ErrorCode.INVALID_INPUT, "Links are not allowed in messages");
+        }
+        rejectedTerms.increment();
+        throw new CustomException(ErrorCode.INVALID_INPUT, "Message contains prohibited words");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+
+    private void reload() {
+        try {
+            if (!Files.exists(rulesFile)) {
+                if (loadedVersion == null) {
+                    log.warn("Chat rules file {} not found, using default rules", rulesFile);
+                    loadedVersion = FileTime.fromMillis(0);
+                }
+                return;
+            }
+            FileTime version = Files.getLastModifiedTime(rulesFile);
+            if (version.equals(loadedVersion)) {
+                return;
+            }
+            List<ContentMatcher.Rule> rules = parse(Files.readAllLines(rulesFile, StandardCharsets.UTF_8));
+            long started = System.nanoTime();
+            matcher = ContentMatcher.compile(rules);
+            ruleCount.set(matcher.size());
+            loadedVersion = version;
+            log.info("Loaded {} chat moderation rules from {} in {} ms", matcher.size(), rulesFile,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to reload chat rules from {}, keeping previous rules", rulesFile, e);
+        }
+    }
+
+    private static List<ContentMatcher.Rule> parse(List<String> lines) {
+        List<ContentMatcher.Rule> rules = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+", 2);
+            if (parts.length < 2) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": pattern is missing");
+            }
+            switch (parts[0]) {
+                case "term" -> rules.add(new ContentMatcher.Rule(ContentMatcher.Kind.TERM, parts[1], null));
+                case "link" -> rules.add(new ContentMatcher.Rule(ContentMatcher.Kind.LINK, parts[1], null));
+                case "allow" -> {
+                    String[] allow = parts[1].split("\\s+", 2);
+                    if (allow.length < 2) {
+                        throw new IllegalArgumentException("Line " + (i + 1) + ": allow needs room id and pattern");
+                    }
+                    rules.add(new ContentMatcher.Rule(ContentMatcher.Kind.ALLOW, allow[1], UUID.fromString(allow[0])));
+                }
+                default -> throw new IllegalArgumentException("Line " + (i + 1) + ": unknown rule " + parts[0]);
+            }
+        }
+        return rules;
+    }
+}
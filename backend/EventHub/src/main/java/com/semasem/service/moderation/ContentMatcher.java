@@ -0,0 +1,301 @@
+package com.semasem.service.moderation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Автомат Ахо-Корасик по всем правилам модерации. Сообщение проходится один раз, регистр
+ * сворачивается таблицей классов символов, без копии строки. Неизменяемый, общий для всех потоков.
+ */
+public final class ContentMatcher {
+
+    public enum Kind {
+        // Слово целиком: границы - не буква и не цифра
+        TERM,
+        // Подстрока в любом месте
+        LINK,
+        // Разрешение для комнаты: перекрывает совпадения TERM/LINK внутри себя
+        ALLOW
+    }
+
+    /**
+     * roomId задается только для ALLOW.
+     */
+    public record Rule(Kind kind, String pattern, UUID roomId) {
+    }
+
+    public record Violation(Kind kind, String pattern, int start) {
+    }
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    private final Rule[] rules;
+    private final int[] ruleLengths;
+    private final int[] nextRule;
+    private final Set<UUID> roomsWithAllow;
+
+    // Символ -> класс после приведения к нижнему регистру; 0 - символа нет ни в одном шаблоне
+    private final char[] charClass;
+    private final int[] rootNext;
+
+    // Переходы не из корня: открытая адресация по (state << 16 | class)
+    private final long[] edgeKeys;
+    private final int[] edgeTargets;
+    private final int edgeMask;
+
+    private final int[] fail;
+    private final int[] firstRule;
+    // Ближайшее по суффиксным ссылкам состояние, в котором заканчивается шаблон
+    private final int[] outputLink;
+
+    private ContentMatcher(Rule[] rules, int[] ruleLengths, int[] nextRule, Set<UUID> roomsWithAllow,
+                           char[] charClass, int[] rootNext, long[] edgeKeys, int[] edgeTargets,
+                           int[] fail, int[] firstRule, int[] outputLink) {
+        this.rules = rules;
+        this.ruleLengths = ruleLengths;
+        this.nextRule = nextRule;
+        this.roomsWithAllow = roomsWithAllow;
+        this.charClass = charClass;
+        this.rootNext = rootNext;
+        this.edgeKeys = edgeKeys;
+        this.edgeTargets = edgeTargets;
+        this.edgeMask = edgeKeys.length - 1;
+        this.fail = fail;
+        this.firstRule = firstRule;
+        this.outputLink = outputLink;
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    /**
+     * Первое нарушение, не перекрытое разрешениями комнаты, или null.
+     */
+    public Violation findViolation(UUID roomId, CharSequence content) {
+        boolean allowsInRoom = roomId != null && roomsWithAllow.contains(roomId);
+        List<Violation> candidates = null;
+        List<int[]> allowed = null;
+
+        int length = content.length();
+        int state = ROOT;
+        for (int i = 0; i < length; i++) {
+            int cls = charClass[content.charAt(i)];
+            if (cls == 0) {
+                state = ROOT;
+                continue;
+            }
+            state = step(state, cls);
+
+            int output = firstRule[state] != NONE ? state : outputLink[state];
+            for (; output > ROOT; output = outputLink[output]) {
+                for (int r = firstRule[output]; r != NONE; r = nextRule[r]) {
+                    Rule rule = rules[r];
+                    int start = i - ruleLengths[r] + 1;
+                    if (rule.kind() == Kind.ALLOW) {
+                        if (allowsInRoom && roomId.equals(rule.roomId())) {
+                            if (allowed == null) {
+                                allowed = new ArrayList<>();
+                            }
+                            allowed.add(new int[]{start, i});
+                        }
+                        continue;
+                    }
+                    if (rule.kind() == Kind.TERM && !isWord(content, start, i)) {
+                        continue;
+                    }
+                    Violation violation = new Violation(rule.kind(), rule.pattern(), start);
+                    if (!allowsInRoom) {
+                        return violation;
+                    }
+                    if (candidates == null) {
+                        candidates = new ArrayList<>();
+                    }
+                    candidates.add(violation);
+                }
+            }
+        }
+
+        if (candidates == null) {
+            return null;
+        }
+        for (Violation violation : candidates) {
+            if (!isAllowed(violation, allowed)) {
+                return violation;
+            }
+        }
+        return null;
+    }
+
+    public static ContentMatcher compile(List<Rule> source) {
+        List<Rule> rules = new ArrayList<>();
+        for (Rule rule : source) {
+            if (rule.pattern() != null && !rule.pattern().isBlank()) {
+                rules.add(rule);
+            }
+        }
+
+        // Классы символов шаблонов (в нижнем регистре)
+        Map<Character, Integer> classes = new HashMap<>();
+        for (Rule rule : rules) {
+            String pattern = rule.pattern();
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = Character.toLowerCase(pattern.charAt(i));
+                if (!classes.containsKey(c)) {
+                    if (classes.size() == Character.MAX_VALUE) {
+                        throw new IllegalArgumentException("Too many distinct characters in rules");
+                    }
+                    classes.put(c, classes.size() + 1);
+                }
+            }
+        }
+        char[] charClass = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            Integer cls = classes.get(Character.toLowerCase((char) c));
+            if (cls != null) {
+                charClass[c] = (char) cls.intValue();
+            }
+        }
+
+        // Бор
+        List<Map<Integer, Integer>> trie = new ArrayList<>();
+        trie.add(new HashMap<>());
+        int[] ruleLengths = new int[rules.size()];
+        int[] ruleEnd = new int[rules.size()];
+        Set<UUID> roomsWithAllow = new HashSet<>();
+        for (int r = 0; r < rules.size(); r++) {
+            Rule rule = rules.get(r);
+            String pattern = rule.pattern();
+            int state = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                int cls = charClass[pattern.charAt(i)];
+                Integer next = trie.get(state).get(cls);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new HashMap<>());
+                    trie.get(state).put(cls, next);
+                }
+                state = next;
+            }
+            ruleLengths[r] = pattern.length();
+            ruleEnd[r] = state;
+            if (rule.kind() == Kind.ALLOW && rule.roomId() != null) {
+                roomsWithAllow.add(rule.roomId());
+            }
+        }
+
+        int states = trie.size();
+        int[] firstRule = new int[states];
+        Arrays.fill(firstRule, NONE);
+        int[] nextRule = new int[rules.size()];
+        for (int r = rules.size() - 1; r >= 0; r--) {
+            nextRule[r] = firstRule[ruleEnd[r]];
+            firstRule[ruleEnd[r]] = r;
+        }
+
+        int[] rootNext = new int[classes.size() + 1];
+        trie.get(ROOT).forEach((cls, next) -> rootNext[cls] = next);
+
+        int edges = states - 1;
+        int capacity = Integer.highestOneBit(Math.max(4, edges * 2 - 1)) << 1;
+        long[] edgeKeys = new long[capacity];
+        Arrays.fill(edgeKeys, -1L);
+        int[] edgeTargets = new int[capacity];
+        for (int state = 1; state < states; state++) {
+            for (Map.Entry<Integer, Integer> edge : trie.get(state).entrySet()) {
+                long key = edgeKey(state, edge.getKey());
+                int slot = slot(key, capacity - 1);
+                while (edgeKeys[slot] != -1L) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                edgeKeys[slot] = key;
+                edgeTargets[slot] = edge.getValue();
+            }
+        }
+
+        // Суффиксные ссылки обходом в ширину
+        int[] fail = new int[states];
+        int[] outputLink = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int next : trie.get(ROOT).values()) {
+            fail[next] = ROOT;
+            outputLink[next] = ROOT;
+            queue.add(next);
+        }
+        // Массивы ссылок заполняются после создания: step() нужны ссылки уже пройденных уровней
+        ContentMatcher matcher = new ContentMatcher(rules.toArray(new Rule[0]), ruleLengths, nextRule,
+                Set.copyOf(roomsWithAllow), charClass, rootNext, edgeKeys, edgeTargets, fail, firstRule, outputLink);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Integer, Integer> edge : trie.get(state).entrySet()) {
+                int child = edge.getValue();
+                int target = matcher.step(fail[state], edge.getKey());
+                fail[child] = target;
+                outputLink[child] = firstRule[target] != NONE ? target : outputLink[target];
+                queue.add(child);
+            }
+        }
+        return matcher;
+    }
+
+    private int step(int state, int cls) {
+        while (state != ROOT) {
+            int next = edge(state, cls);
+            if (next != NONE) {
+                return next;
+            }
+            state = fail[state];
+        }
+        return rootNext[cls];
+    }
+
+    private int edge(int state, int cls) {
+        long key = edgeKey(state, cls);
+        int slot = slot(key, edgeMask);
+        while (true) {
+            long candidate = edgeKeys[slot];
+            if (candidate == key) {
+                return edgeTargets[slot];
+            }
+            if (candidate == -1L) {
+                return NONE;
+            }
+            slot = (slot + 1) & edgeMask;
+        }
+    }
+
+    private static long edgeKey(int state, int cls) {
+        return ((long) state << 16) | cls;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+
+    private static boolean isWord(CharSequence content, int start, int end) {
+        return (start == 0 || !Character.isLetterOrDigit(content.charAt(start - 1)))
+                && (end + 1 == content.length() || !Character.isLetterOrDigit(content.charAt(end + 1)));
+    }
+
+    private static boolean isAllowed(Violation violation, List<int[]> allowed) {
+        if (allowed == null) {
+            return false;
+        }
+        int end = violation.start() + violation.pattern().length() - 1;
+        for (int[] span : allowed) {
+            if (span[0] <= violation.start() && span[1] >= end) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
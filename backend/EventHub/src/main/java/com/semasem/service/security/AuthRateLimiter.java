@@ -0,0 +1,200 @@
+package com.semasem.service.security;
+
+import com.semasem.dto.exception.CustomException;
+import com.semasem.dto.exception.ErrorCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничение частоты неаутентифицированных запросов, которые стоят BCrypt или вставок в БД.
+ * По адресу клиента проверяет фильтр до разбора запроса, по аккаунту - сервис, когда email известен.
+ * Для входа лимит аккаунта считает только неудачные попытки: успешные входы владельца его не расходуют.
+ * Лимиты маршрута - security.rate-limit.routes.&lt;name&gt;.{ip-limit,account-limit,window-ms}, 0 - без лимита.
+ */
+@Component
+public class AuthRateLimiter {
+
+    public enum Route {
+        LOGIN("/api/auth/login", "login", 30, 10, 300_000),
+        REGISTER("/api/auth/register", "register", 10, 3, 600_000),
+        RECOVERY_PASSWORD("/api/auth/recovery-password", "recovery-password", 5, 3, 600_000),
+        GUEST_JOIN("/api/guest/join", "guest-join", 20, 0, 60_000),
+        ROOM_GUEST_JOIN("/api/rooms/guest-join", "room-guest-join", 20, 0, 60_000);
+
+        private final String path;
+        private final String property;
+        private final int defaultIpLimit;
+        private final int defaultAccountLimit;
+        private final long defaultWindowMillis;
+
+        Route(String path, String property, int defaultIpLimit, int defaultAccountLimit, long defaultWindowMillis) {
+            this.path = path;
+            this.property = property;
+            this.defaultIpLimit = defaultIpLimit;
+            this.defaultAccountLimit = defaultAccountLimit;
+            this.defaultWindowMillis = defaultWindowMillis;
+        }
+    }
+
+    /**
+     * Счетчики и метрики маршрута; null-счетчик - лимит по этому ключу выключен.
+     */
+    private record RouteLimits(SlidingWindowCounter byIp, SlidingWindowCounter byAccount,
+                               Counter ipRejected, Counter accountRejected) {
+    }
+
+    private final Map<Route, RouteLimits> limits = new EnumMap<>(Route.class);
+    private final ScheduledExecutorService sweeper;
+
+    public AuthRateLimiter(Environment environment,
+                           MeterRegistry meterRegistry,
+                           @Value("${security.rate-limit.max-keys:100000}") int maxKeys,
+                           @Value("${security.rate-limit.stripes:64}") int stripes) {
+        long minWindow = Long.MAX_VALUE;
+        for (Route route : Route.values()) {
+            String prefix = "security.rate-limit.routes." + route.property + ".";
+            int ipLimit = environment.getProperty(prefix + "ip-limit", Integer.class, route.defaultIpLimit);
+            int accountLimit = environment.getProperty(prefix + "account-limit", Integer.class,
+                    route.defaultAccountLimit);
+            long windowMillis = environment.getProperty(prefix + "window-ms", Long.class, route.defaultWindowMillis);
+            minWindow = Math.min(minWindow, windowMillis);
+
+            limits.put(route, new RouteLimits(
+                    ipLimit > 0 ? new SlidingWindowCounter(ipLimit, windowMillis, maxKeys, stripes) : null,
+                    accountLimit > 0 ? new SlidingWindowCounter(accountLimit, windowMillis, maxKeys, stripes) : null,
+                    rejectedCounter(meterRegistry, route, "ip"),
+                    rejectedCounter(meterRegistry, route, "account")));
+        }
+
+        Gauge.builder("auth.rate_limit.keys", limits, AuthRateLimiter::size)
+                .description("Rate limit keys held in memory")
+                .register(meterRegistry);
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "auth-rate-limit-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000L, minWindow);
+        sweeper.scheduleWithFixedDelay(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ограничиваемый маршрут запроса или null. Путь берется декодированный и нормализованный
+     * контейнером, как его видит маршрутизация MVC: /api/auth/%6cogin - тот же вход.
+     */
+    public Route match(HttpServletRequest request) {
+        if (!"POST".equalsIgnoreCase(request.getMethod())) {
+            return null;
+        }
+        String pathInfo = request.getPathInfo();
+        String path = pathInfo != null ? request.getServletPath() + pathInfo : request.getServletPath();
+        for (Route route : Route.values()) {
+            if (route.path.equals(path)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 0 - запрос с адреса разрешен, иначе через сколько миллисекунд повторить.
+     */
+    public long tryAcquireIp(Route route, String ip) {
+        RouteLimits routeLimits = limits.get(route);
+        if (routeLimits.byIp() == null) {
+            return 0;
+        }
+        long retryAfter = routeLimits.byIp().tryAcquire(ip, System.currentTimeMillis());
+        if (retryAfter > 0) {
+            routeLimits.ipRejected().increment();
+        }
+        return retryAfter;
+    }
+
+    /**
+     * Засчитывает попытку для аккаунта; сверх лимита - RATE_LIMITED.
+     */
+    public void checkAccount(Route route, String account) {
+        RouteLimits routeLimits = limits.get(route);
+        if (routeLimits.byAccount() == null || account == null || account.isBlank()) {
+            return;
+        }
+        if (routeLimits.byAccount().tryAcquire(accountKey(account), System.currentTimeMillis()) > 0) {
+            routeLimits.accountRejected().increment();
+            throw new CustomException(ErrorCode.RATE_LIMITED);
+        }
+    }
+
+    /**
+     * RATE_LIMITED, если неудачных попыток для аккаунта уже столько, сколько разрешено; сама проверка не считается.
+     */
+    public void checkFailures(Route route, String account) {
+        RouteLimits routeLimits = limits.get(route);
+        if (routeLimits.byAccount() == null || account == null || account.isBlank()) {
+            return;
+        }
+        if (routeLimits.byAccount().retryAfter(accountKey(account), System.currentTimeMillis()) > 0) {
+            routeLimits.accountRejected().increment();
+            throw new CustomException(ErrorCode.RATE_LIMITED);
+        }
+    }
+
+    public void recordFailure(Route route, String account) {
+        RouteLimits routeLimits = limits.get(route);
+        if (routeLimits.byAccount() != null && account != null && !account.isBlank()) {
+            routeLimits.byAccount().record(accountKey(account), System.currentTimeMillis());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (RouteLimits routeLimits : limits.values()) {
+            if (routeLimits.byIp() != null) {
+                routeLimits.byIp().evictExpired(now);
+            }
+            if (routeLimits.byAccount() != null) {
+                routeLimits.byAccount().evictExpired(now);
+            }
+        }
+    }
+
+    private static int size(Map<Route, RouteLimits> limits) {
+        int size = 0;
+        for (RouteLimits routeLimits : limits.values()) {
+            size += routeLimits.byIp() != null ? routeLimits.byIp().size() : 0;
+            size += routeLimits.byAccount() != null ? routeLimits.byAccount().size() : 0;
+        }
+        return size;
+    }
+
+    private static String accountKey(String account) {
+        return account.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, Route route, String key) {
+        return Counter.builder("auth.rate_limit.rejected")
+                .tag("route", route.property)
+                .tag("key", key)
+                .description("Unauthenticated auth and join requests rejected by rate limiting")
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,20 @@
+package com.semasem.service.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Адрес клиента для лимитов и журналов. Заголовки X-Forwarded-For здесь не читаются: первый адрес в них
+ * задает сам клиент. Адрес за доверенными прокси восстанавливает контейнер
+ * (server.forward-headers-strategy=native, server.tomcat.remoteip.internal-proxies) - справа налево
+ * до первого недоверенного узла, и он уже лежит в getRemoteAddr().
+ */
+public final class ClientIp {
+
+    private ClientIp() {
+    }
+
+    public static String resolve(HttpServletRequest request) {
+        String ipAddress = request.getRemoteAddr();
+        return ipAddress != null ? ipAddress : "unknown";
+    }
+}
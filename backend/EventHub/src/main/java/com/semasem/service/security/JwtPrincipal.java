@@ -0,0 +1,33 @@
+package com.semasem.service.security;
+
+import com.semasem.repository.entity.User;
+import com.semasem.repository.entity.UserRole;
+
+import java.security.Principal;
+import java.util.UUID;
+
+/**
+ * Пользователь из проверенного access-токена. getName() - email, как у прежнего UserDetails.
+ */
+public record JwtPrincipal(UUID userId, String email, String name, String role, int tokenVersion,
+                           String avatarLink)
+        implements Principal {
+
+    public static JwtPrincipal of(User user) {
+        return new JwtPrincipal(user.getUuid(), user.getEmail(), user.getName(), user.getRole().name(),
+                user.getTokenVersion(), user.getAvatarLink());
+    }
+
+    public JwtPrincipal withTokenVersion(int version) {
+        return version == tokenVersion ? this : new JwtPrincipal(userId, email, name, role, version, avatarLink);
+    }
+
+    public boolean isGuest() {
+        return UserRole.ROLE_GUEST.name().equals(role);
+    }
+
+    @Override
+    public String getName() {
+        return email;
+    }
+}
@@ -6,15 +6,22 @@ import com.semasem.dto.exception.ErrorCode;
 import com.semasem.repository.entity.User;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.time.Instant;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import static com.semasem.dto.entity.TokenType.ACCESS_TOKEN;
@@ -40,23 +47,76 @@ public class JwtService {
     @Value("${jwt.direct-join-expiration-time:300000}")
     private Long directJoinExpirationTime;
 
+    @Value("${jwt.claims-cache.ttl-ms:60000}")
+    private long claimsCacheTtlMillis;
+
+    @Value("${jwt.claims-cache.max-size:10000}")
+    private int claimsCacheMaxSize;
+
+    private final MeterRegistry meterRegistry;
+
+    // Ключ и парсер строятся один раз: оба неизменяемы и потокобезопасны
+    private SecretKey signingKey;
+    private JwtVerifier verifier;
+    private ScheduledExecutorService cacheSweeper;
+
+    public JwtService(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(secretKey.getBytes());
+        verifier = new JwtVerifier(signingKey, claimsCacheTtlMillis, claimsCacheMaxSize, meterRegistry);
+
+        cacheSweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jwt-claims-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000L, claimsCacheTtlMillis);
+        cacheSweeper.scheduleWithFixedDelay(verifier::evictExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        cacheSweeper.shutdownNow();
+    }
+
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secretKey.getBytes());
+        return signingKey;
     }
 
     public String generateToken(User user, TokenType type) {
+        return generateToken(JwtPrincipal.of(user), type, null);
+    }
+
+    /**
+     * Токен по claims уже проверенного токена - при ротации refresh пользователь не загружается.
+     * familyId - семья ротации refresh-токена; у каждого refresh-токена свой jti, поэтому два токена
+     * одной семьи, выданные в одну секунду, различаются.
+     */
+    public String generateToken(JwtPrincipal subject, TokenType type, UUID familyId) {
         Map<String, Object> claims = new HashMap<>();
-        claims.put("email", user.getEmail());
-        claims.put("role", user.getRole().name());
-        claims.put("name", user.getName());
-        claims.put("userId", user.getUuid().toString());
+        claims.put("email", subject.email());
+        claims.put("role", subject.role());
+        claims.put("name", subject.name());
+        if (subject.avatarLink() != null) {
+            claims.put("avatar", subject.avatarLink());
+        }
+        claims.put("userId", subject.userId().toString());
+        claims.put("ver", subject.tokenVersion());
 
         switch (type) {
             case REFRESH_TOKEN -> {
                 claims.put("type", REFRESH_TOKEN);
+                if (familyId != null) {
+                    claims.put("fam", familyId.toString());
+                }
                 return Jwts.builder()
                         .claims(claims)
-                        .subject(user.getEmail())
+                        .id(UUID.randomUUID().toString())
+                        .subject(subject.email())
                         .issuedAt(new Date(System.currentTimeMillis()))
                         .expiration(new Date(System.currentTimeMillis() + refreshExpirationTime))
                         .signWith(getSigningKey())
@@ -66,7 +126,7 @@ public class JwtService {
                 claims.put("type", ACCESS_TOKEN);
                 return Jwts.builder()
                         .claims(claims)
-                        .subject(user.getEmail())
+                        .subject(subject.email())
                         .issuedAt(new Date(System.currentTimeMillis()))
                         .expiration(new Date(System.currentTimeMillis() + accessExpirationTime))
                         .signWith(getSigningKey())
@@ -76,6 +136,10 @@ public class JwtService {
         }
     }
 
+    public long getRefreshExpirationTime() {
+        return refreshExpirationTime;
+    }
+
     public String extractUserId(String token) {
         try {
             Claims claims = extractAllClaims(token);
@@ -220,13 +284,80 @@ public class JwtService {
         return extractClaim(token, claims -> claims.get("type", String.class));
     }
 
+    /**
+     * Пользователь из access-токена одной проверкой подписи; null - токен невалиден или другого типа.
+     * Токены без ver (выданные до появления отзыва) считаются версией 0.
+     */
+    public JwtPrincipal parseAccessToken(String token) {
+        Claims claims = parseClaims(token, ACCESS_TOKEN);
+        if (claims == null) {
+            return null;
+        }
+        try {
+            return toPrincipal(claims);
+        } catch (IllegalArgumentException e) {
+            log.warn("Token validation failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Проверенный refresh-токен семьи ротации; null - невалиден или выдан до появления семей.
+     */
+    public RefreshClaims parseRefreshToken(String token) {
+        Claims claims = parseClaims(token, REFRESH_TOKEN);
+        if (claims == null) {
+            return null;
+        }
+        String family = claims.get("fam", String.class);
+        if (family == null) {
+            log.warn("Refresh token without rotation family");
+            return null;
+        }
+        try {
+            return new RefreshClaims(toPrincipal(claims), UUID.fromString(family),
+                    claims.getExpiration().toInstant());
+        } catch (IllegalArgumentException e) {
+            log.warn("Token validation failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public record RefreshClaims(JwtPrincipal subject, UUID familyId, Instant expiresAt) {
+    }
+
+    private Claims parseClaims(String token, TokenType expectedType) {
+        try {
+            Claims claims = extractAllClaims(token);
+            String tokenType = claims.get("type", String.class);
+            if (!expectedType.name().equals(tokenType)) {
+                log.warn("Invalid token type. Expected: {}, Actual: {}", expectedType, tokenType);
+                return null;
+            }
+            return claims;
+        } catch (ExpiredJwtException e) {
+            log.warn("Token expired: {}", e.getMessage());
+            return null;
+        } catch (Exception e) {
+            log.warn("Token validation failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static JwtPrincipal toPrincipal(Claims claims) {
+        Integer version = claims.get("ver", Integer.class);
+        return new JwtPrincipal(
+                UUID.fromString(claims.get("userId", String.class)),
+                claims.getSubject(),
+                claims.get("name", String.class),
+                claims.get("role", String.class),
+                version != null ? version : 0,
+                claims.get("avatar", String.class));
+    }
+
     public boolean isTokenValid(String token, TokenType type) {
         try {
-            Claims claims = Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
+            Claims claims = extractAllClaims(token);
 
             if (type != null) {
                 String tokenType = claims.get("type", String.class);
@@ -270,10 +401,6 @@ public class JwtService {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return verifier.verify(token);
     }
 }
\ No newline at end of file
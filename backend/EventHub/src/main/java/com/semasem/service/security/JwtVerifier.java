@@ -0,0 +1,94 @@
+package com.semasem.service.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import javax.crypto.SecretKey;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Проверка подписи JWT с кэшем проверенных claims. Ключ кэша - сегмент подписи: это уже HMAC-SHA256
+ * токена, отдельный дайджест не считается. Запись живет не дольше exp токена и ttl; при заполнении
+ * новые токены просто не кэшируются до очистки.
+ */
+public class JwtVerifier {
+
+    private final JwtParser parser;
+    private final long ttlMillis;
+    private final int maxSize;
+
+    private final Map<String, CachedClaims> cache = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    /**
+     * tokenHash сверяется при попадании: та же подпись с другим телом - промах.
+     */
+    private record CachedClaims(Claims claims, int tokenHash, long expiresAtMillis) {
+    }
+
+    public JwtVerifier(SecretKey key, long ttlMillis, int maxSize, MeterRegistry meterRegistry) {
+        this.parser = Jwts.parser().verifyWith(key).build();
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+
+        this.hits = Counter.builder("jwt.claims.cache")
+                .tag("result", "hit")
+                .description("Verified JWT claims served from cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder("jwt.claims.cache")
+                .tag("result", "miss")
+                .description("Verified JWT claims served from cache")
+                .register(meterRegistry);
+        Gauge.builder("jwt.claims.cache.size", cache, Map::size)
+                .description("Verified JWT claims held in cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Claims проверенного токена; исключения jjwt - как у {@link JwtParser#parseSignedClaims}.
+     */
+    public Claims verify(String token) {
+        long now = System.currentTimeMillis();
+        String signature = signatureOf(token);
+        if (signature != null && ttlMillis > 0) {
+            CachedClaims cached = cache.get(signature);
+            if (cached != null && cached.tokenHash() == token.hashCode() && cached.expiresAtMillis() > now) {
+                hits.increment();
+                return cached.claims();
+            }
+        }
+
+        misses.increment();
+        Claims claims = parser.parseSignedClaims(token).getPayload();
+        if (signature != null && ttlMillis > 0 && cache.size() < maxSize) {
+            Date expiration = claims.getExpiration();
+            long expiresAt = now + ttlMillis;
+            if (expiration != null) {
+                expiresAt = Math.min(expiresAt, expiration.getTime());
+            }
+            cache.put(signature, new CachedClaims(claims, token.hashCode(), expiresAt));
+        }
+        return claims;
+    }
+
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        cache.values().removeIf(cached -> cached.expiresAtMillis() <= now);
+    }
+
+    private static String signatureOf(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.lastIndexOf('.');
+        return dot > 0 && dot < token.length() - 1 ? token.substring(dot + 1) : null;
+    }
+}
@@ -1,18 +1,130 @@
 package com.semasem.service.security;
 
+import com.semasem.dto.exception.CustomException;
+import com.semasem.dto.exception.ErrorCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BCrypt на отдельном ограниченном пуле: всплеск логинов занимает hash-threads ядер, а не все потоки
+ * запросов. Очередь ограничена, при переполнении - сразу AUTH_BUSY (429).
+ */
+@Slf4j
 @Service
 public class PasswordEncoder {
-    private static final BCryptPasswordEncoder encoder = new BCryptPasswordEncoder();
+
+    private final BCryptPasswordEncoder encoder;
+    private final ThreadPoolExecutor executor;
+    private final long hashTimeoutMillis;
+
+    private final Timer encodeLatency;
+    private final Timer verifyLatency;
+    private final Timer queueWait;
+    private final Counter rejected;
+
+    public PasswordEncoder(MeterRegistry meterRegistry,
+                           @Value("${security.password.bcrypt-strength:10}") int strength,
+                           @Value("${security.password.hash-threads:0}") int hashThreads,
+                           @Value("${security.password.queue-capacity:64}") int queueCapacity,
+                           @Value("${security.password.hash-timeout-ms:10000}") long hashTimeoutMillis) {
+        this.encoder = new BCryptPasswordEncoder(strength);
+        this.hashTimeoutMillis = hashTimeoutMillis;
+
+        // 0 - половина ядер: остальное остается сигналингу и запросам
+        int threads = hashThreads > 0 ? hashThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "password-hash-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+
+        this.encodeLatency = Timer.builder("auth.password.hash")
+                .tag("operation", "encode")
+                .description("Time spent computing BCrypt hashes")
+                .register(meterRegistry);
+        this.verifyLatency = Timer.builder("auth.password.hash")
+                .tag("operation", "verify")
+                .description("Time spent computing BCrypt hashes")
+                .register(meterRegistry);
+        this.queueWait = Timer.builder("auth.password.queue.wait")
+                .description("Time password hashing tasks waited for a hashing thread")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("auth.password.rejected")
+                .description("Password hashing requests rejected because the hashing queue was full")
+                .register(meterRegistry);
+    }
 
     public String encryptPassword(String password) {
-        return encoder.encode(password);
+        return submit(() -> encoder.encode(password), encodeLatency);
     }
 
     public boolean checkPassword(String password, String encryptedPassword) {
-        return encoder.matches(password, encryptedPassword);
+        return submit(() -> encoder.matches(password, encryptedPassword), verifyLatency);
     }
 
+    /**
+     * Хэш посчитан с меньшей стоимостью, чем настроена сейчас: при входе пароль перехэшируется.
+     */
+    public boolean needsRehash(String encryptedPassword) {
+        return encoder.upgradeEncoding(encryptedPassword);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T submit(Callable<T> task, Timer latency) {
+        long queuedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long started = System.nanoTime();
+                queueWait.record(started - queuedAt, TimeUnit.NANOSECONDS);
+                try {
+                    return task.call();
+                } finally {
+                    latency.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new CustomException(ErrorCode.AUTH_BUSY);
+        }
+
+        try {
+            return future.get(hashTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            throw new CustomException(ErrorCode.AUTH_BUSY);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new CustomException(ErrorCode.INTERNAL_ERROR);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new CustomException(ErrorCode.INTERNAL_ERROR, "Password hashing failed", e.getCause());
+        }
+    }
 }
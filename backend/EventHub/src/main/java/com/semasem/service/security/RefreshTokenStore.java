@@ -0,0 +1,179 @@
+package com.semasem.service.security;
+
+import com.semasem.dto.entity.TokenType;
+import com.semasem.dto.exception.CustomException;
+import com.semasem.dto.exception.ErrorCode;
+import com.semasem.repository.RefreshTokenRepository;
+import com.semasem.repository.entity.RefreshToken;
+import com.semasem.repository.entity.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refresh-токены в отдельной таблице по SHA-256 токена. Каждый вход открывает семью ротаций;
+ * ротация - условный UPDATE одной строки и вставка следующей, users не читается и не пишется.
+ * Повтор уже использованного токена означает утечку: семья удаляется целиком.
+ */
+@Slf4j
+@Service
+public class RefreshTokenStore {
+
+    // Порциями: одна большая очистка держала бы блокировки на всей таблице
+    private static final String PURGE_SQL = "DELETE FROM refresh_tokens WHERE uuid IN " +
+            "(SELECT uuid FROM refresh_tokens WHERE expires_at < ? LIMIT ?)";
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final JwtService jwtService;
+    private final TokenRevocations tokenRevocations;
+    private final JdbcTemplate jdbcTemplate;
+    private final int purgeBatchSize;
+    private final ScheduledExecutorService scheduler;
+
+    private final Counter rotated;
+    private final Counter reused;
+    private final Counter purged;
+
+    /**
+     * subject - claims предъявленного токена с актуальной версией, из них выпускается access-токен.
+     */
+    public record Rotation(JwtPrincipal subject, String refreshToken) {
+    }
+
+    public RefreshTokenStore(RefreshTokenRepository refreshTokenRepository,
+                             JwtService jwtService,
+                             TokenRevocations tokenRevocations,
+                             JdbcTemplate jdbcTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${security.refresh.purge-interval-ms:600000}") long purgeIntervalMillis,
+                             @Value("${security.refresh.purge-batch-size:1000}") int purgeBatchSize) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.jwtService = jwtService;
+        this.tokenRevocations = tokenRevocations;
+        this.jdbcTemplate = jdbcTemplate;
+        this.purgeBatchSize = purgeBatchSize;
+
+        this.rotated = Counter.builder("auth.refresh.rotated")
+                .description("Refresh tokens rotated")
+                .register(meterRegistry);
+        this.reused = Counter.builder("auth.refresh.reused")
+                .description("Used refresh tokens presented again; their rotation family was revoked")
+                .register(meterRegistry);
+        this.purged = Counter.builder("auth.refresh.purged")
+                .description("Expired refresh tokens deleted by the purge job")
+                .register(meterRegistry);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "refresh-token-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::purgeExpired, purgeIntervalMillis, purgeIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Refresh-токен новой семьи - для входа с нового устройства.
+     */
+    @Transactional
+    public String issue(User user) {
+        return store(JwtPrincipal.of(user), UUID.randomUUID());
+    }
+
+    // noRollbackFor: удаление семьи при повторе должно сохраниться, хотя запрос завершится ошибкой
+    @Transactional(noRollbackFor = CustomException.class)
+    public Rotation rotate(String refreshToken) {
+        JwtService.RefreshClaims claims = jwtService.parseRefreshToken(refreshToken);
+        if (claims == null) {
+            throw new CustomException(ErrorCode.INVALID_TOKEN, "Invalid refresh token");
+        }
+
+        byte[] hash = hash(refreshToken);
+        if (refreshTokenRepository.markUsed(hash, Instant.now()) == 0) {
+            boolean reuse = refreshTokenRepository.findByTokenHash(hash)
+                    .map(token -> token.getUsedAt() != null)
+                    .orElse(false);
+            if (reuse) {
+                refreshTokenRepository.deleteByFamilyId(claims.familyId());
+                reused.increment();
+                log.warn("Refresh token reuse detected for user: {}, family revoked", claims.subject().email());
+                throw new CustomException(ErrorCode.TOKEN_COMPROMISED, "Token compromised");
+            }
+            // Семья уже отозвана (выход, повтор) или токен истек
+            throw new CustomException(ErrorCode.INVALID_TOKEN, "Invalid refresh token");
+        }
+
+        // Выход на другом устройстве поднял версию: новые токены семьи выпускаются уже с ней
+        JwtPrincipal subject = claims.subject().withTokenVersion(
+                tokenRevocations.currentVersion(claims.subject().userId(), claims.subject().tokenVersion()));
+        String next = store(subject, claims.familyId());
+        rotated.increment();
+        return new Rotation(subject, next);
+    }
+
+    /**
+     * Выход с устройства: отзывается семья предъявленного токена, остальные устройства не затрагиваются.
+     */
+    @Transactional
+    public JwtPrincipal revokeFamily(String refreshToken) {
+        JwtService.RefreshClaims claims = jwtService.parseRefreshToken(refreshToken);
+        if (claims == null) {
+            return null;
+        }
+        refreshTokenRepository.deleteByFamilyId(claims.familyId());
+        return claims.subject();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private String store(JwtPrincipal subject, UUID familyId) {
+        String token = jwtService.generateToken(subject, TokenType.REFRESH_TOKEN, familyId);
+        refreshTokenRepository.save(RefreshToken.builder()
+                .tokenHash(hash(token))
+                .userId(subject.userId())
+                .familyId(familyId)
+                .expiresAt(Instant.now().plusMillis(jwtService.getRefreshExpirationTime()))
+                .build());
+        return token;
+    }
+
+    private void purgeExpired() {
+        try {
+            Timestamp now = Timestamp.from(Instant.now());
+            int deleted;
+            do {
+                deleted = jdbcTemplate.update(PURGE_SQL, now, purgeBatchSize);
+                purged.increment(deleted);
+            } while (deleted >= purgeBatchSize && !Thread.currentThread().isInterrupted());
+        } catch (DataAccessException e) {
+            log.warn("Expired refresh tokens not purged: {}", e.getMessage());
+        }
+    }
+
+    private static byte[] hash(String token) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
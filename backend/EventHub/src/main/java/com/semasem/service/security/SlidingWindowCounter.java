@@ -0,0 +1,152 @@
+package com.semasem.service.security;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Скользящее окно по ключу: счетчики текущего и предыдущего фиксированного окна, вклад предыдущего
+ * убывает линейно. Ключи разложены по полосам со своей блокировкой; полоса ограничена по размеру и
+ * вытесняет давно не встречавшийся ключ - память не растет от перебора адресов.
+ */
+public final class SlidingWindowCounter {
+
+    private final int limit;
+    private final long windowMillis;
+    private final Stripe[] stripes;
+
+    private static final class Window {
+        private long start;
+        private int previous;
+        private int current;
+    }
+
+    private static final class Stripe extends LinkedHashMap<String, Window> {
+        private final int capacity;
+
+        private Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Window> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    public SlidingWindowCounter(int limit, long windowMillis, int maxKeys, int stripeCount) {
+        this.limit = limit;
+        this.windowMillis = windowMillis;
+        int count = Integer.highestOneBit(Math.max(1, stripeCount - 1) << 1);
+        this.stripes = new Stripe[count];
+        int capacity = Math.max(1, maxKeys / count);
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(capacity);
+        }
+    }
+
+    /**
+     * 0 - попытка разрешена и засчитана, иначе через сколько миллисекунд она пройдет.
+     */
+    public long tryAcquire(String key, long nowMillis) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            Window window = window(stripe, key, nowMillis);
+
+            long elapsed = nowMillis - window.start;
+            double estimate = window.previous * (1.0 - (double) elapsed / windowMillis) + window.current;
+            if (estimate + 1 > limit) {
+                return retryAfter(window, elapsed);
+            }
+            window.current++;
+            return 0;
+        }
+    }
+
+    /**
+     * Как {@link #tryAcquire}, но без учета попытки: 0 - следующая попытка уложится в лимит.
+     */
+    public long retryAfter(String key, long nowMillis) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            Window window = stripe.get(key);
+            if (window == null) {
+                return 0;
+            }
+            roll(window, nowMillis);
+            long elapsed = nowMillis - window.start;
+            double estimate = window.previous * (1.0 - (double) elapsed / windowMillis) + window.current;
+            return estimate + 1 > limit ? retryAfter(window, elapsed) : 0;
+        }
+    }
+
+    /**
+     * Учитывает событие без проверки лимита - например, уже случившуюся неудачную попытку.
+     */
+    public void record(String key, long nowMillis) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            Window window = window(stripe, key, nowMillis);
+            window.current++;
+        }
+    }
+
+    // Оба окна ключа в прошлом - оценка нулевая, запись ничего не ограничивает
+    public void evictExpired(long nowMillis) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.values().removeIf(window -> nowMillis - window.start >= 2 * windowMillis);
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private Window window(Stripe stripe, String key, long nowMillis) {
+        Window window = stripe.get(key);
+        if (window == null) {
+            window = new Window();
+            window.start = nowMillis - nowMillis % windowMillis;
+            stripe.put(key, window);
+        }
+        roll(window, nowMillis);
+        return window;
+    }
+
+    private void roll(Window window, long nowMillis) {
+        long elapsed = nowMillis - window.start;
+        if (elapsed < windowMillis) {
+            return;
+        }
+        window.previous = elapsed < 2 * windowMillis ? window.current : 0;
+        window.current = 0;
+        window.start = nowMillis - nowMillis % windowMillis;
+    }
+
+    private long retryAfter(Window window, long elapsed) {
+        // В текущем окне место освободится, когда вклад предыдущего убудет достаточно
+        if (window.current + 1 <= limit && window.previous > 0) {
+            double decayAt = windowMillis * (1.0 - (double) (limit - window.current - 1) / window.previous);
+            return Math.max(1, (long) Math.ceil(decayAt - elapsed));
+        }
+        // Иначе - в следующем, пока убывает вклад текущего
+        long rest = windowMillis - elapsed;
+        double decayAt = window.current > 0 && limit > 0
+                ? windowMillis * (1.0 - (double) (limit - 1) / window.current)
+                : windowMillis;
+        return Math.max(1, rest + (long) Math.ceil(decayAt));
+    }
+
+    private Stripe stripe(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+}
@@ -0,0 +1,134 @@
+package com.semasem.service.security;
+
+import com.semasem.repository.UserRepository;
+import com.semasem.repository.entity.TokenRevocationView;
+import com.semasem.repository.entity.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отзыв access-токенов счетчиком версии пользователя. В памяти только пользователи, отозвавшие токены
+ * за последний срок жизни access-токена: более старые токены истекли сами. Отзывы других узлов
+ * подтягиваются из users.tokens_revoked_at раз в sync-interval-ms.
+ */
+@Slf4j
+@Component
+public class TokenRevocations {
+
+    private final UserRepository userRepository;
+    private final long retentionMillis;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<UUID, Revocation> revocations = new ConcurrentHashMap<>();
+
+    private final Counter rejected;
+
+    private record Revocation(int version, long revokedAtMillis) {
+    }
+
+    public TokenRevocations(UserRepository userRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${jwt.access-expiration-time:900000}") long accessExpirationMillis,
+                            @Value("${jwt.revocation.sync-interval-ms:5000}") long syncIntervalMillis) {
+        this.userRepository = userRepository;
+        this.retentionMillis = accessExpirationMillis;
+
+        this.rejected = Counter.builder("jwt.revoked.rejected")
+                .description("Access tokens rejected because their version was revoked")
+                .register(meterRegistry);
+        Gauge.builder("jwt.revocations", revocations, Map::size)
+                .description("Users with recently revoked tokens held in memory")
+                .register(meterRegistry);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jwt-revocations");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Первая синхронизация сразу: после рестарта отозванные токены не должны снова стать валидными
+        scheduler.scheduleWithFixedDelay(this::sync, 0, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isRevoked(JwtPrincipal principal) {
+        Revocation revocation = revocations.get(principal.userId());
+        if (revocation != null && principal.tokenVersion() < revocation.version()) {
+            rejected.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Текущая версия токенов пользователя: отозванная в пределах срока жизни access-токена известна
+     * из памяти, более старая уже не влияет на проверку и возвращается версия из токена.
+     */
+    public int currentVersion(UUID userId, int tokenVersion) {
+        Revocation revocation = revocations.get(userId);
+        return revocation != null ? Math.max(tokenVersion, revocation.version()) : tokenVersion;
+    }
+
+    /**
+     * Отзывает все выданные пользователю access-токены. Сохранение user - на вызывающем;
+     * в памяти отзыв появляется после фиксации транзакции.
+     */
+    public void revoke(User user) {
+        Instant now = Instant.now();
+        user.setTokenVersion(user.getTokenVersion() + 1);
+        user.setTokensRevokedAt(now);
+
+        UUID userId = user.getUuid();
+        Revocation revocation = new Revocation(user.getTokenVersion(), now.toEpochMilli());
+        afterCommit(() -> remember(userId, revocation));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void remember(UUID userId, Revocation revocation) {
+        revocations.merge(userId, revocation,
+                (current, candidate) -> candidate.version() > current.version() ? candidate : current);
+    }
+
+    private void sync() {
+        long threshold = System.currentTimeMillis() - retentionMillis;
+        try {
+            for (TokenRevocationView view : userRepository.findTokenRevocationsSince(Instant.ofEpochMilli(threshold))) {
+                remember(view.userId(), new Revocation(view.tokenVersion(), view.revokedAt().toEpochMilli()));
+            }
+        } catch (DataAccessException e) {
+            log.warn("Token revocations not synced: {}", e.getMessage());
+        }
+        revocations.values().removeIf(revocation -> revocation.revokedAtMillis() < threshold);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,82 @@
+package com.semasem.service.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.semasem.dto.websocket.ChatCommand;
+import com.semasem.dto.websocket.ChatEvent;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.UUID;
+
+@Component
+public class ChatCodec {
+
+    private static final ChatCommand TYPING_START = new ChatCommand.TypingStart();
+    private static final ChatCommand TYPING_STOP = new ChatCommand.TypingStop();
+
+    private final JsonFactory jsonFactory;
+    private final ObjectWriter eventWriter;
+    private final WebSocketFrameEncoder frameEncoder;
+
+    public ChatCodec(ObjectMapper objectMapper, WebSocketFrameEncoder frameEncoder) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.eventWriter = objectMapper.writerFor(ChatEvent.class);
+        this.frameEncoder = frameEncoder;
+    }
+
+    public ChatCommand decode(String payload) throws IOException {
+        String type = null;
+        String content = null;
+        UUID messageId = null;
+        UUID replyTo = null;
+        Long sinceSeq = null;
+        Long seq = null;
+        String format = null;
+
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            JsonStreams.expectObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "type" -> type = JsonStreams.readText(parser);
+                    case "content" -> content = JsonStreams.readText(parser);
+                    case "messageId" -> messageId = JsonStreams.readUuid(parser);
+                    case "replyTo" -> replyTo = JsonStreams.readUuid(parser);
+                    case "sinceSeq" -> sinceSeq = JsonStreams.readLong(parser);
+                    case "seq" -> seq = JsonStreams.readLong(parser);
+                    case "format" -> format = JsonStreams.readText(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+
+        if (type == null) {
+            return new ChatCommand.Unknown(null);
+        }
+
+        return switch (type) {
+            case "chat_message" -> new ChatCommand.Send(content, replyTo);
+            case "chat_typing_start" -> TYPING_START;
+            case "chat_typing_stop" -> TYPING_STOP;
+            case "chat_get_history" -> new ChatCommand.GetHistory(sinceSeq, "compact".equals(format));
+            case "chat_edit_message" -> new ChatCommand.Edit(messageId, content);
+            case "chat_delete_message" -> new ChatCommand.Delete(messageId);
+            case "chat_mark_read" -> new ChatCommand.MarkRead(messageId, seq);
+            default -> new ChatCommand.Unknown(type);
+        };
+    }
+
+    public EncodedFrame encode(ChatEvent event) throws JsonProcessingException {
+        return encode(event, null);
+    }
+
+    public EncodedFrame encode(ChatEvent event, String coalesceKey) throws JsonProcessingException {
+        return frameEncoder.encode(eventWriter, event, FramePriority.DEFAULT, coalesceKey);
+    }
+}
@@ -0,0 +1,153 @@
+package com.semasem.service.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограничение частоты chat_message: корзина токенов на пользователя и на комнату.
+ * Корзина хранится как одно число - теоретическое время следующего запроса (GCRA), списание - один CAS,
+ * без блокировок и аллокаций, если корзина уже создана.
+ */
+@Component
+public class ChatFloodControl {
+
+    public enum Scope {
+        USER, ROOM
+    }
+
+    /**
+     * Отказ: чья корзина пуста и через сколько появится токен. null из {@link #tryAcquire} - разрешено.
+     */
+    public record Rejection(Scope scope, long retryAfterMillis) {
+    }
+
+    private final Limit userLimit;
+    private final Limit roomLimit;
+    private final ScheduledExecutorService sweeper;
+
+    private final Map<UUID, AtomicLong> userBuckets = new ConcurrentHashMap<>();
+    private final Map<UUID, AtomicLong> roomBuckets = new ConcurrentHashMap<>();
+
+    private final Counter userThrottled;
+    private final Counter roomThrottled;
+
+    /**
+     * interval - наносекунд на токен, tolerance - насколько теоретическое время может уйти вперед
+     * (burst - 1 токен).
+     */
+    private record Limit(long interval, long tolerance) {
+
+        private static Limit of(int burst, double refillPerSecond) {
+            long interval = (long) (TimeUnit.SECONDS.toNanos(1) / refillPerSecond);
+            return new Limit(interval, interval * (Math.max(1, burst) - 1L));
+        }
+
+        // > 0 - сколько наносекунд ждать, иначе токен списан
+        private long acquire(AtomicLong bucket, long now) {
+            while (true) {
+                long tat = bucket.get();
+                long base = Math.max(tat, now);
+                long wait = base - now - tolerance;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (bucket.compareAndSet(tat, base + interval)) {
+                    return 0;
+                }
+            }
+        }
+
+        private void release(AtomicLong bucket) {
+            bucket.addAndGet(-interval);
+        }
+    }
+
+    public ChatFloodControl(MeterRegistry meterRegistry,
+                            @Value("${chat.flood.user-burst:5}") int userBurst,
+                            @Value("${chat.flood.user-refill-per-second:1}") double userRefillPerSecond,
+                            @Value("${chat.flood.room-burst:50}") int roomBurst,
+                            @Value("${chat.flood.room-refill-per-second:20}") double roomRefillPerSecond,
+                            @Value("${chat.flood.idle-ttl-ms:600000}") long idleTtlMillis) {
+        this.userLimit = Limit.of(userBurst, userRefillPerSecond);
+        this.roomLimit = Limit.of(roomBurst, roomRefillPerSecond);
+
+        this.userThrottled = Counter.builder("chat.flood.throttled")
+                .tag("scope", "user")
+                .description("chat_message commands rejected by flood control")
+                .register(meterRegistry);
+        this.roomThrottled = Counter.builder("chat.flood.throttled")
+                .tag("scope", "room")
+                .description("chat_message commands rejected by flood control")
+                .register(meterRegistry);
+        Gauge.builder("chat.flood.buckets", userBuckets, Map::size)
+                .tag("scope", "user")
+                .description("Token buckets held in memory")
+                .register(meterRegistry);
+        Gauge.builder("chat.flood.buckets", roomBuckets, Map::size)
+                .tag("scope", "room")
+                .description("Token buckets held in memory")
+                .register(meterRegistry);
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-flood-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleTtlMillis);
+        long period = Math.max(1000L, idleTtlMillis / 4);
+        sweeper.scheduleWithFixedDelay(() -> evictIdle(idleNanos), period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Rejection tryAcquire(UUID roomId, UUID userId) {
+        long now = System.nanoTime();
+
+        AtomicLong user = bucket(userBuckets, userId, now);
+        long userWait = userLimit.acquire(user, now);
+        if (userWait > 0) {
+            userThrottled.increment();
+            return new Rejection(Scope.USER, TimeUnit.NANOSECONDS.toMillis(userWait) + 1);
+        }
+
+        long roomWait = roomLimit.acquire(bucket(roomBuckets, roomId, now), now);
+        if (roomWait > 0) {
+            // Токен пользователя возвращается: сообщение не прошло не по его вине
+            userLimit.release(user);
+            roomThrottled.increment();
+            return new Rejection(Scope.ROOM, TimeUnit.NANOSECONDS.toMillis(roomWait) + 1);
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    private static AtomicLong bucket(Map<UUID, AtomicLong> buckets, UUID key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        // Новая корзина полная: теоретическое время - "сейчас"
+        return buckets.computeIfAbsent(key, id -> new AtomicLong(now));
+    }
+
+    // Корзина, у которой теоретическое время давно в прошлом, полная - удаление ничего не меняет
+    private void evictIdle(long idleNanos) {
+        long threshold = System.nanoTime() - idleNanos;
+        userBuckets.values().removeIf(bucket -> bucket.get() - threshold < 0);
+        roomBuckets.values().removeIf(bucket -> bucket.get() - threshold < 0);
+    }
+}
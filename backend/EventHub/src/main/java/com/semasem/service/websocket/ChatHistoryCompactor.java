@@ -0,0 +1,71 @@
+package com.semasem.service.websocket;
+
+import com.semasem.dto.response.ChatMessageResponse;
+import com.semasem.dto.websocket.ChatEvent;
+import com.semasem.repository.entity.ChatMessageType;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Сворачивает страницу истории в chat_history_compact. Отправитель определяется по email,
+ * как и на клиенте.
+ */
+public final class ChatHistoryCompactor {
+
+    private ChatHistoryCompactor() {
+    }
+
+    public static ChatEvent.CompactHistory compact(String roomId, long seq, List<ChatMessageResponse> messages,
+                                                   long timestamp) {
+        Map<String, Integer> senderIndex = new HashMap<>();
+        List<ChatEvent.Sender> senders = new ArrayList<>();
+        List<ChatEvent.CompactMessage> rows = new ArrayList<>(messages.size());
+        Map<String, ChatEvent.Quote> quotes = new LinkedHashMap<>();
+
+        Set<UUID> present = new HashSet<>();
+        for (ChatMessageResponse message : messages) {
+            present.add(message.getUuid());
+        }
+
+        for (ChatMessageResponse message : messages) {
+            String key = Objects.toString(message.getSenderEmail(), "");
+            Integer sender = senderIndex.get(key);
+            if (sender == null) {
+                sender = senders.size();
+                senderIndex.put(key, sender);
+                senders.add(new ChatEvent.Sender(message.getSenderName(), message.getSenderEmail(),
+                        message.getSenderAvatar()));
+            }
+
+            UUID replyTo = message.getReplyTo();
+            if (replyTo != null && !present.contains(replyTo) && message.getRepliedMessageContent() != null) {
+                quotes.putIfAbsent(replyTo.toString(), new ChatEvent.Quote(message.getRepliedMessageContent(),
+                        message.getRepliedMessageSender()));
+            }
+
+            rows.add(new ChatEvent.CompactMessage(
+                    message.getUuid().toString(),
+                    sender,
+                    message.getContent(),
+                    message.getType() != ChatMessageType.TEXT ? message.getType() : null,
+                    toMillis(message.getTimestamp()),
+                    message.isEdited() ? toMillis(message.getEditedAt()) : null,
+                    replyTo != null ? replyTo.toString() : null));
+        }
+
+        return new ChatEvent.CompactHistory(roomId, seq, senders, rows, quotes, timestamp);
+    }
+
+    private static Long toMillis(Instant instant) {
+        return instant != null ? instant.toEpochMilli() : null;
+    }
+}
@@ -0,0 +1,181 @@
+package com.semasem.service.websocket;
+
+import com.semasem.dto.websocket.ChatEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Кто печатает в комнатах. Состояние только в памяти: повторный chat_typing_start чаще
+ * start-throttle-ms лишь продлевает срок, истечение - по колесу таймеров с шагом tick-ms. Продление
+ * без новой записи в колесе: когда подходит прежний срок, он переносится от последнего start.
+ * Раз в тик каждая изменившаяся комната получает один кадр со всеми печатающими.
+ */
+@Slf4j
+@Component
+public class ChatTypingTracker {
+
+    private final int ttlTicks;
+    private final long startThrottleMillis;
+    private final ScheduledExecutorService scheduler;
+
+    // Все поля ниже - под монитором this
+    private final Map<UUID, Map<UUID, Typist>> rooms = new HashMap<>();
+    private final List<List<Typist>> wheel;
+    private final Set<UUID> changedRooms = new HashSet<>();
+    private long currentTick;
+
+    private final Counter throttledStarts;
+
+    private volatile Consumer<TypingState> listener;
+
+    /**
+     * users - все, кто печатает в комнате, в порядке начала.
+     */
+    public record TypingState(UUID roomId, List<ChatEvent.UserInfo> users) {
+    }
+
+    private static final class Typist {
+        private final UUID roomId;
+        private final UUID userId;
+        private final ChatEvent.UserInfo user;
+        private long deadlineTick;
+        // Тик последнего chat_typing_start, в том числе отброшенного ограничением
+        private long lastSeenTick;
+        private long lastStartMillis;
+
+        private Typist(UUID roomId, UUID userId, ChatEvent.UserInfo user) {
+            this.roomId = roomId;
+            this.userId = userId;
+            this.user = user;
+        }
+    }
+
+    public ChatTypingTracker(MeterRegistry meterRegistry,
+                             @Value("${chat.typing.tick-ms:200}") long tickMillis,
+                             @Value("${chat.typing.ttl-ms:5000}") long ttlMillis,
+                             @Value("${chat.typing.start-throttle-ms:1000}") long startThrottleMillis) {
+        this.ttlTicks = (int) Math.max(1, (ttlMillis + tickMillis - 1) / tickMillis);
+        this.startThrottleMillis = startThrottleMillis;
+
+        // Срок не дальше ttlTicks вперед, поэтому слоты колеса не пересекаются
+        this.wheel = new ArrayList<>(ttlTicks + 1);
+        for (int i = 0; i <= ttlTicks; i++) {
+            wheel.add(new ArrayList<>());
+        }
+
+        this.throttledStarts = Counter.builder("chat.typing.throttled")
+                .description("chat_typing_start commands that only extended an existing typing state")
+                .register(meterRegistry);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-typing");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void subscribe(Consumer<TypingState> listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void start(UUID roomId, UUID userId, ChatEvent.UserInfo user) {
+        long now = System.currentTimeMillis();
+        Map<UUID, Typist> typists = rooms.computeIfAbsent(roomId, id -> new LinkedHashMap<>());
+        Typist typist = typists.get(userId);
+        if (typist == null) {
+            typist = new Typist(roomId, userId, user);
+            typists.put(userId, typist);
+            changedRooms.add(roomId);
+        } else if (now - typist.lastStartMillis < startThrottleMillis) {
+            typist.lastSeenTick = currentTick;
+            throttledStarts.increment();
+            return;
+        }
+        typist.lastStartMillis = now;
+        typist.lastSeenTick = currentTick;
+        typist.deadlineTick = currentTick + ttlTicks;
+        // Прежний слот останется с устаревшей ссылкой, при обходе она пропускается по deadlineTick
+        wheel.get((int) (typist.deadlineTick % wheel.size())).add(typist);
+    }
+
+    public synchronized void stop(UUID roomId, UUID userId) {
+        Map<UUID, Typist> typists = rooms.get(roomId);
+        if (typists != null && typists.remove(userId) != null) {
+            changedRooms.add(roomId);
+            if (typists.isEmpty()) {
+                rooms.remove(roomId);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void tick() {
+        List<TypingState> states = new ArrayList<>();
+        synchronized (this) {
+            currentTick++;
+            List<Typist> slot = wheel.get((int) (currentTick % wheel.size()));
+            for (Typist typist : slot) {
+                Map<UUID, Typist> typists = rooms.get(typist.roomId);
+                if (typist.deadlineTick == currentTick && typists != null && typists.get(typist.userId) == typist) {
+                    long extended = typist.lastSeenTick + ttlTicks;
+                    if (extended > currentTick) {
+                        // Срок продлен отброшенным start: новый слот не совпадает с текущим
+                        typist.deadlineTick = extended;
+                        wheel.get((int) (extended % wheel.size())).add(typist);
+                        continue;
+                    }
+                    typists.remove(typist.userId);
+                    changedRooms.add(typist.roomId);
+                    if (typists.isEmpty()) {
+                        rooms.remove(typist.roomId);
+                    }
+                }
+            }
+            slot.clear();
+
+            for (UUID roomId : changedRooms) {
+                Map<UUID, Typist> typists = rooms.get(roomId);
+                List<ChatEvent.UserInfo> users = new ArrayList<>();
+                if (typists != null) {
+                    typists.values().forEach(typist -> users.add(typist.user));
+                }
+                states.add(new TypingState(roomId, users));
+            }
+            changedRooms.clear();
+        }
+
+        Consumer<TypingState> target = listener;
+        if (target == null) {
+            return;
+        }
+        for (TypingState state : states) {
+            try {
+                target.accept(state);
+            } catch (RuntimeException e) {
+                log.error("Error publishing typing state for room {}", state.roomId(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.semasem.service.websocket;
+
+import org.springframework.web.socket.TextMessage;
+
+public record EncodedFrame(TextMessage message,
+                           int sizeBytes,
+                           long encodeNanos,
+                           FramePriority priority,
+                           String coalesceKey) {
+
+    public EncodedFrame(TextMessage message, long encodeNanos) {
+        this(message, message.getPayloadLength(), encodeNanos, FramePriority.DEFAULT, null);
+    }
+
+    public EncodedFrame(TextMessage message, long encodeNanos, FramePriority priority, String coalesceKey) {
+        this(message, message.getPayloadLength(), encodeNanos, priority, coalesceKey);
+    }
+}
@@ -0,0 +1,6 @@
+package com.semasem.service.websocket;
+
+public enum FramePriority {
+    SIGNALING,
+    DEFAULT
+}
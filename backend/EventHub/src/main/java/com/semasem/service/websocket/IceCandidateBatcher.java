@@ -0,0 +1,199 @@
+package com.semasem.service.websocket;
+
+import com.semasem.dto.websocket.RawJson;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Копит trickle ICE кандидатов по паре (from, to) в течение короткого окна
+ * и отправляет их одним кадром ice_candidates. Точные повторы отбрасываются.
+ */
+@Slf4j
+@Component
+public class IceCandidateBatcher {
+
+    private static final int MAX_SEEN_PER_PAIR = 256;
+
+    private final SignalingCodec signalingCodec;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, PairBuffer> pairs = new ConcurrentHashMap<>();
+
+    private final DistributionSummary batchSize;
+    private final Timer batchLatency;
+    private final Counter duplicates;
+
+    private static final class PairBuffer {
+        private final String fromUserId;
+        private final String targetUserId;
+        private final Set<String> seen = new HashSet<>();
+        private final List<RawJson> pending = new ArrayList<>();
+        private long firstQueuedAt;
+        private ScheduledFuture<?> flushTask;
+        private BiConsumer<String, EncodedFrame> sink;
+
+        private PairBuffer(String fromUserId, String targetUserId) {
+            this.fromUserId = fromUserId;
+            this.targetUserId = targetUserId;
+        }
+    }
+
+    public IceCandidateBatcher(SignalingCodec signalingCodec,
+                               MeterRegistry meterRegistry,
+                               @Value("${websocket.signaling.ice-batch-window-ms:20}") long windowMillis,
+                               @Value("${websocket.signaling.ice-batch-max-size:32}") int maxBatchSize) {
+        this.signalingCodec = signalingCodec;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-ice-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.batchSize = DistributionSummary.builder("websocket.ice.batch.size")
+                .description("ICE candidates per forwarded frame")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchLatency = Timer.builder("websocket.ice.batch.latency")
+                .description("Delay added by ICE candidate batching")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.duplicates = Counter.builder("websocket.ice.duplicates")
+                .description("Duplicate ICE candidates dropped")
+                .register(meterRegistry);
+    }
+
+    public void submit(String fromUserId, String targetUserId, RawJson candidate,
+                       BiConsumer<String, EncodedFrame> sink) {
+        if (windowMillis <= 0) {
+            batchSize.record(1);
+            sink.accept(targetUserId, signalingCodec.encodeRelay("ice_candidate", fromUserId, "candidate", candidate));
+            return;
+        }
+
+        PairBuffer pair = pairs.computeIfAbsent(pairKey(fromUserId, targetUserId),
+                key -> new PairBuffer(fromUserId, targetUserId));
+
+        List<RawJson> ready = null;
+        long queuedAt = 0L;
+        synchronized (pair) {
+            if (pair.seen.size() >= MAX_SEEN_PER_PAIR) {
+                pair.seen.clear();
+            }
+            if (!pair.seen.add(candidate.toString())) {
+                duplicates.increment();
+                return;
+            }
+
+            pair.sink = sink;
+            if (pair.pending.isEmpty()) {
+                pair.firstQueuedAt = System.nanoTime();
+                pair.flushTask = scheduler.schedule(() -> flush(pair), windowMillis, TimeUnit.MILLISECONDS);
+            }
+            pair.pending.add(candidate);
+
+            if (pair.pending.size() >= maxBatchSize) {
+                pair.flushTask.cancel(false);
+                queuedAt = pair.firstQueuedAt;
+                ready = takePending(pair);
+            }
+        }
+
+        if (ready != null) {
+            send(pair, ready, queuedAt, sink);
+        }
+    }
+
+    /**
+     * Новое согласование между парой: отправляем накопленное и забываем увиденных кандидатов.
+     */
+    public void resetPair(String fromUserId, String targetUserId) {
+        PairBuffer pair = pairs.remove(pairKey(fromUserId, targetUserId));
+        if (pair != null) {
+            flush(pair);
+        }
+    }
+
+    public void clearUser(String userId) {
+        pairs.values().removeIf(pair -> {
+            if (!pair.fromUserId.equals(userId) && !pair.targetUserId.equals(userId)) {
+                return false;
+            }
+            synchronized (pair) {
+                if (pair.flushTask != null) {
+                    pair.flushTask.cancel(false);
+                }
+                pair.pending.clear();
+            }
+            return true;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void flush(PairBuffer pair) {
+        List<RawJson> ready;
+        long queuedAt;
+        BiConsumer<String, EncodedFrame> sink;
+        synchronized (pair) {
+            if (pair.pending.isEmpty()) {
+                return;
+            }
+            queuedAt = pair.firstQueuedAt;
+            sink = pair.sink;
+            ready = takePending(pair);
+        }
+        send(pair, ready, queuedAt, sink);
+    }
+
+    private List<RawJson> takePending(PairBuffer pair) {
+        List<RawJson> ready = new ArrayList<>(pair.pending);
+        pair.pending.clear();
+        pair.flushTask = null;
+        return ready;
+    }
+
+    private void send(PairBuffer pair, List<RawJson> candidates, long queuedAt,
+                      BiConsumer<String, EncodedFrame> sink) {
+        batchSize.record(candidates.size());
+        batchLatency.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+
+        try {
+            // Одиночный кандидат уходит в старом формате ice_candidate
+            EncodedFrame frame = candidates.size() == 1
+                    ? signalingCodec.encodeRelay("ice_candidate", pair.fromUserId, "candidate", candidates.get(0))
+                    : signalingCodec.encodeCandidates(pair.fromUserId, candidates);
+            sink.accept(pair.targetUserId, frame);
+        } catch (RuntimeException e) {
+            log.error("Error forwarding ICE candidates from {} to {}", pair.fromUserId, pair.targetUserId, e);
+        }
+    }
+
+    private String pairKey(String fromUserId, String targetUserId) {
+        return fromUserId + ">" + targetUserId;
+    }
+}
@@ -0,0 +1,58 @@
+package com.semasem.service.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+public class OutboundQueueMetrics {
+
+    private final DistributionSummary queueDepth;
+    private final Timer sendTimer;
+    private final Counter dropped;
+    private final Counter coalesced;
+    private final Counter disconnected;
+
+    public OutboundQueueMetrics(MeterRegistry meterRegistry, String endpoint) {
+        this.queueDepth = DistributionSummary.builder("websocket.outbound.queue.depth")
+                .description("Per-session outbound queue depth observed on enqueue")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        this.sendTimer = Timer.builder("websocket.outbound.send")
+                .description("Time spent writing a frame to the socket")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        this.dropped = Counter.builder("websocket.outbound.dropped")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("websocket.outbound.coalesced")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        this.disconnected = Counter.builder("websocket.outbound.disconnected")
+                .description("Sessions closed as slow consumers")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+    }
+
+    void recordDepth(int depth) {
+        queueDepth.record(depth);
+    }
+
+    void recordSend(long nanos) {
+        sendTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void dropped() {
+        dropped.increment();
+    }
+
+    void coalesced() {
+        coalesced.increment();
+    }
+
+    void disconnected() {
+        disconnected.increment();
+    }
+}
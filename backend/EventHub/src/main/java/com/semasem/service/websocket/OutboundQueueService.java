@@ -0,0 +1,147 @@
+package com.semasem.service.websocket;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+@Service
+public class OutboundQueueService {
+
+    private static final String OUTBOUND_ATTRIBUTE = OutboundWebSocketSession.class.getName();
+
+    private final MeterRegistry meterRegistry;
+    private final OutboundQueueSettings settings;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService watchdog;
+    private final ExecutorService closer;
+
+    private final Map<String, OutboundQueueMetrics> metricsByEndpoint = new ConcurrentHashMap<>();
+    private final Set<OutboundWebSocketSession> openSessions = ConcurrentHashMap.newKeySet();
+
+    public OutboundQueueService(MeterRegistry meterRegistry,
+                                @Value("${websocket.outbound.send-time-limit-ms:10000}") long sendTimeLimitMillis,
+                                @Value("${websocket.outbound.buffer-size-limit:524288}") int bufferSizeLimit,
+                                @Value("${websocket.outbound.overflow-policy:COALESCE}") SlowConsumerPolicy policy,
+                                @Value("${websocket.outbound.max-frames-per-drain:64}") int maxFramesPerDrain,
+                                @Value("${websocket.outbound.threads:0}") int threads) {
+        this.meterRegistry = meterRegistry;
+        this.settings = new OutboundQueueSettings(sendTimeLimitMillis, bufferSizeLimit, policy, maxFramesPerDrain);
+
+        int poolSize = threads > 0 ? threads : Math.max(2, Runtime.getRuntime().availableProcessors());
+        this.executor = Executors.newFixedThreadPool(poolSize, namedDaemonThreads("ws-outbound-"));
+
+        // Закрытие зависшего сокета само может блокироваться на отправке close-кадра - не в потоке сторожа
+        this.closer = Executors.newCachedThreadPool(namedDaemonThreads("ws-outbound-closer-"));
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(namedDaemonThreads("ws-outbound-watchdog-"));
+        long period = Math.max(100L, sendTimeLimitMillis / 4);
+        watchdog.scheduleWithFixedDelay(this::closeStalledSessions, period, period, TimeUnit.MILLISECONDS);
+
+        Gauge.builder("websocket.outbound.queued.frames", openSessions,
+                        sessions -> sessions.stream().mapToInt(OutboundWebSocketSession::getQueuedFrameCount).sum())
+                .description("Frames waiting in all outbound session queues")
+                .register(meterRegistry);
+        Gauge.builder("websocket.outbound.queued.bytes", openSessions,
+                        sessions -> sessions.stream().mapToInt(OutboundWebSocketSession::getQueuedBytes).sum())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        log.info("Outbound WebSocket queues: {} threads, send limit {} ms, buffer limit {} bytes, policy {}",
+                poolSize, sendTimeLimitMillis, bufferSizeLimit, policy);
+    }
+
+    /**
+     * Очередь сессии; у одной сессии очередь одна - повторный вызов возвращает ее же, пока она не закрыта.
+     */
+    public OutboundWebSocketSession wrap(WebSocketSession session, String endpoint) {
+        if (session.getAttributes().get(OUTBOUND_ATTRIBUTE) instanceof OutboundWebSocketSession existing
+                && !existing.isDiscarded()) {
+            return existing;
+        }
+        OutboundQueueMetrics metrics = metricsByEndpoint
+                .computeIfAbsent(endpoint, name -> new OutboundQueueMetrics(meterRegistry, name));
+
+        OutboundWebSocketSession outbound = new OutboundWebSocketSession(
+                session, executor, settings, metrics, openSessions::remove);
+        openSessions.add(outbound);
+        session.getAttributes().put(OUTBOUND_ATTRIBUTE, outbound);
+        return outbound;
+    }
+
+    /**
+     * Кадр через очередь сессии, даже если она еще не зарегистрирована (ошибка подключения).
+     */
+    public boolean send(WebSocketSession session, String endpoint, EncodedFrame frame) {
+        return wrap(session, endpoint).send(frame);
+    }
+
+    /**
+     * Последний кадр и закрытие после его отправки.
+     */
+    public void sendAndClose(WebSocketSession session, String endpoint, EncodedFrame frame, CloseStatus status) {
+        OutboundWebSocketSession outbound = wrap(session, endpoint);
+        outbound.send(frame);
+        outbound.closeAfterDrain(status);
+    }
+
+    /**
+     * Освобождает очередь закрытой сессии, в том числе не попавшей в реестр.
+     */
+    public void release(WebSocketSession session) {
+        if (session.getAttributes().remove(OUTBOUND_ATTRIBUTE) instanceof OutboundWebSocketSession outbound) {
+            outbound.discard();
+        }
+    }
+
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new HashMap<>();
+        openSessions.forEach(session -> depths.put(session.getId(), session.getQueuedFrameCount()));
+        return depths;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        executor.shutdownNow();
+        closer.shutdownNow();
+    }
+
+    // Заблокированная отправка держит поток drain; без сторожа лимит проверялся бы только при следующем send
+    private void closeStalledSessions() {
+        for (OutboundWebSocketSession session : openSessions) {
+            if (session.markStalled()) {
+                try {
+                    closer.execute(session::closeStalled);
+                } catch (RejectedExecutionException e) {
+                    log.debug("Closer rejected stalled session {}", session.getId());
+                }
+            }
+        }
+    }
+
+    private static ThreadFactory namedDaemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,7 @@
+package com.semasem.service.websocket;
+
+public record OutboundQueueSettings(long sendTimeLimitMillis,
+                                    int bufferSizeLimit,
+                                    SlowConsumerPolicy policy,
+                                    int maxFramesPerDrain) {
+}
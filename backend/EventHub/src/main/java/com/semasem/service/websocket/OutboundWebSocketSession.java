@@ -0,0 +1,308 @@
+package com.semasem.service.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+@Slf4j
+public class OutboundWebSocketSession extends WebSocketSessionDecorator {
+
+    private final Executor executor;
+    private final OutboundQueueSettings settings;
+    private final OutboundQueueMetrics metrics;
+    private final Consumer<OutboundWebSocketSession> onDiscard;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<EncodedFrame> signalingLane = new ArrayDeque<>();
+    private final ArrayDeque<EncodedFrame> defaultLane = new ArrayDeque<>();
+    private int queuedBytes;
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean stalled = new AtomicBoolean();
+    private volatile long sendStartedAt;
+    private volatile boolean closed;
+    private volatile CloseStatus closeAfterDrain;
+
+    private enum Outcome {
+        ACCEPTED,
+        DROPPED,
+        DISCONNECT
+    }
+
+    public OutboundWebSocketSession(WebSocketSession delegate,
+                                    Executor executor,
+                                    OutboundQueueSettings settings,
+                                    OutboundQueueMetrics metrics,
+                                    Consumer<OutboundWebSocketSession> onDiscard) {
+        super(delegate);
+        this.executor = executor;
+        this.settings = settings;
+        this.metrics = metrics;
+        this.onDiscard = onDiscard;
+    }
+
+    public boolean send(EncodedFrame frame) {
+        if (closed || !isOpen()) {
+            return false;
+        }
+
+        if (isSendTimeLimitExceeded()) {
+            log.warn("Session {} exceeded send time limit of {} ms, disconnecting",
+                    getId(), settings.sendTimeLimitMillis());
+            disconnect();
+            return false;
+        }
+
+        Outcome outcome;
+        lock.lock();
+        try {
+            outcome = enqueue(frame);
+        } finally {
+            lock.unlock();
+        }
+
+        switch (outcome) {
+            case ACCEPTED -> {
+                scheduleDrain();
+                return true;
+            }
+            case DISCONNECT -> {
+                log.warn("Session {} exceeded buffer size limit of {} bytes, disconnecting",
+                        getId(), settings.bufferSizeLimit());
+                disconnect();
+                return false;
+            }
+            default -> {
+                metrics.dropped();
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (!(message instanceof TextMessage textMessage)) {
+            throw new IllegalArgumentException("Only text messages are supported: " + message.getClass().getSimpleName());
+        }
+        if (!send(new EncodedFrame(textMessage, 0L))) {
+            throw new SessionLimitExceededException("Outbound frame rejected for session " + getId(),
+                    CloseStatus.SESSION_NOT_RELIABLE);
+        }
+    }
+
+    /**
+     * Закрывает сессию, когда очередь опустеет: последний кадр (ошибка подключения) уходит той же очередью.
+     */
+    public void closeAfterDrain(CloseStatus status) {
+        closeAfterDrain = status;
+        scheduleDrain();
+    }
+
+    /**
+     * Для сторожа: true, если текущая отправка дольше лимита и сессию нужно закрыть. Возвращает true один раз.
+     */
+    public boolean markStalled() {
+        return !closed && isSendTimeLimitExceeded() && stalled.compareAndSet(false, true);
+    }
+
+    /**
+     * Закрытие зависшей сессии: заблокированная запись в потоке drain завершается ошибкой.
+     */
+    public void closeStalled() {
+        log.warn("Session {} send blocked longer than {} ms, disconnecting", getId(), settings.sendTimeLimitMillis());
+        disconnect();
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        discard();
+        super.close(status);
+    }
+
+    public void discard() {
+        closed = true;
+        lock.lock();
+        try {
+            signalingLane.clear();
+            defaultLane.clear();
+            queuedBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+        onDiscard.accept(this);
+    }
+
+    public boolean isDiscarded() {
+        return closed;
+    }
+
+    public int getQueuedFrameCount() {
+        lock.lock();
+        try {
+            return signalingLane.size() + defaultLane.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedBytes() {
+        lock.lock();
+        try {
+            return queuedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Outcome enqueue(EncodedFrame frame) {
+        if (settings.policy() == SlowConsumerPolicy.COALESCE && frame.coalesceKey() != null) {
+            if (removePending(defaultLane, frame.coalesceKey()) || removePending(signalingLane, frame.coalesceKey())) {
+                metrics.coalesced();
+            }
+        }
+
+        if (queuedBytes + frame.sizeBytes() > settings.bufferSizeLimit()) {
+            if (settings.policy() == SlowConsumerPolicy.DISCONNECT) {
+                return Outcome.DISCONNECT;
+            }
+            // Освобождаем место за счет самых старых низкоприоритетных кадров
+            while (!defaultLane.isEmpty() && queuedBytes + frame.sizeBytes() > settings.bufferSizeLimit()) {
+                queuedBytes -= defaultLane.pollFirst().sizeBytes();
+                metrics.dropped();
+            }
+            if (queuedBytes + frame.sizeBytes() > settings.bufferSizeLimit()) {
+                // Потерянный offer/answer/ICE молча ломает согласование пары: лучше переподключение
+                return frame.priority() == FramePriority.SIGNALING ? Outcome.DISCONNECT : Outcome.DROPPED;
+            }
+        }
+
+        (frame.priority() == FramePriority.SIGNALING ? signalingLane : defaultLane).addLast(frame);
+        queuedBytes += frame.sizeBytes();
+        metrics.recordDepth(signalingLane.size() + defaultLane.size());
+        return Outcome.ACCEPTED;
+    }
+
+    private boolean removePending(ArrayDeque<EncodedFrame> lane, String coalesceKey) {
+        Iterator<EncodedFrame> iterator = lane.iterator();
+        while (iterator.hasNext()) {
+            EncodedFrame pending = iterator.next();
+            if (coalesceKey.equals(pending.coalesceKey())) {
+                iterator.remove();
+                queuedBytes -= pending.sizeBytes();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private EncodedFrame poll() {
+        lock.lock();
+        try {
+            EncodedFrame frame = signalingLane.pollFirst();
+            if (frame == null) {
+                frame = defaultLane.pollFirst();
+            }
+            if (frame != null) {
+                queuedBytes -= frame.sizeBytes();
+            }
+            return frame;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                log.warn("Outbound executor rejected drain for session {}", getId());
+            }
+        }
+    }
+
+    private void drain() {
+        int sent = 0;
+        try {
+            EncodedFrame frame;
+            while (sent < settings.maxFramesPerDrain() && (frame = poll()) != null) {
+                if (!deliver(frame)) {
+                    return;
+                }
+                sent++;
+            }
+        } finally {
+            draining.set(false);
+        }
+
+        // Кадр мог прийти между последним poll и сбросом флага
+        if (!closed && getQueuedFrameCount() > 0) {
+            scheduleDrain();
+        } else if (!closed && closeAfterDrain != null) {
+            try {
+                close(closeAfterDrain);
+            } catch (IOException e) {
+                log.debug("Error closing session {}", getId(), e);
+            }
+        }
+    }
+
+    private boolean deliver(EncodedFrame frame) {
+        if (closed || !isOpen()) {
+            discard();
+            return false;
+        }
+
+        long start = System.nanoTime();
+        sendStartedAt = start;
+        try {
+            getDelegate().sendMessage(frame.message());
+            // Медленная отправка проверяется здесь же, а не только при следующей постановке в очередь
+            if (System.nanoTime() - start > settings.sendTimeLimitMillis() * 1_000_000L) {
+                log.warn("Session {} took longer than {} ms to accept a frame, disconnecting",
+                        getId(), settings.sendTimeLimitMillis());
+                disconnect();
+                return false;
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to deliver frame to session {}: {}", getId(), e.getMessage());
+            disconnect();
+            return false;
+        } finally {
+            sendStartedAt = 0L;
+            metrics.recordSend(System.nanoTime() - start);
+        }
+    }
+
+    private boolean isSendTimeLimitExceeded() {
+        long startedAt = sendStartedAt;
+        return startedAt != 0L && System.nanoTime() - startedAt > settings.sendTimeLimitMillis() * 1_000_000L;
+    }
+
+    private void disconnect() {
+        if (closed) {
+            return;
+        }
+        metrics.disconnected();
+        try {
+            close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            log.debug("Error closing slow session {}", getId(), e);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.semasem.service.websocket;
+
+import com.semasem.dto.exception.CustomException;
+import com.semasem.dto.exception.ErrorCode;
+import com.semasem.repository.RoomParticipantRepository;
+import com.semasem.repository.entity.ParticipantInfo;
+import com.semasem.repository.entity.ParticipantStatus;
+import com.semasem.repository.entity.Room;
+import com.semasem.repository.entity.RoomParticipant;
+import com.semasem.repository.entity.RoomStatus;
+import com.semasem.repository.entity.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Подключение к сигнальному каналу вне потока контейнера: один запрос состава комнаты
+ * (общий для одновременных подключений к той же комнате), по нему проверка доступа.
+ */
+@Slf4j
+@Service
+public class RoomJoinPipeline {
+
+    private final RoomParticipantRepository roomParticipantRepository;
+    private final ThreadPoolExecutor executor;
+
+    private final Map<UUID, CompletableFuture<List<RoomParticipant>>> inFlightRosters = new ConcurrentHashMap<>();
+
+    private final Timer joinLatency;
+    private final Timer rosterQuery;
+    private final Counter sharedRosterLoads;
+
+    public record JoinResult(ParticipantInfo self, List<ParticipantInfo> roster) {
+    }
+
+    public RoomJoinPipeline(RoomParticipantRepository roomParticipantRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${websocket.join.threads:4}") int threads,
+                            @Value("${websocket.join.queue-capacity:1000}") int queueCapacity) {
+        this.roomParticipantRepository = roomParticipantRepository;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "ws-join-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.joinLatency = Timer.builder("websocket.join.latency")
+                .description("Time from connection established to the first room frame queued")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rosterQuery = Timer.builder("websocket.join.roster.query")
+                .description("Roster query executed for joins")
+                .register(meterRegistry);
+        this.sharedRosterLoads = Counter.builder("websocket.join.roster.shared")
+                .description("Joins that reused an in-flight roster query")
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<JoinResult> join(WebSocketSessionContext context) {
+        try {
+            // Проверка ставится в очередь явно: отказ переполненной очереди из thenApplyAsync
+            // вылетел бы в поток, завершающий состав, и подключение не завершилось бы никогда
+            return loadRoster(context.roomId())
+                    .thenCompose(roster -> submit(() -> resolve(context, roster)));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(tooManyJoins());
+        }
+    }
+
+    public void recordFirstFrame(long startedAtNanos) {
+        joinLatency.record(System.nanoTime() - startedAtNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private CompletableFuture<List<RoomParticipant>> loadRoster(UUID roomId) {
+        CompletableFuture<List<RoomParticipant>> created = new CompletableFuture<>();
+        CompletableFuture<List<RoomParticipant>> existing = inFlightRosters.putIfAbsent(roomId, created);
+        if (existing != null) {
+            sharedRosterLoads.increment();
+            return existing;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    created.complete(rosterQuery.record(() -> roomParticipantRepository.findByRoomUuidWithDetails(roomId)));
+                } catch (Throwable t) {
+                    created.completeExceptionally(t);
+                } finally {
+                    inFlightRosters.remove(roomId, created);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlightRosters.remove(roomId, created);
+            throw e;
+        }
+        return created;
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(tooManyJoins());
+        }
+    }
+
+    private static CustomException tooManyJoins() {
+        return new CustomException(ErrorCode.INTERNAL_ERROR, "Too many concurrent joins");
+    }
+
+    private JoinResult resolve(WebSocketSessionContext context, List<RoomParticipant> roster) {
+        RoomParticipant self = findSelf(roster, context.userId());
+        if (self == null) {
+            // Общий запрос мог стартовать раньше, чем пользователь вошел в комнату через REST
+            Optional<RoomParticipant> fresh = roomParticipantRepository
+                    .findByRoomAndUserWithDetails(context.roomId(), context.userId());
+            if (fresh.isEmpty()) {
+                throw new CustomException(ErrorCode.ACCESS_DENIED, "Not a room participant");
+            }
+            self = fresh.get();
+            roster = new ArrayList<>(roster);
+            roster.add(self);
+        }
+
+        checkAccess(self);
+        roomParticipantRepository.updateLastActiveAt(self.getId(), Instant.now());
+
+        return new JoinResult(toInfo(self), roster.stream().map(this::toInfo).toList());
+    }
+
+    private void checkAccess(RoomParticipant self) {
+        User user = self.getUser();
+        Room room = self.getRoom();
+
+        if (user.isGuest() && user.getGuestExpiresAt() != null && user.getGuestExpiresAt().isBefore(Instant.now())) {
+            throw new CustomException(ErrorCode.GUEST_EXPIRED, "Guest access has expired");
+        }
+
+        if (room.getStatus() != RoomStatus.ACTIVE) {
+            throw new CustomException(ErrorCode.ROOM_NOT_ACTIVE, "Room is not active");
+        }
+
+        boolean hasAccess = room.getOwnerUuid().equals(user.getUuid())
+                || room.isPublic()
+                || (self.isActive() && self.getStatus() == ParticipantStatus.JOINED);
+        if (!hasAccess) {
+            throw new CustomException(ErrorCode.ACCESS_DENIED, "No access to room");
+        }
+    }
+
+    private RoomParticipant findSelf(List<RoomParticipant> roster, UUID userId) {
+        for (RoomParticipant participant : roster) {
+            if (participant.getUser().getUuid().equals(userId)) {
+                return participant;
+            }
+        }
+        return null;
+    }
+
+    private ParticipantInfo toInfo(RoomParticipant participant) {
+        return new ParticipantInfo(
+                participant.getUser().getUuid(),
+                participant.getUser().getName(),
+                participant.getUser().getEmail(),
+                participant.getRole(),
+                participant.getUser().isGuest(),
+                participant.getJoinedAt(),
+                participant.getLastActiveAt()
+        );
+    }
+}
@@ -0,0 +1,118 @@
+package com.semasem.service.websocket;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+public class RoomSessionRegistry {
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, OutboundWebSocketSession>> roomSessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Binding> userBindings = new ConcurrentHashMap<>();
+
+    private record Binding(String roomId, OutboundWebSocketSession session) {
+    }
+
+    public OutboundWebSocketSession register(String roomId, String userId, OutboundWebSocketSession session) {
+        Binding previous = userBindings.put(userId, new Binding(roomId, session));
+
+        if (previous != null && !previous.roomId().equals(roomId)) {
+            removeFromRoom(previous.roomId(), userId, previous.session());
+        }
+
+        roomSessions.compute(roomId, (id, members) -> {
+            ConcurrentHashMap<String, OutboundWebSocketSession> room = members != null ? members : new ConcurrentHashMap<>();
+            room.put(userId, session);
+            return room;
+        });
+
+        return previous != null && previous.session() != session ? previous.session() : null;
+    }
+
+    public OutboundWebSocketSession unregister(String userId) {
+        if (userId == null) {
+            return null;
+        }
+
+        Binding binding = userBindings.remove(userId);
+        if (binding == null) {
+            return null;
+        }
+
+        removeFromRoom(binding.roomId(), userId, binding.session());
+        return binding.session();
+    }
+
+    public OutboundWebSocketSession unregister(String userId, WebSocketSession session) {
+        if (userId == null || session == null) {
+            return null;
+        }
+
+        Binding binding = userBindings.get(userId);
+        if (binding == null || !binding.session().getId().equals(session.getId())
+                || !userBindings.remove(userId, binding)) {
+            return null;
+        }
+
+        removeFromRoom(binding.roomId(), userId, binding.session());
+        return binding.session();
+    }
+
+    public OutboundWebSocketSession getSession(String userId) {
+        Binding binding = userId != null ? userBindings.get(userId) : null;
+        return binding != null ? binding.session() : null;
+    }
+
+    public String getRoomId(String userId) {
+        Binding binding = userId != null ? userBindings.get(userId) : null;
+        return binding != null ? binding.roomId() : null;
+    }
+
+    public boolean isConnected(String roomId, String userId) {
+        Map<String, OutboundWebSocketSession> members = roomSessions.get(roomId);
+        return members != null && members.containsKey(userId);
+    }
+
+    public void forEachInRoom(String roomId, BiConsumer<String, OutboundWebSocketSession> action) {
+        Map<String, OutboundWebSocketSession> members = roomSessions.get(roomId);
+        if (members != null) {
+            members.forEach(action);
+        }
+    }
+
+    public Set<String> getRoomUserIds(String roomId) {
+        Map<String, OutboundWebSocketSession> members = roomSessions.get(roomId);
+        return members != null ? Collections.unmodifiableSet(members.keySet()) : Collections.emptySet();
+    }
+
+    public int getRoomSessionCount(String roomId) {
+        Map<String, OutboundWebSocketSession> members = roomSessions.get(roomId);
+        return members != null ? members.size() : 0;
+    }
+
+    public int getNodeSessionCount() {
+        return userBindings.size();
+    }
+
+    public int getActiveRoomCount() {
+        return roomSessions.size();
+    }
+
+    public Map<String, Integer> getRoomSessionCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        roomSessions.forEach((roomId, members) -> counts.put(roomId, members.size()));
+        return counts;
+    }
+
+    private void removeFromRoom(String roomId, String userId, OutboundWebSocketSession session) {
+        // Удаляем комнату атомарно вместе с последним участником
+        roomSessions.computeIfPresent(roomId, (id, members) -> {
+            members.remove(userId, session);
+            return members.isEmpty() ? null : members;
+        });
+    }
+}
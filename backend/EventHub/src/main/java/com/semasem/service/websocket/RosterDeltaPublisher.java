@@ -0,0 +1,79 @@
+package com.semasem.service.websocket;
+
+import com.semasem.service.RoomSessionService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Раз в тик собирает изменения состава комнат и отдает их одной дельтой на комнату
+ * вместо рассылки new_peer/peer_left на каждое подключение.
+ */
+@Slf4j
+@Component
+public class RosterDeltaPublisher {
+
+    private final RoomSessionService roomSessionService;
+    private final ScheduledExecutorService scheduler;
+
+    private final DistributionSummary deltaSize;
+    private final Counter publishedDeltas;
+
+    private volatile Consumer<RoomSessionService.RosterDelta> listener;
+
+    public RosterDeltaPublisher(RoomSessionService roomSessionService,
+                                MeterRegistry meterRegistry,
+                                @Value("${websocket.roster.delta-tick-ms:50}") long tickMillis) {
+        this.roomSessionService = roomSessionService;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-roster-delta");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.deltaSize = DistributionSummary.builder("websocket.roster.delta.size")
+                .description("Joins and leaves carried by one roster delta")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.publishedDeltas = Counter.builder("websocket.roster.delta.published")
+                .description("Roster deltas broadcast to rooms")
+                .register(meterRegistry);
+
+        scheduler.scheduleWithFixedDelay(this::publish, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void subscribe(Consumer<RoomSessionService.RosterDelta> listener) {
+        this.listener = listener;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void publish() {
+        Consumer<RoomSessionService.RosterDelta> target = listener;
+        if (target == null) {
+            return;
+        }
+
+        for (RoomSessionService.RosterDelta delta : roomSessionService.drainRosterDeltas()) {
+            deltaSize.record(delta.joined().size() + delta.left().size());
+            publishedDeltas.increment();
+            try {
+                target.accept(delta);
+            } catch (RuntimeException e) {
+                log.error("Error publishing roster delta for room {}", delta.roomId(), e);
+            }
+        }
+    }
+}
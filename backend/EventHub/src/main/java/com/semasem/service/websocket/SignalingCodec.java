@@ -0,0 +1,167 @@
+package com.semasem.service.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.semasem.dto.websocket.RawJson;
+import com.semasem.dto.websocket.SignalingEvent;
+import com.semasem.dto.websocket.SignalingMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+
+@Component
+public class SignalingCodec {
+
+    private static final SignalingMessage GET_PARTICIPANTS = new SignalingMessage.GetParticipants();
+    private static final SignalingMessage GET_ROOM_SNAPSHOT = new SignalingMessage.GetRoomSnapshot();
+    private static final SignalingMessage PEER_LEFT = new SignalingMessage.PeerLeft();
+    private static final SignalingMessage NEW_PEER = new SignalingMessage.NewPeer();
+    private static final SignalingMessage REQUEST_MEDIA_STATE = new SignalingMessage.RequestMediaState();
+
+    private final JsonFactory jsonFactory;
+    private final ObjectWriter eventWriter;
+    private final WebSocketFrameEncoder frameEncoder;
+    private final int maxRelayPayloadBytes;
+
+    public SignalingCodec(ObjectMapper objectMapper,
+                          WebSocketFrameEncoder frameEncoder,
+                          @Value("${websocket.signaling.max-relay-payload-bytes:32768}") int maxRelayPayloadBytes) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.eventWriter = objectMapper.writerFor(SignalingEvent.class);
+        this.frameEncoder = frameEncoder;
+        this.maxRelayPayloadBytes = maxRelayPayloadBytes;
+    }
+
+    public SignalingMessage decode(String payload) throws IOException {
+        String type = null;
+        String targetUserId = null;
+        RawJson sdp = null;
+        RawJson candidate = null;
+        Boolean audioEnabled = null;
+        Boolean videoEnabled = null;
+        Boolean screenSharing = null;
+        Long sinceVersion = null;
+
+        // Читаем поля потоком: type может прийти в любом месте объекта
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            JsonStreams.expectObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "type" -> type = JsonStreams.readText(parser);
+                    case "targetUserId" -> targetUserId = JsonStreams.readText(parser);
+                    case "sdp" -> sdp = readRaw(parser, payload);
+                    case "candidate" -> candidate = readRaw(parser, payload);
+                    case "audioEnabled" -> audioEnabled = JsonStreams.readBoolean(parser);
+                    case "videoEnabled" -> videoEnabled = JsonStreams.readBoolean(parser);
+                    case "screenSharing" -> screenSharing = JsonStreams.readBoolean(parser);
+                    case "sinceVersion" -> sinceVersion = JsonStreams.readLong(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+
+        if (type == null) {
+            return new SignalingMessage.Unknown(null);
+        }
+
+        RawJson relayed = "ice_candidate".equals(type) ? candidate : sdp;
+        if (relayed != null) {
+            int bytes = relayedBytes(relayed);
+            if (bytes > maxRelayPayloadBytes) {
+                return new SignalingMessage.Oversized(type, bytes);
+            }
+        }
+
+        return switch (type) {
+            case "offer" -> new SignalingMessage.Offer(targetUserId, sdp);
+            case "answer" -> new SignalingMessage.Answer(targetUserId, sdp);
+            case "ice_candidate" -> new SignalingMessage.IceCandidate(targetUserId, candidate);
+            case "get_participants" -> GET_PARTICIPANTS;
+            case "get_room_snapshot" -> GET_ROOM_SNAPSHOT;
+            case "peer_left" -> PEER_LEFT;
+            case "new_peer" -> NEW_PEER;
+            case "media_state_update" -> new SignalingMessage.MediaStateUpdate(audioEnabled, videoEnabled, screenSharing);
+            case "request_media_state" -> REQUEST_MEDIA_STATE;
+            case "request_all_media_states" -> new SignalingMessage.RequestAllMediaStates(sinceVersion);
+            default -> new SignalingMessage.Unknown(type);
+        };
+    }
+
+    /**
+     * Собирает кадр offer/answer/ice_candidate вокруг исходного фрагмента без Jackson.
+     * fromUserId берется из контекста рукопожатия (UUID), экранирование не требуется.
+     */
+    public EncodedFrame encodeRelay(String type, String fromUserId, String field, RawJson payload) {
+        long start = System.nanoTime();
+        StringBuilder json = new StringBuilder(type.length() + fromUserId.length() + field.length()
+                + payload.length() + 64);
+        json.append("{\"type\":\"").append(type)
+                .append("\",\"fromUserId\":\"").append(fromUserId)
+                .append("\",\"").append(field).append("\":");
+        payload.appendTo(json);
+        json.append(",\"timestamp\":").append(System.currentTimeMillis()).append('}');
+
+        return frameEncoder.frame(json.toString(), start, FramePriority.SIGNALING, null);
+    }
+
+    public EncodedFrame encodeCandidates(String fromUserId, List<RawJson> candidates) {
+        long start = System.nanoTime();
+        int length = fromUserId.length() + 80;
+        for (RawJson candidate : candidates) {
+            length += candidate.length() + 1;
+        }
+
+        StringBuilder json = new StringBuilder(length);
+        json.append("{\"type\":\"ice_candidates\",\"fromUserId\":\"").append(fromUserId)
+                .append("\",\"candidates\":[");
+        for (int i = 0; i < candidates.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            candidates.get(i).appendTo(json);
+        }
+        json.append("],\"timestamp\":").append(System.currentTimeMillis()).append('}');
+
+        return frameEncoder.frame(json.toString(), start, FramePriority.SIGNALING, null);
+    }
+
+    public EncodedFrame encode(SignalingEvent event) throws JsonProcessingException {
+        return encode(event, FramePriority.DEFAULT, null);
+    }
+
+    public EncodedFrame encode(SignalingEvent event, FramePriority priority, String coalesceKey)
+            throws JsonProcessingException {
+        return frameEncoder.encode(eventWriter, event, priority, coalesceKey);
+    }
+
+    // Лимит в байтах UTF-8: символ занимает не больше 3 байт, короткий фрагмент не пересчитывается
+    private int relayedBytes(RawJson relayed) {
+        int chars = relayed.length();
+        return (long) chars * 3 <= maxRelayPayloadBytes ? chars : relayed.utf8Length();
+    }
+
+    private RawJson readRaw(JsonParser parser, String payload) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+
+        // Значение только пропускаем: нужны лишь его границы в исходной строке
+        int start = (int) parser.currentTokenLocation().getCharOffset();
+        if (token.isStructStart()) {
+            parser.skipChildren();
+        } else {
+            parser.finishToken();
+        }
+        int end = (int) parser.currentLocation().getCharOffset();
+        return new RawJson(payload, start, end);
+    }
+}
@@ -0,0 +1,7 @@
+package com.semasem.service.websocket;
+
+public enum SlowConsumerPolicy {
+    DROP,
+    COALESCE,
+    DISCONNECT
+}
@@ -0,0 +1,73 @@
+package com.semasem.service.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class WebSocketFrameEncoder {
+
+    private final ObjectWriter defaultWriter;
+
+    private final Timer encodeTimer;
+    private final DistributionSummary broadcastRecipients;
+    private final Counter bytesSaved;
+    private final Counter encodeTimeSaved;
+
+    public WebSocketFrameEncoder(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.defaultWriter = objectMapper.writer();
+        this.encodeTimer = Timer.builder("websocket.frame.encode")
+                .description("Time spent serializing outbound WebSocket frames")
+                .register(meterRegistry);
+        this.broadcastRecipients = DistributionSummary.builder("websocket.broadcast.recipients")
+                .description("Recipients per room broadcast")
+                .register(meterRegistry);
+        this.bytesSaved = Counter.builder("websocket.broadcast.bytes.saved")
+                .description("Payload bytes not re-encoded thanks to shared broadcast frames")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.encodeTimeSaved = Counter.builder("websocket.broadcast.encode.saved")
+                .description("Serialization time not spent thanks to shared broadcast frames")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    public EncodedFrame encode(Object message) throws JsonProcessingException {
+        return encode(message, FramePriority.DEFAULT, null);
+    }
+
+    public EncodedFrame encode(Object message, FramePriority priority, String coalesceKey) throws JsonProcessingException {
+        return encode(defaultWriter, message, priority, coalesceKey);
+    }
+
+    public EncodedFrame encode(ObjectWriter writer, Object message,
+                               FramePriority priority, String coalesceKey) throws JsonProcessingException {
+        long start = System.nanoTime();
+        return frame(writer.writeValueAsString(message), start, priority, coalesceKey);
+    }
+
+    public EncodedFrame frame(String json, long startNanos, FramePriority priority, String coalesceKey) {
+        long elapsed = System.nanoTime() - startNanos;
+
+        encodeTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        return new EncodedFrame(new TextMessage(json), elapsed, priority, coalesceKey);
+    }
+
+    public void recordBroadcast(EncodedFrame frame, int recipients) {
+        broadcastRecipients.record(recipients);
+
+        if (recipients > 1) {
+            int reused = recipients - 1;
+            bytesSaved.increment((double) frame.sizeBytes() * reused);
+            encodeTimeSaved.increment(frame.encodeNanos() * reused / 1_000_000_000.0);
+        }
+    }
+}
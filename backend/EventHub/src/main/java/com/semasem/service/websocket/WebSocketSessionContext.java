@@ -0,0 +1,23 @@
+package com.semasem.service.websocket;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.UUID;
+
+public record WebSocketSessionContext(
+        UUID userId,
+        UUID roomId,
+        String userIdValue,
+        String roomIdValue,
+        String email,
+        String name,
+        String avatarLink,
+        boolean guest
+) {
+    public static final String ATTRIBUTE = WebSocketSessionContext.class.getName();
+
+    public static WebSocketSessionContext from(WebSocketSession session) {
+        Object context = session.getAttributes().get(ATTRIBUTE);
+        return context instanceof WebSocketSessionContext sessionContext ? sessionContext : null;
+    }
+}
@@ -0,0 +1,20 @@
+-- Ответы на сообщения: строковая колонка reply_to заменена внешним ключом reply_to_id.
+-- ddl-auto=update добавляет reply_to_id, но не переносит данные и не удаляет reply_to.
+-- Выполнить один раз после первого запуска новой версии (когда reply_to_id уже создана):
+--   psql -d EventHubDB -f src/main/resources/db/upgrade/001-chat-messages-reply-to-id.sql
+-- Повторный запуск ничего не меняет.
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1
+               FROM information_schema.columns
+               WHERE table_name = 'chat_messages' AND column_name = 'reply_to') THEN
+        -- Ссылки на удаленные сообщения и строки не в формате UUID остаются без ответа
+        UPDATE chat_messages m
+        SET reply_to_id = CAST(m.reply_to AS uuid)
+        WHERE m.reply_to ~* '^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$'
+          AND m.reply_to_id IS NULL
+          AND EXISTS (SELECT 1 FROM chat_messages r WHERE r.uuid = CAST(m.reply_to AS uuid));
+
+        ALTER TABLE chat_messages DROP COLUMN reply_to;
+    END IF;
+END $$;
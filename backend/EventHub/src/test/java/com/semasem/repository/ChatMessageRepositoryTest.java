@@ -0,0 +1,117 @@
+package com.semasem.repository;
+
+import com.semasem.repository.entity.ChatMessage;
+import com.semasem.repository.entity.ChatMessageType;
+import com.semasem.repository.entity.ChatMessageView;
+import com.semasem.repository.entity.Room;
+import com.semasem.repository.entity.User;
+import com.semasem.repository.entity.UserRole;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@ActiveProfiles("test")
+class ChatMessageRepositoryTest {
+
+    private static final int MESSAGES = 40;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Room room;
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        room = new Room("Room", "Description", null, true, "invite", 10);
+        entityManager.persist(room);
+
+        User[] users = new User[5];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = new User(null, "User " + i, "user" + i + "@example.com", null, "password", UserRole.ROLE_USER);
+            entityManager.persist(users[i]);
+        }
+
+        // Каждое третье сообщение отвечает на предыдущее: ответы и отправители разных пользователей
+        ChatMessage previous = null;
+        for (int i = 0; i < MESSAGES; i++) {
+            ChatMessage message = ChatMessage.builder()
+                    .room(room)
+                    .user(users[i % users.length])
+                    .content("message " + i)
+                    .type(ChatMessageType.TEXT)
+                    .timestamp(Instant.ofEpochSecond(1_000 + i))
+                    .replyTo(i % 3 == 0 ? previous : null)
+                    .build();
+            entityManager.persist(message);
+            previous = message;
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void latestPageIsOneStatementWithRepliesAndSenders() {
+        List<ChatMessageView> page = chatMessageRepository.findLatestViewsByRoomUuid(room.getUuid(), Limit.of(20));
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(20, page.size());
+        assertEquals("message 39", page.get(0).content());
+        for (int i = 1; i < page.size(); i++) {
+            assertTrue(page.get(i - 1).timestamp().isAfter(page.get(i).timestamp()));
+        }
+
+        ChatMessageView reply = page.stream().filter(view -> view.replyTo() != null).findFirst().orElseThrow();
+        assertNotNull(reply.repliedMessageContent());
+        assertNotNull(reply.repliedMessageSender());
+    }
+
+    @Test
+    void keysetPageContinuesFromCursorInOneStatement() {
+        List<ChatMessageView> first = chatMessageRepository.findLatestViewsByRoomUuid(room.getUuid(), Limit.of(20));
+        ChatMessageView cursor = first.get(first.size() - 1);
+        statistics.clear();
+
+        List<ChatMessageView> next = chatMessageRepository.findViewsByRoomUuidBefore(
+                room.getUuid(), cursor.timestamp(), cursor.uuid(), Limit.of(21));
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(MESSAGES - 20, next.size());
+        assertEquals("message 19", next.get(0).content());
+        assertEquals("message 0", next.get(next.size() - 1).content());
+        assertNull(next.get(next.size() - 1).replyTo());
+    }
+
+    @Test
+    void viewsByUuidAreOneStatement() {
+        List<ChatMessageView> latest = chatMessageRepository.findLatestViewsByRoomUuid(room.getUuid(), Limit.of(4));
+        statistics.clear();
+
+        List<ChatMessageView> views = chatMessageRepository.findViewsByUuidIn(
+                latest.stream().map(ChatMessageView::uuid).toList());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(4, views.size());
+    }
+}
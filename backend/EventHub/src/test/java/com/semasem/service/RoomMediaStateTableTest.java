@@ -0,0 +1,166 @@
+package com.semasem.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.semasem.service.RoomMediaStateTable.AUDIO;
+import static com.semasem.service.RoomMediaStateTable.PRESENT;
+import static com.semasem.service.RoomMediaStateTable.SCREEN;
+import static com.semasem.service.RoomMediaStateTable.VIDEO;
+import static com.semasem.service.RoomMediaStateTable.isSet;
+import static com.semasem.service.RoomMediaStateTable.versionOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomMediaStateTableTest {
+
+    @Test
+    void firstUpdateStartsFromDefaultsAndKeepsUnsetFlags() {
+        RoomMediaStateTable table = new RoomMediaStateTable();
+        UUID user = UUID.randomUUID();
+
+        long state = table.update(user, null, false, null);
+        assertTrue(isSet(state, PRESENT));
+        assertTrue(isSet(state, AUDIO));
+        assertFalse(isSet(state, VIDEO));
+        assertFalse(isSet(state, SCREEN));
+
+        state = table.update(user, false, null, true);
+        assertFalse(isSet(state, AUDIO));
+        assertFalse(isSet(state, VIDEO));
+        assertTrue(isSet(state, SCREEN));
+        assertEquals(state, table.get(user));
+        assertTrue(table.hasActiveMedia());
+    }
+
+    @Test
+    void everyUpdateGetsNewerVersion() {
+        RoomMediaStateTable table = new RoomMediaStateTable();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        long a = table.update(first, true, null, null);
+        long b = table.update(second, true, null, null);
+        long c = table.update(first, false, null, null);
+
+        assertTrue(versionOf(a) < versionOf(b));
+        assertTrue(versionOf(b) < versionOf(c));
+        assertEquals(versionOf(c), table.version());
+    }
+
+    @Test
+    void diffContainsOnlyParticipantsChangedSinceVersion() {
+        RoomMediaStateTable table = new RoomMediaStateTable();
+        UUID unchanged = UUID.randomUUID();
+        UUID changed = UUID.randomUUID();
+        table.update(unchanged, true, true, false);
+        table.update(changed, true, true, false);
+
+        long since = diff(table, 0, new HashMap<>());
+        table.update(changed, false, null, null);
+
+        Map<UUID, Long> states = new HashMap<>();
+        long next = diff(table, since, states);
+        assertEquals(Map.of(changed, table.get(changed)), states);
+        assertEquals(table.version(), next);
+
+        states.clear();
+        assertEquals(next, diff(table, next, states));
+        assertTrue(states.isEmpty());
+    }
+
+    @Test
+    void updateAfterServedVersionIsNotHiddenFromNextDiff() {
+        RoomMediaStateTable table = new RoomMediaStateTable();
+        UUID user = UUID.randomUUID();
+        table.update(user, true, true, false);
+
+        long served = diff(table, 0, new HashMap<>());
+        long state = table.update(user, false, null, null);
+
+        assertTrue(versionOf(state) > served);
+        Map<UUID, Long> states = new HashMap<>();
+        diff(table, served, states);
+        assertEquals(state, states.get(user));
+    }
+
+    @Test
+    void concurrentUpdatesOfOneParticipantAreNotLost() throws Exception {
+        RoomMediaStateTable table = new RoomMediaStateTable();
+        UUID user = UUID.randomUUID();
+        int rounds = 10_000;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            // Каждый поток переключает свой флаг и заканчивает на выключенном
+            List<Future<?>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> toggle(start, rounds, i -> table.update(user, i % 2 == 1, null, null))));
+            futures.add(executor.submit(() -> toggle(start, rounds, i -> table.update(user, null, i % 2 == 1, null))));
+            futures.add(executor.submit(() -> toggle(start, rounds, i -> table.update(user, null, null, i % 2 == 1))));
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long state = table.get(user);
+        assertTrue(isSet(state, PRESENT));
+        assertFalse(isSet(state, AUDIO));
+        assertFalse(isSet(state, VIDEO));
+        assertFalse(isSet(state, SCREEN));
+        assertEquals(table.version(), versionOf(state));
+        assertFalse(table.hasActiveMedia());
+    }
+
+    @Test
+    void participantsBeyondOneSegmentKeepTheirSlots() {
+        RoomMediaStateTable table = new RoomMediaStateTable();
+        Map<UUID, Long> expected = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            UUID user = UUID.randomUUID();
+            expected.put(user, table.update(user, i % 2 == 0, i % 3 == 0, false));
+        }
+
+        Map<UUID, Long> states = new HashMap<>();
+        diff(table, 0, states);
+        assertEquals(expected, states);
+
+        for (UUID user : expected.keySet()) {
+            table.remove(user);
+        }
+        assertTrue(table.isEmpty());
+        assertEquals(0L, table.get(expected.keySet().iterator().next()));
+    }
+
+    private static long diff(RoomMediaStateTable table, long since, Map<UUID, Long> states) {
+        return table.forEachChangedSince(since, (userId, state, updatedAt) -> states.put(userId, state));
+    }
+
+    private interface Step {
+        void run(int round);
+    }
+
+    private static void toggle(CountDownLatch start, int rounds, Step step) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (int i = rounds - 1; i >= 0; i--) {
+            step.run(i);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.semasem.service.moderation;
+
+import com.semasem.service.moderation.ContentMatcher.Kind;
+import com.semasem.service.moderation.ContentMatcher.Rule;
+import com.semasem.service.moderation.ContentMatcher.Violation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ContentMatcherTest {
+
+    private static final UUID ROOM = UUID.randomUUID();
+
+    private static final ContentMatcher MATCHER = ContentMatcher.compile(List.of(
+            new Rule(Kind.LINK, "http://", null),
+            new Rule(Kind.LINK, "https://", null),
+            new Rule(Kind.TERM, "ass", null),
+            new Rule(Kind.TERM, "плохое слово", null),
+            new Rule(Kind.TERM, "he", null),
+            new Rule(Kind.TERM, "she", null),
+            new Rule(Kind.TERM, "hers", null),
+            new Rule(Kind.ALLOW, "https://docs.example.com", ROOM)));
+
+    @Test
+    void termsMatchWholeWordsOnly() {
+        assertNull(MATCHER.findViolation(null, "hello class"));
+        assertNull(MATCHER.findViolation(null, "ushers"));
+
+        Violation violation = MATCHER.findViolation(null, "you ass!");
+        assertNotNull(violation);
+        assertEquals(Kind.TERM, violation.kind());
+        assertEquals("ass", violation.pattern());
+        assertEquals(4, violation.start());
+    }
+
+    @Test
+    void matchingIgnoresCase() {
+        assertEquals("ass", MATCHER.findViolation(null, "you ASS").pattern());
+        assertEquals("плохое слово", MATCHER.findViolation(null, "это ПЛОХОЕ Слово.").pattern());
+        assertEquals(Kind.LINK, MATCHER.findViolation(null, "see HTTPS://example.org").kind());
+    }
+
+    @Test
+    void overlappingPatternsAreFoundThroughSuffixLinks() {
+        assertEquals("hers", MATCHER.findViolation(null, "ushers hers").pattern());
+        assertEquals("she", MATCHER.findViolation(null, "xx she").pattern());
+        assertEquals("he", MATCHER.findViolation(null, "xx he").pattern());
+    }
+
+    @Test
+    void allowRuleCoversOnlyItsRoomAndSpan() {
+        assertNull(MATCHER.findViolation(ROOM, "see https://docs.example.com/page"));
+        assertNotNull(MATCHER.findViolation(ROOM, "see https://docs.example.org/page"));
+        assertNotNull(MATCHER.findViolation(UUID.randomUUID(), "see https://docs.example.com/page"));
+        assertNotNull(MATCHER.findViolation(null, "see https://docs.example.com/page"));
+
+        // Разрешенная ссылка не прикрывает остальное сообщение
+        Violation violation = MATCHER.findViolation(ROOM, "https://docs.example.com and ass");
+        assertNotNull(violation);
+        assertEquals("ass", violation.pattern());
+    }
+
+    @Test
+    void agreesWithNaiveSearchOnRandomInput() {
+        Random random = new Random(42);
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            rules.add(new Rule(Kind.LINK, randomString(random, 1 + random.nextInt(4), 4), null));
+        }
+        ContentMatcher matcher = ContentMatcher.compile(rules);
+
+        for (int i = 0; i < 2_000; i++) {
+            String content = randomString(random, random.nextInt(12), 6);
+            boolean expected = rules.stream().anyMatch(rule -> content.contains(rule.pattern()));
+            assertEquals(expected, matcher.findViolation(null, content) != null, content);
+        }
+    }
+
+    @Test
+    void emptyRuleSetMatchesNothing() {
+        ContentMatcher matcher = ContentMatcher.compile(List.of());
+
+        assertEquals(0, matcher.size());
+        assertNull(matcher.findViolation(ROOM, "https://example.org"));
+    }
+
+    private static String randomString(Random random, int length, int alphabet) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(alphabet)));
+        }
+        return builder.toString();
+    }
+}
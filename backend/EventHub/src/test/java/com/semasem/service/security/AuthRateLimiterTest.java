@@ -0,0 +1,72 @@
+package com.semasem.service.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuthRateLimiterTest {
+
+    private AuthRateLimiter authRateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("security.rate-limit.routes.login.ip-limit", "2");
+        authRateLimiter = new AuthRateLimiter(environment, new SimpleMeterRegistry(), 1000, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        authRateLimiter.shutdown();
+    }
+
+    @Test
+    void matchesPostToLimitedRoute() {
+        assertEquals(AuthRateLimiter.Route.LOGIN, authRateLimiter.match(post("/api/auth/login", "/api/auth/login")));
+        assertEquals(AuthRateLimiter.Route.ROOM_GUEST_JOIN,
+                authRateLimiter.match(post("/api/rooms/guest-join", "/api/rooms/guest-join")));
+
+        MockHttpServletRequest get = post("/api/auth/login", "/api/auth/login");
+        get.setMethod("GET");
+        assertNull(authRateLimiter.match(get));
+        assertNull(authRateLimiter.match(post("/api/auth/logout", "/api/auth/logout")));
+    }
+
+    @Test
+    void matchesEncodedPathByDecodedServletPath() {
+        // Контейнер декодирует и нормализует servletPath, requestURI остается как пришел
+        assertEquals(AuthRateLimiter.Route.LOGIN,
+                authRateLimiter.match(post("/api/auth/%6cogin", "/api/auth/login")));
+        assertEquals(AuthRateLimiter.Route.LOGIN,
+                authRateLimiter.match(post("/api/auth/./login;jsessionid=1", "/api/auth/login")));
+    }
+
+    @Test
+    void matchesWithContextPath() {
+        MockHttpServletRequest request = post("/app/api/auth/%6Cogin", "/api/auth/login");
+        request.setContextPath("/app");
+
+        assertEquals(AuthRateLimiter.Route.LOGIN, authRateLimiter.match(request));
+    }
+
+    @Test
+    void limitsAddressPerRoute() {
+        assertEquals(0, authRateLimiter.tryAcquireIp(AuthRateLimiter.Route.LOGIN, "10.0.0.1"));
+        assertEquals(0, authRateLimiter.tryAcquireIp(AuthRateLimiter.Route.LOGIN, "10.0.0.1"));
+        assertTrue(authRateLimiter.tryAcquireIp(AuthRateLimiter.Route.LOGIN, "10.0.0.1") > 0);
+        assertEquals(0, authRateLimiter.tryAcquireIp(AuthRateLimiter.Route.LOGIN, "10.0.0.2"));
+    }
+
+    private static MockHttpServletRequest post(String requestUri, String servletPath) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", requestUri);
+        request.setServletPath(servletPath);
+        return request;
+    }
+}
@@ -0,0 +1,105 @@
+package com.semasem.service.security;
+
+import com.semasem.dto.exception.CustomException;
+import com.semasem.dto.exception.ErrorCode;
+import com.semasem.repository.RefreshTokenRepository;
+import com.semasem.repository.UserRepository;
+import com.semasem.repository.entity.User;
+import com.semasem.repository.entity.UserRole;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({JwtService.class, TokenRevocations.class, RefreshTokenStore.class, RefreshTokenStoreTest.Metrics.class})
+@TestPropertySource(properties = "jwt.secret-key=test-secret-key-test-secret-key-test-secret-key")
+class RefreshTokenStoreTest {
+
+    @TestConfiguration
+    static class Metrics {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private RefreshTokenStore refreshTokenStore;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.saveAndFlush(
+                new User(null, "User", "user@example.com", null, "password", UserRole.ROLE_USER));
+    }
+
+    @Test
+    void rotationReplacesTokenWithinFamily() {
+        String first = refreshTokenStore.issue(user);
+
+        RefreshTokenStore.Rotation rotation = refreshTokenStore.rotate(first);
+
+        assertNotEquals(first, rotation.refreshToken());
+        assertEquals(user.getUuid(), rotation.subject().userId());
+        assertEquals(user.getEmail(), rotation.subject().email());
+        // Использованный токен остается в таблице до удаления семьи: по нему распознается повтор
+        assertEquals(2, refreshTokenRepository.count());
+
+        assertNotNull(refreshTokenStore.rotate(rotation.refreshToken()).refreshToken());
+        assertEquals(3, refreshTokenRepository.count());
+    }
+
+    @Test
+    void reuseOfRotatedTokenRevokesOnlyItsFamily() {
+        String stolen = refreshTokenStore.issue(user);
+        String otherDevice = refreshTokenStore.issue(user);
+        String current = refreshTokenStore.rotate(stolen).refreshToken();
+
+        CustomException reuse = assertThrows(CustomException.class, () -> refreshTokenStore.rotate(stolen));
+        assertEquals(ErrorCode.TOKEN_COMPROMISED, reuse.getErrorCode());
+
+        // Семья удалена вместе с последним выданным токеном
+        CustomException revoked = assertThrows(CustomException.class, () -> refreshTokenStore.rotate(current));
+        assertEquals(ErrorCode.INVALID_TOKEN, revoked.getErrorCode());
+
+        assertNotNull(refreshTokenStore.rotate(otherDevice).refreshToken());
+    }
+
+    @Test
+    void revokeFamilyInvalidatesDeviceToken() {
+        String token = refreshTokenStore.issue(user);
+
+        assertEquals(user.getUuid(), refreshTokenStore.revokeFamily(token).userId());
+
+        assertEquals(0, refreshTokenRepository.count());
+        CustomException e = assertThrows(CustomException.class, () -> refreshTokenStore.rotate(token));
+        assertEquals(ErrorCode.INVALID_TOKEN, e.getErrorCode());
+    }
+
+    @Test
+    void malformedTokenIsRejected() {
+        CustomException e = assertThrows(CustomException.class, () -> refreshTokenStore.rotate("not-a-token"));
+        assertEquals(ErrorCode.INVALID_TOKEN, e.getErrorCode());
+    }
+}
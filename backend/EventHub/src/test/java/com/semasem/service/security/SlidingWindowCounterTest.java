@@ -0,0 +1,83 @@
+package com.semasem.service.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlidingWindowCounterTest {
+
+    private static final long WINDOW = 1_000;
+
+    @Test
+    void allowsUpToLimitThenReportsRetryAfter() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(3, WINDOW, 100, 4);
+
+        assertEquals(0, counter.tryAcquire("key", 10_000));
+        assertEquals(0, counter.tryAcquire("key", 10_001));
+        assertEquals(0, counter.tryAcquire("key", 10_002));
+
+        long retryAfter = counter.tryAcquire("key", 10_003);
+        assertTrue(retryAfter > 0);
+        assertEquals(0, counter.tryAcquire("other", 10_003));
+    }
+
+    @Test
+    void retryAfterIsExact() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(10, WINDOW, 100, 4);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, counter.tryAcquire("key", 0));
+        }
+
+        // Место появится в следующем окне, когда вклад этого убудет до 9: ровно через retryAfter
+        long retryAfter = counter.tryAcquire("key", 500);
+        assertEquals(600, retryAfter);
+        assertTrue(counter.tryAcquire("key", 500 + retryAfter - 1) > 0);
+        assertEquals(0, counter.tryAcquire("key", 500 + retryAfter));
+    }
+
+    @Test
+    void previousWindowDecaysLinearly() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(4, WINDOW, 100, 4);
+        for (int i = 0; i < 4; i++) {
+            counter.tryAcquire("key", 0);
+        }
+
+        // Середина следующего окна: 4 * 0.5 = 2 от прошлого, свободно еще 2
+        assertEquals(0, counter.tryAcquire("key", 1_500));
+        assertEquals(0, counter.tryAcquire("key", 1_500));
+        assertTrue(counter.tryAcquire("key", 1_500) > 0);
+
+        // Через два окна прошлое не учитывается
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, counter.tryAcquire("key", 3_000));
+        }
+    }
+
+    @Test
+    void checkAndRecordAreSeparate() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(2, WINDOW, 100, 4);
+
+        assertEquals(0, counter.retryAfter("key", 0));
+        assertEquals(0, counter.retryAfter("key", 0));
+        assertEquals(0, counter.size());
+
+        counter.record("key", 0);
+        assertEquals(0, counter.retryAfter("key", 0));
+        counter.record("key", 0);
+        assertTrue(counter.retryAfter("key", 0) > 0);
+        assertEquals(0, counter.retryAfter("key", 2 * WINDOW));
+    }
+
+    @Test
+    void keysAreBoundedAndEvicted() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(3, WINDOW, 8, 2);
+        for (int i = 0; i < 100; i++) {
+            counter.tryAcquire("key-" + i, 0);
+        }
+        assertTrue(counter.size() <= 8);
+
+        counter.evictExpired(2 * WINDOW);
+        assertEquals(0, counter.size());
+    }
+}
@@ -13,6 +13,7 @@ interface ChatMessage {
 	senderAvatar?: string;
 	repliedMessageContent?: string;
 	repliedMessageSender?: string;
+	seq?: number;
 }
 
 interface UserTyping {
@@ -40,12 +41,16 @@ export const useChat = (roomId: string, userId: string, token: string) => {
 	const [onlineUsers, setOnlineUsers] = useState<ChatUser[]>([]);
 	const [isConnected, setIsConnected] = useState(false);
 	const [unreadCount, setUnreadCount] = useState(0);
+	// Прочитанный seq по пользователям комнаты
+	const [readCursors, setReadCursors] = useState<Record<string, number>>({});
 
 	const ws = useRef<WebSocket | null>(null);
 	const reconnectTimeoutRef = useRef<NodeJS.Timeout>();
 	const isConnectingRef = useRef(false);
 	const typingTimeoutRef = useRef<NodeJS.Timeout>();
 	const lastReadTimeRef = useRef<number>(Date.now());
+	// Последний seq событий комнаты, полученный от сервера
+	const lastSeqRef = useRef<number | null>(null);
 
 	useEffect(() => {
 		console.log('💬 CHAT STATE:', {
@@ -130,15 +135,36 @@ export const useChat = (roomId: string, userId: string, token: string) => {
 	);
 
 	const loadChatHistory = useCallback(() => {
-		console.log('📜 LOADING CHAT HISTORY');
-		sendMessage('chat_get_history');
+		const sinceSeq = lastSeqRef.current;
+		console.log('📜 LOADING CHAT HISTORY', { sinceSeq });
+		sendMessage(
+			'chat_get_history',
+			sinceSeq !== null ? { sinceSeq, format: 'compact' } : { format: 'compact' }
+		);
 	}, [sendMessage]);
 
+	// Пропуск в seq - запрашиваем недостающие события; повторы применяются без изменений
+	const trackSeq = useCallback(
+		(seq?: number) => {
+			if (seq === undefined || seq === null) return;
+			const last = lastSeqRef.current;
+			if (last !== null && seq > last + 1) {
+				console.log('🔁 CHAT SEQ GAP:', { last, seq });
+				sendMessage('chat_get_history', { sinceSeq: last, format: 'compact' });
+			}
+			if (last === null || seq > last) {
+				lastSeqRef.current = seq;
+			}
+		},
+		[sendMessage]
+	);
+
 	const markAsRead = useCallback(
 		(messageId?: string) => {
-			if (messageId) {
-				sendMessage('chat_mark_read', { messageId });
-			}
+			sendMessage('chat_mark_read', {
+				messageId,
+				seq: lastSeqRef.current ?? undefined,
+			});
 			lastReadTimeRef.current = Date.now();
 			setUnreadCount(0);
 		},
@@ -148,6 +174,7 @@ export const useChat = (roomId: string, userId: string, token: string) => {
 	const handleChatMessage = useCallback((data: any) => {
 		console.log('💬 RECEIVED CHAT MESSAGE:', data);
 		const message: ChatMessage = data.message;
+		trackSeq(message.seq);
 
 		setMessages(prev => {
 			const exists = prev.some(m => m.uuid === message.uuid);
@@ -167,23 +194,25 @@ export const useChat = (roomId: string, userId: string, token: string) => {
 		if (new Date(message.timestamp).getTime() > lastReadTimeRef.current) {
 			setUnreadCount(prev => prev + 1);
 		}
-	}, []);
+	}, [trackSeq]);
 
 	const handleChatMessageEdited = useCallback((data: any) => {
 		console.log('✏️ MESSAGE EDITED:', data);
 		const updatedMessage: ChatMessage = data.message;
+		trackSeq(updatedMessage.seq);
 
 		setMessages(prev =>
 			prev.map(msg => (msg.uuid === updatedMessage.uuid ? updatedMessage : msg))
 		);
-	}, []);
+	}, [trackSeq]);
 
 	const handleChatMessageDeleted = useCallback((data: any) => {
 		console.log('🗑️ MESSAGE DELETED:', data);
 		const { messageId } = data;
+		trackSeq(data.seq);
 
 		setMessages(prev => prev.filter(msg => msg.uuid !== messageId));
-	}, []);
+	}, [trackSeq]);
 
 	const handleChatHistory = useCallback((data: any) => {
 		console.log(
@@ -193,42 +222,103 @@ export const useChat = (roomId: string, userId: string, token: string) => {
 		);
 		const history: ChatMessage[] = data.messages || [];
 
+		lastSeqRef.current = data.seq ?? null;
 		setMessages(history);
 
 		setUnreadCount(0);
 		lastReadTimeRef.current = Date.now();
 	}, []);
 
-	const handleChatTyping = useCallback((data: any) => {
-		console.log('⌨️ TYPING UPDATE:', data);
-		const { user, typing, timestamp } = data;
+	// chat_history_compact: отправители по индексу, цитаты ответов - из той же страницы или quotes
+	const handleChatHistoryCompact = useCallback(
+		(data: any) => {
+			const senders: ChatUser[] = data.senders || [];
+			const quotes: Record<string, { content: string; sender: string }> = data.quotes || {};
+			const rows: any[] = data.messages || [];
+			const byId = new Map<string, any>(rows.map(row => [row.id, row]));
+
+			const messages: ChatMessage[] = rows.map(row => {
+				const sender = senders[row.sender] || ({} as ChatUser);
+				const replied = row.replyTo ? byId.get(row.replyTo) : undefined;
+				const quote = row.replyTo ? quotes[row.replyTo] : undefined;
+				return {
+					uuid: row.id,
+					content: row.content,
+					type: row.type ?? 'TEXT',
+					timestamp: new Date(row.timestamp).toISOString(),
+					edited: row.editedAt !== undefined,
+					editedAt: row.editedAt !== undefined ? new Date(row.editedAt).toISOString() : undefined,
+					replyTo: row.replyTo,
+					senderName: sender.name,
+					senderEmail: sender.email,
+					senderAvatar: sender.avatar,
+					repliedMessageContent: replied ? replied.content : quote?.content,
+					repliedMessageSender: replied ? senders[replied.sender]?.name : quote?.sender,
+				};
+			});
 
-		setTypingUsers(prev => {
-			const filtered = prev.filter(u => u.userEmail !== user.email);
+			handleChatHistory({ messages, seq: data.seq });
+		},
+		[handleChatHistory]
+	);
 
-			if (typing) {
-				return [
-					...filtered,
-					{
-						userEmail: user.email,
-						userName: user.name,
-						typing: true,
-						timestamp,
-					},
-				];
+	const handleChatSync = useCallback(
+		(data: any) => {
+			const events: WebSocketMessage[] = data.events || [];
+			console.log('🔁 CHAT SYNC:', data.fromSeq, '→', data.seq, events.length, 'events');
+
+			// Номера внутри пакета могут идти с пропусками (отмененные транзакции)
+			lastSeqRef.current = Math.max(lastSeqRef.current ?? 0, data.seq);
+			events.forEach(event => {
+				switch (event.type) {
+					case 'chat_message':
+						handleChatMessage(event);
+						break;
+					case 'chat_message_edited':
+						handleChatMessageEdited(event);
+						break;
+					case 'chat_message_deleted':
+						handleChatMessageDeleted(event);
+						break;
+				}
+			});
+		},
+		[handleChatMessage, handleChatMessageEdited, handleChatMessageDeleted]
+	);
+
+	const handleChatReadState = useCallback(
+		(data: any) => {
+			const cursors: Record<string, number> = data.cursors || {};
+			setReadCursors(prev => (data.full ? cursors : { ...prev, ...cursors }));
+
+			// Непрочитанные - разница seq комнаты и своего прочитанного
+			const own = cursors[userId];
+			if (own !== undefined) {
+				setUnreadCount(Math.max(0, data.seq - own));
 			}
+		},
+		[userId]
+	);
 
-			return filtered;
-		});
+	// Сервер присылает всех печатающих комнаты разом и сам снимает истекшие
+	const handleChatTyping = useCallback(
+		(data: any) => {
+			console.log('⌨️ TYPING UPDATE:', data);
+			const users: ChatUser[] = data.users || [];
 
-		if (typing) {
-			setTimeout(() => {
-				setTypingUsers(prev =>
-					prev.filter(u => !(u.userEmail === user.email && u.typing))
-				);
-			}, 3000);
-		}
-	}, []);
+			setTypingUsers(
+				users
+					.filter(user => user.id !== userId)
+					.map(user => ({
+						userEmail: user.email,
+						userName: user.name,
+						typing: true,
+						timestamp: data.timestamp,
+					}))
+			);
+		},
+		[userId]
+	);
 
 	const handleChatUserJoined = useCallback((data: any) => {
 		console.log('👤 USER JOINED CHAT:', data);
@@ -327,6 +417,15 @@ export const useChat = (roomId: string, userId: string, token: string) => {
 						case 'chat_history':
 							handleChatHistory(message);
 							break;
+						case 'chat_history_compact':
+							handleChatHistoryCompact(message);
+							break;
+						case 'chat_sync':
+							handleChatSync(message);
+							break;
+						case 'chat_read_state':
+							handleChatReadState(message);
+							break;
 						case 'chat_typing':
 							handleChatTyping(message);
 							break;
@@ -336,6 +435,18 @@ export const useChat = (roomId: string, userId: string, token: string) => {
 						case 'chat_user_left':
 							handleChatUserLeft(message);
 							break;
+						case 'chat_ack':
+							if (!message.persisted) {
+								console.warn('❌ CHAT MESSAGE NOT SAVED:', message.messageId);
+							}
+							break;
+						case 'chat_rate_limited':
+							console.warn(
+								'⏳ CHAT RATE LIMITED:',
+								message.scope,
+								`retry in ${message.retryAfterMs}ms`
+							);
+							break;
 						case 'error':
 							handleError(message);
 							break;
@@ -386,6 +497,9 @@ export const useChat = (roomId: string, userId: string, token: string) => {
 		handleChatMessageEdited,
 		handleChatMessageDeleted,
 		handleChatHistory,
+		handleChatHistoryCompact,
+		handleChatSync,
+		handleChatReadState,
 		handleChatTyping,
 		handleChatUserJoined,
 		handleChatUserLeft,
@@ -408,10 +522,12 @@ export const useChat = (roomId: string, userId: string, token: string) => {
 			ws.current = null;
 		}
 
+		lastSeqRef.current = null;
 		setMessages([]);
 		setTypingUsers([]);
 		setOnlineUsers([]);
 		setUnreadCount(0);
+		setReadCursors({});
 		setIsConnected(false);
 	}, [stopTyping]);
 
@@ -429,6 +545,7 @@ export const useChat = (roomId: string, userId: string, token: string) => {
 		onlineUsers,
 		isConnected,
 		unreadCount,
+		readCursors,
 
 		sendChatMessage,
 		startTyping,
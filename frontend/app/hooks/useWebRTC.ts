@@ -31,6 +31,7 @@ export const useWebRTC = (
 	const peersRef = useRef<Map<string, RTCPeerConnection>>(new Map());
 	const reconnectTimeoutRef = useRef<NodeJS.Timeout>();
 	const isConnectingRef = useRef(false);
+	const rosterVersionRef = useRef(-1);
 
 	const localStreamRef = useRef<MediaStream | null>(null);
 	const currentAudioTrackRef = useRef<MediaStreamTrack | null>(null);
@@ -391,16 +392,20 @@ export const useWebRTC = (
 		}
 	};
 
+	const handleIceCandidates = async (data: any) => {
+		const { candidates, fromUserId } = data;
+
+		for (const candidate of candidates ?? []) {
+			await handleIceCandidate({ candidate, fromUserId });
+		}
+	};
+
 	const handleNewPeer = (data: any) => {
 		const { userId: newUserId } = data;
 
 		if (newUserId !== userId) {
 			sendOffer(newUserId);
 		}
-
-		setTimeout(() => {
-			sendMessage('get_participants');
-		}, 1500);
 	};
 
 	const replaceScreenTrack = useCallback(
@@ -455,10 +460,6 @@ export const useWebRTC = (
 			newStreams.delete(leftUserId);
 			return newStreams;
 		});
-
-		setTimeout(() => {
-			sendMessage('get_participants');
-		}, 1000);
 	};
 
 	const handleParticipantsUpdate = (data: any) => {
@@ -472,6 +473,44 @@ export const useWebRTC = (
 		setParticipantsCount(data.count || 0);
 	};
 
+	const handleRoomSnapshot = (data: any) => {
+		rosterVersionRef.current = data.version ?? -1;
+		handleParticipantsUpdate(data);
+	};
+
+	const handleRosterDelta = (data: any) => {
+		const current = rosterVersionRef.current;
+		// До снимка дельты не нужны: снимок соберется уже с их изменениями
+		if (current < 0 || data.version <= current) return;
+
+		if (data.fromVersion > current) {
+			sendMessage('get_room_snapshot');
+			return;
+		}
+
+		const joined: any[] = data.joined || [];
+		const left: string[] = data.left || [];
+		const joinedWithMe = joined.some(p => p.userId === userId);
+
+		left.forEach(leftUserId => handlePeerLeft({ userId: leftUserId }));
+		joined.forEach(p => {
+			// Вошедшие в одном тике: предложение шлет только один из пары
+			if (!joinedWithMe || userId < p.userId) {
+				handleNewPeer(p);
+			}
+		});
+
+		setParticipants(prev => {
+			const changed = new Set([...left, ...joined.map(p => p.userId)]);
+			return [
+				...prev.filter(p => !changed.has(p.userId)),
+				...joined.map(p => ({ ...p, isYou: p.userId === userId })),
+			];
+		});
+		setParticipantsCount(data.count || 0);
+		rosterVersionRef.current = data.version;
+	};
+
 	const handleMediaStateUpdate = (data: any) => {
 		console.log('Media state update from peer:', data);
 	};
@@ -491,17 +530,8 @@ export const useWebRTC = (
 			websocket.onopen = () => {
 				setIsConnected(true);
 				isConnectingRef.current = false;
-
-				sendMessage('new_peer');
-				sendMessage('get_participants');
-
-				const interval = setInterval(() => {
-					if (ws.current?.readyState === WebSocket.OPEN) {
-						sendMessage('get_participants');
-					}
-				}, 10000);
-
-				reconnectTimeoutRef.current = interval as unknown as NodeJS.Timeout;
+				// Состав придет в room_snapshot, дальше поддерживается через roster_delta
+				rosterVersionRef.current = -1;
 			};
 
 			websocket.onmessage = event => {
@@ -518,11 +548,11 @@ export const useWebRTC = (
 						case 'ice_candidate':
 							handleIceCandidate(message);
 							break;
-						case 'new_peer':
-							handleNewPeer(message);
+						case 'ice_candidates':
+							handleIceCandidates(message);
 							break;
-						case 'peer_left':
-							handlePeerLeft(message);
+						case 'roster_delta':
+							handleRosterDelta(message);
 							break;
 						case 'participants_update':
 							handleParticipantsUpdate(message);
@@ -530,6 +560,9 @@ export const useWebRTC = (
 						case 'participants_list':
 							handleParticipantsUpdate(message);
 							break;
+						case 'room_snapshot':
+							handleRoomSnapshot(message);
+							break;
 						case 'media_state_update':
 							handleMediaStateUpdate(message);
 							break;